@@ -0,0 +1,333 @@
+package waya.engine;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of persons and tags, alternative to JSON.
+ *
+ * Header: magic bytes (starting with a zero byte, which cannot start a JSON text),
+ * content kind ('P' person, 'T' tags), codec version, then the VERSION of the encoded
+ * classes. Integers are written as varints (7 bits per byte, low bits first) and
+ * strings as a varint length followed by the UTF-8 bytes (length + 1, 0 for null).
+ * Repeated strings are written once in a string table and referenced by their index:
+ * the information names of a person ("Birthday", "Email", ...), the items of the tags.
+ *
+ * Person: string table, id, name, imagePath, number of informations, then for each
+ * information: index of its name, number of values, values.
+ * Tags: string table of the items, number of tags, then for each tag: name, number
+ * of items, indexes of the items.
+ * @author bertrand
+ *
+ */
+public class BinaryCodec {
+	private static final byte[] MAGIC = {0, 'W', 'B'};
+	private static final byte KIND_PERSON = 'P';
+	private static final byte KIND_TAGS = 'T';
+	private static final int CODEC_VERSION = 1;
+
+	/**
+	 * Tells if a content is encoded by this codec
+	 * @param content content read from a file or a data store
+	 * @return true if the content starts with the binary header
+	 */
+	public static boolean isBinary(byte[] content) {
+		if (content.length < MAGIC.length) {
+			return false;
+		}
+		for (int i=0; i<MAGIC.length; i++) {
+			if (content[i] != MAGIC[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * Encode a person
+	 * @param person person encoded
+	 * @return binary content
+	 */
+	public static byte[] encodePerson(PersonView person) {
+		Output output = new Output(KIND_PERSON);
+		output.writeVarint((int) Person.VERSION);
+		output.writeVarint((int) Information.VERSION);
+
+		// string table: names of the informations
+		List<String> table = new ArrayList<>();
+		Map<String, Integer> indexes = new HashMap<>();
+		int[] nameIndexes = new int[person.getNumberOfInformations()];
+		for (int i=0; i<person.getNumberOfInformations(); i++) {
+			nameIndexes[i] = indexOf(person.getInformation(i).getName(), table, indexes);
+		}
+		output.writeStringTable(table);
+
+		output.writeString(person.getId());
+		output.writeString(person.getName());
+		output.writeString(person.getImagePath());
+		output.writeVarint(person.getNumberOfInformations());
+		for (int i=0; i<person.getNumberOfInformations(); i++) {
+			InformationView information = person.getInformation(i);
+			output.writeVarint(nameIndexes[i]);
+			output.writeVarint(information.getNumberOfValues());
+			// values are a linked list: iterated, not accessed by index
+			for (String value : information.getValues()) {
+				output.writeString(value);
+			}
+		}
+		return output.toByteArray();
+	}
+
+
+	/**
+	 * Decode a person
+	 * @param content binary content, as created by encodePerson()
+	 * @return person
+	 * @throws IllegalArgumentException if the content is malformed or of a newer version
+	 */
+	public static Person decodePerson(byte[] content) {
+		Input input = new Input(content, KIND_PERSON);
+		input.checkVersion("person", Person.VERSION);
+		input.checkVersion("information", Information.VERSION);
+		List<String> table = input.readStringTable();
+
+		Person person = new Person(input.readString(), input.readString());
+		person.setImagePath(input.readString());
+		int numberOfInformations = input.readCount();
+		for (int i=0; i<numberOfInformations; i++) {
+			Information information = new Information(input.readTableString(table));
+			int numberOfValues = input.readCount();
+			for (int j=0; j<numberOfValues; j++) {
+				information.addValue(input.readString());
+			}
+			person.addInformation(information);
+		}
+		input.checkEnd();
+		return person;
+	}
+
+
+	/**
+	 * Encode tags
+	 * @param tags tag name -> items of the tag
+	 * @return binary content
+	 */
+	public static byte[] encodeTags(Map<String, ? extends Collection<String>> tags) {
+		Output output = new Output(KIND_TAGS);
+		output.writeVarint((int) TagManager.VERSION);
+
+		// string table: items, usually present in several tags
+		List<String> table = new ArrayList<>();
+		Map<String, Integer> indexes = new HashMap<>();
+		for (Collection<String> items : tags.values()) {
+			for (String item : items) {
+				indexOf(item, table, indexes);
+			}
+		}
+		output.writeStringTable(table);
+
+		output.writeVarint(tags.size());
+		for (Map.Entry<String, ? extends Collection<String>> tag : tags.entrySet()) {
+			output.writeString(tag.getKey());
+			output.writeVarint(tag.getValue().size());
+			for (String item : tag.getValue()) {
+				output.writeVarint(indexes.get(item));
+			}
+		}
+		return output.toByteArray();
+	}
+
+
+	/**
+	 * Decode tags
+	 * @param content binary content, as created by encodeTags()
+	 * @return tag name -> items of the tag, in the encoded order
+	 * @throws IllegalArgumentException if the content is malformed or of a newer version
+	 */
+	public static Map<String, List<String>> decodeTags(byte[] content) {
+		Input input = new Input(content, KIND_TAGS);
+		input.checkVersion("tags", TagManager.VERSION);
+		List<String> table = input.readStringTable();
+
+		Map<String, List<String>> tags = new LinkedHashMap<>();
+		int numberOfTags = input.readCount();
+		for (int i=0; i<numberOfTags; i++) {
+			String tagName = input.readString();
+			if (tagName == null) {
+				throw new IllegalArgumentException("Missing tag name");
+			}
+			int numberOfItems = input.readCount();
+			List<String> items = new ArrayList<>(numberOfItems);
+			for (int j=0; j<numberOfItems; j++) {
+				items.add(input.readTableString(table));
+			}
+			tags.put(tagName, items);
+		}
+		input.checkEnd();
+		return tags;
+	}
+
+
+	/**
+	 * Return the index of a string in the table, and add it if needed
+	 */
+	private static int indexOf(String value, List<String> table, Map<String, Integer> indexes) {
+		Integer index = indexes.get(value);
+		if (index == null) {
+			index = table.size();
+			table.add(value);
+			indexes.put(value, index);
+		}
+		return index;
+	}
+
+
+	/**
+	 * Binary writer
+	 */
+	private static class Output {
+		private final ByteArrayOutputStream bytes;
+
+		private Output(byte kind) {
+			bytes = new ByteArrayOutputStream(256);
+			bytes.write(MAGIC, 0, MAGIC.length);
+			bytes.write(kind);
+			writeVarint(CODEC_VERSION);
+		}
+
+		private void writeVarint(int value) {
+			while ((value & ~0x7F) != 0) {
+				bytes.write((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			bytes.write(value);
+		}
+
+		private void writeString(String value) {
+			if (value == null) {
+				writeVarint(0);
+				return;
+			}
+			byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+			writeVarint(utf8.length + 1);
+			bytes.write(utf8, 0, utf8.length);
+		}
+
+		private void writeStringTable(List<String> table) {
+			writeVarint(table.size());
+			for (String value : table) {
+				writeString(value);
+			}
+		}
+
+		private byte[] toByteArray() {
+			return bytes.toByteArray();
+		}
+	}
+
+
+	/**
+	 * Binary reader
+	 */
+	private static class Input {
+		private final byte[] content;
+		private int position;
+
+		private Input(byte[] content, byte kind) {
+			this.content = content;
+			this.position = MAGIC.length;
+			if (!isBinary(content)) {
+				throw new IllegalArgumentException("Not a binary content");
+			}
+			if (readByte() != kind) {
+				throw new IllegalArgumentException("Unexpected kind of binary content");
+			}
+			checkVersion("codec", CODEC_VERSION);
+		}
+
+		private void checkVersion(String name, long supportedVersion) {
+			int version = readVarint();
+			if (version > supportedVersion) {
+				throw new IllegalArgumentException("Unsupported "+name+" version: "+version);
+			}
+		}
+
+		private byte readByte() {
+			if (position >= content.length) {
+				throw new IllegalArgumentException("Truncated binary content");
+			}
+			return content[position++];
+		}
+
+		private int readVarint() {
+			int value = 0;
+			for (int shift = 0; shift < 35; shift += 7) {
+				byte b = readByte();
+				value |= (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					if (value < 0) {
+						break;
+					}
+					return value;
+				}
+			}
+			throw new IllegalArgumentException("Malformed varint at position "+position);
+		}
+
+		private String readString() {
+			int length = readVarint();
+			if (length == 0) {
+				return null;
+			}
+			length--;
+			if (length > content.length - position) {
+				throw new IllegalArgumentException("Truncated binary content");
+			}
+			String value = new String(content, position, length, StandardCharsets.UTF_8);
+			position += length;
+			return value;
+		}
+
+		/**
+		 * Read a number of elements, each encoded on one byte at least: the number is
+		 * checked against the remaining bytes before any allocation
+		 */
+		private int readCount() {
+			int count = readVarint();
+			if (count > content.length - position) {
+				throw new IllegalArgumentException("Invalid number of elements: "+count);
+			}
+			return count;
+		}
+
+		private List<String> readStringTable() {
+			int size = readCount();
+			List<String> table = new ArrayList<>(size);
+			for (int i=0; i<size; i++) {
+				table.add(readString());
+			}
+			return table;
+		}
+
+		private String readTableString(List<String> table) {
+			int index = readVarint();
+			if (index >= table.size()) {
+				throw new IllegalArgumentException("Invalid string index: "+index);
+			}
+			return table.get(index);
+		}
+
+		private void checkEnd() {
+			if (position != content.length) {
+				throw new IllegalArgumentException("Unexpected content after position "+position);
+			}
+		}
+	}
+}
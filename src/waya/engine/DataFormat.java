@@ -0,0 +1,56 @@
+package waya.engine;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Format used to write the persons and the tags.
+ * The format of a content is detected when it is read: data written in a format is
+ * read whatever the format selected, and saving all the data converts it to the
+ * format selected.
+ * @author bertrand
+ *
+ */
+public enum DataFormat {
+	/** JSON text, created with Genson */
+	JSON,
+	/** compact binary encoding, see BinaryCodec */
+	BINARY;
+
+
+	/**
+	 * Return the format with a given name, regardless of case
+	 * @param name "json" or "binary"
+	 * @return format
+	 * @throws IllegalArgumentException if there is no format with this name
+	 */
+	public static DataFormat fromName(String name) {
+		return valueOf(name.trim().toUpperCase());
+	}
+
+
+	/**
+	 * Encode a person in this format
+	 * @param person person encoded
+	 * @return content
+	 */
+	public byte[] encode(Person person) {
+		if (this == BINARY) {
+			return BinaryCodec.encodePerson(person);
+		}
+		return person.toJson().getBytes(StandardCharsets.UTF_8);
+	}
+
+
+	/**
+	 * Decode a person, in any format
+	 * @param content content encoded in JSON (UTF-8) or binary
+	 * @return person
+	 * @throws IllegalArgumentException if the content is malformed
+	 */
+	public static Person decodePerson(byte[] content) {
+		if (BinaryCodec.isBinary(content)) {
+			return BinaryCodec.decodePerson(content);
+		}
+		return Person.fromJson(content);
+	}
+}
@@ -0,0 +1,85 @@
+package waya.engine;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Storage backend for the data of the managers.
+ * An entry is identified by a key (e.g. "<personId>_data" for a person, "tags" for the tags)
+ * and holds raw bytes.
+ * @author bertrand
+ *
+ */
+public interface DataStore {
+	
+	/**
+	 * Read the content of an entry
+	 * @param key key of the entry
+	 * @return content
+	 * @throws IOException if the entry does not exist or cannot be read
+	 */
+	public byte[] read(String key) throws IOException;
+	
+	
+	/**
+	 * Create or overwrite an entry
+	 * @param key key of the entry
+	 * @param content new content
+	 * @throws IOException
+	 */
+	public void write(String key, byte[] content) throws IOException;
+	
+	
+	/**
+	 * Create or overwrite several entries. Stores may group the work done for each entry,
+	 * e.g. the synchronization with the storage device.
+	 * @param contents key -> new content
+	 * @throws IOException
+	 */
+	public default void writeAll(Map<String, byte[]> contents) throws IOException {
+		for (Map.Entry<String, byte[]> entry : contents.entrySet()) {
+			write(entry.getKey(), entry.getValue());
+		}
+	}
+	
+	
+	/**
+	 * Remove an entry. Nothing is done if the entry does not exist.
+	 * @param key key of the entry
+	 * @throws IOException
+	 */
+	public void delete(String key) throws IOException;
+	
+	
+	/**
+	 * Tells if the store contains an entry
+	 * @param key key of the entry
+	 * @return true if the entry exists
+	 */
+	public boolean contains(String key);
+	
+	
+	/**
+	 * Return a stamp of the current content of an entry, which changes when the entry is 
+	 * written. Used to detect that data derived from an entry is outdated.
+	 * @param key key of the entry
+	 * @return stamp, or -1 if the entry does not exist
+	 */
+	public long version(String key);
+	
+	
+	/**
+	 * Return the keys of all the entries
+	 * @return set of keys
+	 * @throws IOException
+	 */
+	public Set<String> keys() throws IOException;
+	
+	
+	/**
+	 * Release the resources used by the store
+	 * @throws IOException
+	 */
+	public void close() throws IOException;
+}
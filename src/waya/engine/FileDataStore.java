@@ -0,0 +1,139 @@
+package waya.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Data store keeping each entry in its own file: <directory>/<key>.json
+ * The store does not interpret the contents: despite the extension, kept so that the
+ * directories written before the binary format remain readable, a file holds JSON text
+ * or the binary encoding of BinaryCodec, depending on the DataFormat selected when it
+ * was written. The format is detected from the content when it is decoded
+ * (BinaryCodec.isBinary(): the binary encoding starts with a magic number that JSON
+ * text cannot start with), so both formats may coexist in a directory.
+ * Files are overwritten atomically (temporary file renamed over the target) and, unless
+ * disabled with setSync(), forced to the storage device.
+ * @author bertrand
+ *
+ */
+public class FileDataStore implements DataStore {
+	private static final String EXTENSION = ".json";
+	
+	private File directory;
+	private boolean sync;
+	
+	/**
+	 * Constructor
+	 * @param directory directory containing the files (existing or created)
+	 * @throws IOException
+	 */
+	public FileDataStore(File directory) throws IOException {
+		// create the directory if it does not exist
+		if (directory.isDirectory() == false) {
+			Files.createDirectories(directory.toPath());
+		}
+		this.directory = directory;
+		this.sync = true;
+	}
+	
+	
+	/**
+	 * Set if the written files are forced to the storage device before the writes return
+	 * @param sync true to force the files (default), false to leave it to the system
+	 */
+	public void setSync(boolean sync) {
+		this.sync = sync;
+	}
+	
+	
+	public boolean isSync() {
+		return sync;
+	}
+	
+	
+	/**
+	 * Return the file used to store an entry
+	 * @param key key of the entry
+	 * @return file
+	 */
+	public File getFile(String key) {
+		return new File(directory, key+EXTENSION);
+	}
+	
+	
+	@Override
+	public byte[] read(String key) throws IOException {
+		return FileTools.readFile(getFile(key).toPath());
+	}
+	
+	
+	@Override
+	public void write(String key, byte[] content) throws IOException {
+		FileTools.overwriteFile(getFile(key).toString(), content, sync);
+	}
+	
+	
+	/**
+	 * {@inheritDoc}
+	 * The files are written before any of them is forced to the storage device, and each
+	 * directory is forced once, see FileTools.overwriteFiles().
+	 */
+	@Override
+	public void writeAll(Map<String, byte[]> contents) throws IOException {
+		Map<String, byte[]> fileContents = new LinkedHashMap<>();
+		for (Map.Entry<String, byte[]> entry : contents.entrySet()) {
+			fileContents.put(getFile(entry.getKey()).toString(), entry.getValue());
+		}
+		FileTools.overwriteFiles(fileContents, sync);
+	}
+	
+	
+	@Override
+	public void delete(String key) throws IOException {
+		Files.deleteIfExists(getFile(key).toPath());
+	}
+	
+	
+	@Override
+	public boolean contains(String key) {
+		return getFile(key).isFile();
+	}
+	
+	
+	/**
+	 * {@inheritDoc}
+	 * The stamp is the modification time of the file.
+	 */
+	@Override
+	public long version(String key) {
+		File file = getFile(key);
+		return file.isFile() ? file.lastModified() : -1;
+	}
+	
+	
+	@Override
+	public Set<String> keys() throws IOException {
+		String[] fileNames = directory.list();
+		if (fileNames == null) {
+			throw new IOException("Cannot list directory "+directory);
+		}
+		Set<String> keys = new HashSet<>();
+		for (String fileName : fileNames) {
+			if (fileName.endsWith(EXTENSION)) {
+				keys.add(fileName.substring(0, fileName.length()-EXTENSION.length()));
+			}
+		}
+		return keys;
+	}
+	
+	
+	@Override
+	public void close() {
+		// nothing to release
+	}
+}
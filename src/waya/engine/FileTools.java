@@ -1,121 +1,538 @@
 package waya.engine;
 
-import java.awt.geom.AffineTransform;
-import java.awt.image.AffineTransformOp;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.function.IntConsumer;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 
 public class FileTools {
 	
 	private static ResourceBundle MESSAGES = ResourceBundle.getBundle("waya.gui.resources.messages");
 	
+	/**
+	 * Extension of the temporary files written before being renamed over their target
+	 */
+	public static final String TEMP_EXTENSION = ".tmp";
+	// files from this size are memory-mapped instead of read through the buffer
+	private static final int MAP_THRESHOLD = 256 * 1024;
+	// direct buffer of each reading thread, reused from one file to the next
+	private static final ThreadLocal<ByteBuffer> READ_BUFFER = 
+			ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(MAP_THRESHOLD));
+	
 	/**
 	 * Write the string content to a file, and safely overwrite if the file exists
 	 * @param fileName name (absolute path) of the target file
-	 * @param content string content
+	 * @param content string content, written in UTF-8
 	 * @throws IOException
 	 */
 	public static void overwriteTextFile(String fileName, String content) throws IOException {
+		overwriteFile(fileName, content.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	
+	/**
+	 * Read the whole content of a file.
+	 * Large files are memory-mapped. Other files, including the tiny ones for which a 
+	 * mapping costs more than it saves, are read through a direct buffer reused by the 
+	 * calling thread: reading a data file costs one open and one read call. A file that 
+	 * grows beyond the buffer while it is read falls back to Files.readAllBytes().
+	 * @param path path of the file
+	 * @return content of the file
+	 * @throws IOException
+	 */
+	public static byte[] readFile(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size >= MAP_THRESHOLD) {
+				if (size > Integer.MAX_VALUE) {
+					throw new IOException("File too large: "+path);
+				}
+				MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+				byte[] content = new byte[(int) size];
+				mapped.get(content);
+				return content;
+			}
+			
+			// read until the end of the file: the size is only a hint
+			ByteBuffer buffer = READ_BUFFER.get();
+			buffer.clear();
+			while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+				// keep reading
+			}
+			if (!buffer.hasRemaining()) {
+				// the file grew beyond the buffer
+				return Files.readAllBytes(path);
+			}
+			buffer.flip();
+			byte[] content = new byte[buffer.remaining()];
+			buffer.get(content);
+			return content;
+		}
+	}
+	
+	
+	/**
+	 * Read the whole content of a text file encoded in UTF-8
+	 * @param path path of the file
+	 * @return text of the file
+	 * @throws IOException
+	 * @see #readFile(Path)
+	 */
+	public static String readTextFile(Path path) throws IOException {
+		return new String(readFile(path), StandardCharsets.UTF_8);
+	}
+	
+	
+	/**
+	 * Write the binary content to a file, and safely overwrite if the file exists.
+	 * The content is written to a temporary file, then renamed over the target: the 
+	 * target always holds either its previous or its new content, even after a crash.
+	 * The content is not forced to the storage device.
+	 * @param fileName name (absolute path) of the target file
+	 * @param content binary content
+	 * @throws IOException
+	 */
+	public static void overwriteFile(String fileName, byte[] content) throws IOException {
+		overwriteFile(fileName, content, false);
+	}
+	
+	
+	/**
+	 * Write the binary content to a file, and safely overwrite if the file exists
+	 * @param fileName name (absolute path) of the target file
+	 * @param content binary content
+	 * @param sync if true, the content and the new directory entry are forced to the 
+	 * storage device before returning
+	 * @throws IOException
+	 * @see #overwriteFile(String, byte[])
+	 */
+	public static void overwriteFile(String fileName, byte[] content, boolean sync) 
+	throws IOException {
 		Path filePath = Paths.get(fileName);
-		boolean overwritingExistingFile = (Files.exists(filePath));
-		Path backupPath = Paths.get(fileName+".save");
-		
-		// create a backup file if the target file already exists
-		if (overwritingExistingFile) {
-			try {
-				Files.move(filePath, backupPath, StandardCopyOption.REPLACE_EXISTING);
-			} catch (Exception e) {
-				throw new IOException(e);
+		Path tempPath = writeTempFile(filePath, content, sync);
+		try {
+			moveAtomically(tempPath, filePath);
+		} catch (IOException e) {
+			Files.deleteIfExists(tempPath);
+			throw e;
+		}
+		if (sync) {
+			syncDirectory(filePath.toAbsolutePath().getParent());
+		}
+	}
+	
+	
+	/**
+	 * Safely overwrite several files, as overwriteFile() does, grouping the work with the 
+	 * storage device: all the temporary files are written before the first one is forced, 
+	 * then they are renamed, and each directory is forced once instead of once per file.
+	 * If a temporary file cannot be written or forced, no target file is modified. The 
+	 * renames are not atomic as a whole: if a rename fails, the files renamed before keep 
+	 * their new content, each file holding either its previous or its new content, and the
+	 * temporary files not renamed are deleted.
+	 * @param contents file name (absolute path) -> binary content
+	 * @param sync if true, the contents and directory entries are forced to the storage device
+	 * @throws IOException
+	 */
+	public static void overwriteFiles(Map<String, byte[]> contents, boolean sync) 
+	throws IOException {
+		Map<Path, Path> tempPaths = new LinkedHashMap<>();
+		try {
+			for (Map.Entry<String, byte[]> entry : contents.entrySet()) {
+				Path filePath = Paths.get(entry.getKey());
+				tempPaths.put(filePath, writeTempFile(filePath, entry.getValue(), false));
+			}
+			if (sync) {
+				for (Path tempPath : tempPaths.values()) {
+					try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.WRITE)) {
+						channel.force(true);
+					}
+				}
 			}
+		} catch (IOException e) {
+			for (Path tempPath : tempPaths.values()) {
+				Files.deleteIfExists(tempPath);
+			}
+			throw e;
 		}
 		
-		// write content to file
-		try (FileWriter writer = new FileWriter(fileName); ) {
-			writer.write(content);
-		} catch (Exception e) {
-			if (overwritingExistingFile) {
-				// the existing file is restored
-				Files.move(backupPath, filePath);
+		Set<Path> directories = new HashSet<>();
+		try {
+			for (Map.Entry<Path, Path> entry : tempPaths.entrySet()) {
+				moveAtomically(entry.getValue(), entry.getKey());
+				directories.add(entry.getKey().toAbsolutePath().getParent());
+			}
+		} catch (IOException e) {
+			// the files renamed so far keep their new content
+			for (Path tempPath : tempPaths.values()) {
+				Files.deleteIfExists(tempPath);
 			}
-			throw new IOException(e);
+			throw e;
 		}
-		
-		// remove the backup file, if needed
-		if (overwritingExistingFile) {
-			try {
-				Files.deleteIfExists(backupPath);
-			} catch (Exception e) {
-				throw new IOException(e);
+		if (sync) {
+			for (Path directory : directories) {
+				syncDirectory(directory);
 			}
 		}
 	}
 	
 	
-	public static void importAndResizeImage(File source, int width, int height, File destination) 
-	{
-		// TODO: handle errors & throw stuffs
-		
-		// check that the extension of the destination is valid
-		if (destination.getName().endsWith(".png") == false) {
-			System.out.println(MESSAGES.getString("error_image_extension"));
-			return;
+	/**
+	 * Write a content to a new temporary file, in the directory of a target file and in a 
+	 * single channel write. Each call creates its own file (<target>.<random>.tmp), so 
+	 * that concurrent writers of a target do not write the same temporary file.
+	 * @return path of the temporary file
+	 */
+	private static Path writeTempFile(Path filePath, byte[] content, boolean sync) 
+	throws IOException {
+		Path absolutePath = filePath.toAbsolutePath();
+		Path tempPath = Files.createTempFile(absolutePath.getParent(), 
+				absolutePath.getFileName()+".", TEMP_EXTENSION);
+		try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.WRITE, 
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = ByteBuffer.wrap(content);
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			if (sync) {
+				channel.force(true);
+			}
+		} catch (IOException e) {
+			Files.deleteIfExists(tempPath);
+			throw e;
 		}
-		
-		// load the image from the file
-		BufferedImage image = null;
+		return tempPath;
+	}
+	
+	
+	/**
+	 * Rename a file over a target, atomically if the file system supports it
+	 */
+	private static void moveAtomically(Path source, Path target) throws IOException {
 		try {
-			image = ImageIO.read(source);
-		} catch (Exception e) {
-			// error: the image was not read
-			System.out.println(MESSAGES.getString("error_image_cannot_open"));
-			return;
+			Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, 
+					StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
 		}
+	}
+	
+	
+	/**
+	 * Force the entries of a directory (e.g. a renamed file) to the storage device.
+	 * Not supported on all platforms (e.g. Windows): nothing is done in this case.
+	 */
+	static void syncDirectory(Path directory) {
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			// directories cannot be opened or forced on this platform
+		}
+	}
+	
+	
+	/**
+	 * Import an image: the image is resized to fit given dimensions and written to the
+	 * destination, in the format given by its extension (PNG or JPEG)
+	 * @param source image file imported
+	 * @param width maximal width of the image written
+	 * @param height maximal height of the image written
+	 * @param destination file written
+	 * @throws IOException if the source cannot be read or the destination cannot be written,
+	 * with a message that can be displayed
+	 */
+	public static void importAndResizeImage(File source, int width, int height, File destination) 
+			throws IOException {
+		importAndResizeImage(source, width, height, destination, 0, 0, null, null);
+	}
+	
+	
+	/**
+	 * Import an image and write it in two sizes: the stored image and a thumbnail at display
+	 * size, scaled down from the stored image.
+	 * Meant to be run outside of the event thread: progress is given to a listener.
+	 * The files are written atomically, so that a failed import keeps the previous image.
+	 * @param source image file imported
+	 * @param width maximal width of the stored image
+	 * @param height maximal height of the stored image
+	 * @param destination stored image
+	 * @param thumbnailWidth maximal width of the thumbnail
+	 * @param thumbnailHeight maximal height of the thumbnail
+	 * @param thumbnail thumbnail file, or null to write only the stored image
+	 * @param progress listener receiving the progress in percent, or null
+	 * @throws IOException if the source cannot be read or the files cannot be written,
+	 * with a message that can be displayed
+	 */
+	public static void importAndResizeImage(File source, int width, int height, File destination,
+			int thumbnailWidth, int thumbnailHeight, File thumbnail, IntConsumer progress) 
+			throws IOException {
+		// check that the extensions of the destinations are valid
+		if (getImageFormat(destination) == null 
+				|| (thumbnail != null && getImageFormat(thumbnail) == null)) {
+			throw new IOException(MESSAGES.getString("error_image_extension"));
+		}
+		reportProgress(progress, 0);
+		
+		// load the image from the file, at the resolution needed
+		BufferedImage image = readImage(source, width, height);
+		reportProgress(progress, 40);
 		
 		// resize the image to fit the viewer's dimensions
 		image = resizeImage(image, width, height);
+		reportProgress(progress, 60);
 		
-		// copy image to destination
+		// write the image, then the thumbnail scaled from it
 		try {
-			ImageIO.write(image, "png", destination);
+			Map<String, byte[]> contents = new LinkedHashMap<>();
+			contents.put(destination.getAbsolutePath(), encodeImage(image, destination));
+			reportProgress(progress, 80);
+			if (thumbnail != null) {
+				BufferedImage thumbnailImage = resizeImage(image, thumbnailWidth, thumbnailHeight);
+				contents.put(thumbnail.getAbsolutePath(), encodeImage(thumbnailImage, thumbnail));
+			}
+			overwriteFiles(contents, true);
 		} catch (IOException e) {
-			// error: cannot export the image
-			System.out.println(MESSAGES.getString("error_image_cannot_save"));
-			return;
+			throw new IOException(MESSAGES.getString("error_image_cannot_save"), e);
+		}
+		reportProgress(progress, 100);
+	}
+	
+	
+	/**
+	 * Read an image that will be resized to fit given dimensions.
+	 * Large images are decoded with source subsampling: only one pixel out of n in each 
+	 * direction is decoded, n being chosen so that the image decoded stays at least twice 
+	 * as large as the resized image. The memory used depends on the size of the resized 
+	 * image instead of the size of the source.
+	 * @param source image file
+	 * @param width maximal width of the resized image
+	 * @param height maximal height of the resized image
+	 * @return decoded image, to be resized
+	 * @throws IOException if the image cannot be read, with a message that can be displayed
+	 */
+	public static BufferedImage readImage(File source, int width, int height) throws IOException {
+		BufferedImage image;
+		try (ImageInputStream input = ImageIO.createImageInputStream(source)) {
+			image = (input == null) ? null : decodeImage(input, width, height);
+		} catch (Exception e) {
+			throw new IOException(MESSAGES.getString("error_image_cannot_open"), e);
 		}
+		if (image == null) {
+			// missing file or no reader for this file
+			throw new IOException(MESSAGES.getString("error_image_cannot_open"));
+		}
+		return image;
 	}
 	
 	
+	/**
+	 * Decode an image, subsampled for given dimensions
+	 * @return decoded image, or null if there is no reader for this image
+	 */
+	private static BufferedImage decodeImage(ImageInputStream input, int width, int height) 
+			throws IOException {
+		Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+		if (!readers.hasNext()) {
+			return null;
+		}
+		ImageReader reader = readers.next();
+		try {
+			reader.setInput(input, true, true);
+			ImageReadParam param = reader.getDefaultReadParam();
+			int subsampling = getSubsampling(reader.getWidth(0), reader.getHeight(0), width, height);
+			if (subsampling > 1) {
+				param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+			}
+			return reader.read(0, param);
+		} finally {
+			reader.dispose();
+		}
+	}
+	
+	
+	/**
+	 * Return the subsampling to decode an image resized to fit given dimensions: the image 
+	 * decoded is at least twice as large as the resized image, so that it is still reduced 
+	 * by averaging pixels
+	 * @param imageWidth width of the source image
+	 * @param imageHeight height of the source image
+	 * @param width maximal width of the resized image
+	 * @param height maximal height of the resized image
+	 * @return subsampling, 1 to decode all the pixels
+	 */
+	public static int getSubsampling(int imageWidth, int imageHeight, int width, int height) {
+		double ratio = Math.min(((double) width)/imageWidth, ((double) height)/imageHeight);
+		return Math.max(1, (int) Math.floor(1/(2*ratio)));
+	}
+	
+	
+	/**
+	 * Resize an image to fit given dimensions, keeping its aspect ratio.
+	 * Large reductions are done in several steps halving the size, each one averaging the 
+	 * pixels of the previous one: a single bilinear step would skip most source pixels.
+	 * @param image image resized, of any type
+	 * @param width maximal width
+	 * @param height maximal height
+	 * @return resized image, in RGB or ARGB
+	 */
 	public static BufferedImage resizeImage(BufferedImage image, int width, int height) {
 		
 		int imageWidth = image.getWidth();
 		int imageHeight = image.getHeight();
+		Dimension newSize = getResizedSize(imageWidth, imageHeight, width, height);
+		int newWidth = newSize.width;
+		int newHeight = newSize.height;
 		
+		// type of the scaled images: the type of the source may not be instantiable
+		// (e.g. TYPE_CUSTOM)
+		int type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB 
+				: BufferedImage.TYPE_INT_RGB;
+		
+		// halve the size while the remaining reduction is larger than 2
+		BufferedImage scaledImage = image;
+		int currentWidth = imageWidth;
+		int currentHeight = imageHeight;
+		do {
+			currentWidth = (currentWidth/2 >= newWidth) ? currentWidth/2 : newWidth;
+			currentHeight = (currentHeight/2 >= newHeight) ? currentHeight/2 : newHeight;
+			scaledImage = scaleImage(scaledImage, currentWidth, currentHeight, type);
+		} while (currentWidth != newWidth || currentHeight != newHeight);
+		
+		return scaledImage;
+	}
+	
+	
+	/**
+	 * Return the size of an image resized by resizeImage()
+	 * @param imageWidth width of the image
+	 * @param imageHeight height of the image
+	 * @param width maximal width
+	 * @param height maximal height
+	 * @return size of the resized image
+	 */
+	public static Dimension getResizedSize(int imageWidth, int imageHeight, int width, int height) {
 		// find scaling ratio
 		float widthRatio = ((float) width)/imageWidth;
 		float heightRatio = ((float) height)/imageHeight;
 		float ratio = widthRatio<heightRatio ? widthRatio : heightRatio;
-		
-		// build scaling operation
-		AffineTransform transform = new AffineTransform();
-		transform.scale(ratio, ratio);
-		AffineTransformOp scaleTransformOp = 
-				new AffineTransformOp(transform, AffineTransformOp.TYPE_BILINEAR);
-		
-		// build scaled image
-		int newWidth = (int) Math.floor(imageWidth*ratio);	// TODO: find simpler
-		int newHeight = (int) Math.floor(imageHeight*ratio);	// TODO: same
-		BufferedImage scaledImage = new BufferedImage(newWidth, newHeight, image.getType());
-		scaledImage = scaleTransformOp.filter(image, scaledImage);
-		
+		return new Dimension(Math.max(1, (int) Math.floor(imageWidth*ratio)), 
+				Math.max(1, (int) Math.floor(imageHeight*ratio)));
+	}
+	
+	
+	/**
+	 * Read the size of an image from its header, without decoding it
+	 * @param file image file
+	 * @return size of the image
+	 * @throws IOException if the image cannot be read
+	 */
+	public static Dimension readImageSize(File file) throws IOException {
+		try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+			Iterator<ImageReader> readers = (input == null) ? null : ImageIO.getImageReaders(input);
+			if (readers == null || !readers.hasNext()) {
+				throw new IOException(MESSAGES.getString("error_image_cannot_open"));
+			}
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(input, true, true);
+				return new Dimension(reader.getWidth(0), reader.getHeight(0));
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+	
+	
+	/**
+	 * Draw an image at given size, with bilinear interpolation
+	 */
+	private static BufferedImage scaleImage(BufferedImage image, int width, int height, int type) {
+		BufferedImage scaledImage = new BufferedImage(width, height, type);
+		Graphics2D g2d = scaledImage.createGraphics();
+		g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, 
+				RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+		g2d.drawImage(image, 0, 0, width, height, null);
+		g2d.dispose();
 		return scaledImage;
 	}
+	
+	
+	/**
+	 * Return the format of an image file, from its extension
+	 * @param file image file
+	 * @return "png", "jpg", or null if the extension is not supported
+	 */
+	private static String getImageFormat(File file) {
+		String name = file.getName().toLowerCase(Locale.ROOT);
+		if (name.endsWith(".png")) {
+			return "png";
+		} else if (name.endsWith(".jpg") || name.endsWith(".jpeg")) {
+			return "jpg";
+		}
+		return null;
+	}
+	
+	
+	/**
+	 * Encode an image in the format of a file, given by its extension (PNG or JPEG).
+	 * JPEG has no transparency: the image is drawn on a white background.
+	 * @param image image encoded
+	 * @param file file the content is written to
+	 * @return content of the file
+	 * @throws IOException if the extension is not supported or the image cannot be encoded
+	 */
+	public static byte[] encodeImage(BufferedImage image, File file) throws IOException {
+		String format = getImageFormat(file);
+		if (format == null) {
+			throw new IOException(MESSAGES.getString("error_image_extension"));
+		}
+		if (format.equals("jpg") && image.getColorModel().hasAlpha()) {
+			BufferedImage opaqueImage = new BufferedImage(image.getWidth(), image.getHeight(), 
+					BufferedImage.TYPE_INT_RGB);
+			Graphics2D g2d = opaqueImage.createGraphics();
+			g2d.drawImage(image, 0, 0, Color.WHITE, null);
+			g2d.dispose();
+			image = opaqueImage;
+		}
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		if (!ImageIO.write(image, format, output)) {
+			throw new IOException("No writer for format "+format);
+		}
+		return output.toByteArray();
+	}
+	
+	
+	private static void reportProgress(IntConsumer progress, int percent) {
+		if (progress != null) {
+			progress.accept(percent);
+		}
+	}
 }
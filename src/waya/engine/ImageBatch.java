@@ -0,0 +1,279 @@
+package waya.engine;
+
+import java.awt.Dimension;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * Tool to regenerate the images of the persons of a data directory, e.g. after the display
+ * size has changed.
+ *
+ * Usage: ImageBatch <data directory> [<image size> <thumbnail size>]
+ * - each <id>_image.png larger than the image size is resized
+ * - the thumbnail <id>_thumbnail.png of each image is written at the thumbnail size
+ * - the thumbnails of the image store (images/<hash>_thumbnail.png) are written at the 
+ *   thumbnail size: the images of the store are not resized, as their name is the hash 
+ *   of their content
+ * The sizes are the maximal width and height, ImageStore.IMAGE_SIZE and
+ * ImageStore.THUMBNAIL_SIZE by default (the sizes used by the person panel). Images are processed in parallel, one per core. An image whose
+ * outputs are up to date (right size, thumbnail newer than the image) is skipped, from the
+ * headers of the files only. Files are replaced atomically, so that an interrupted batch
+ * leaves every image either in its previous or in its new version.
+ * @author bertrand
+ *
+ */
+public class ImageBatch {
+	private static final Logger LOGGER = Logger.getLogger(ImageBatch.class.getPackage().getName());
+	public static final String IMAGE_END = "_image.png";
+	public static final String THUMBNAIL_END = "_thumbnail.png";
+
+	/**
+	 * Outcome of a batch
+	 */
+	public static class Result {
+		private int processed;
+		private int upToDate;
+		private int failed;
+		private long bytesRead;
+		private long bytesWritten;
+		private long elapsedNanos;
+		private final List<String> errors = new ArrayList<>();
+
+		/**
+		 * @return number of images whose outputs were written
+		 */
+		public int getProcessed() {
+			return processed;
+		}
+
+		/**
+		 * @return number of images skipped, their outputs being up to date
+		 */
+		public int getUpToDate() {
+			return upToDate;
+		}
+
+		/**
+		 * @return number of images that could not be processed
+		 */
+		public int getFailed() {
+			return failed;
+		}
+
+		/**
+		 * @return errors of the images that could not be processed: file and message
+		 */
+		public synchronized List<String> getErrors() {
+			return new ArrayList<>(errors);
+		}
+
+		/**
+		 * @return size of the images read and of the files written (bytes)
+		 */
+		public long getBytes() {
+			return bytesRead+bytesWritten;
+		}
+
+		/**
+		 * @return duration of the batch (s)
+		 */
+		public double getSeconds() {
+			return elapsedNanos/1e9;
+		}
+
+		@Override
+		public String toString() {
+			double seconds = Math.max(getSeconds(), 1e-9);
+			StringBuilder builder = new StringBuilder();
+			for (String error : getErrors()) {
+				builder.append("Cannot process ").append(error).append("\n");
+			}
+			return builder+String.format("%d images processed, %d up to date, %d failed in %.2f s: "
+					+"%.1f images/s, %.1f MB/s", processed, upToDate, failed, getSeconds(),
+					processed/seconds, getBytes()/seconds/(1024*1024));
+		}
+	}
+
+
+	/**
+	 * Outcome of the processing of an image
+	 */
+	private enum Status {
+		PROCESSED, UP_TO_DATE, FAILED
+	}
+
+
+	/**
+	 * Regenerate the images of a data directory
+	 * @param directory data directory
+	 * @param imageSize maximal width and height of the images
+	 * @param thumbnailSize maximal width and height of the thumbnails
+	 * @param numberOfThreads number of images processed in parallel
+	 * @return outcome of the batch
+	 * @throws IOException if the directory cannot be listed
+	 */
+	public static Result run(File directory, int imageSize, int thumbnailSize, int numberOfThreads)
+			throws IOException {
+		if (numberOfThreads < 1) {
+			throw new IllegalArgumentException("Number of threads must be positive");
+		}
+		File[] imageFiles = directory.listFiles((dir, name) -> name.endsWith(IMAGE_END));
+		if (imageFiles == null) {
+			throw new IOException("Cannot list directory "+directory);
+		}
+		ImageStore imageStore = new ImageStore(directory);
+		File[] storedFiles = new File(directory, ImageStore.IMAGES_DIR).listFiles(
+				(dir, name) -> name.endsWith(".png") && !name.endsWith(THUMBNAIL_END));
+
+		Result result = new Result();
+		long start = System.nanoTime();
+		ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+		try {
+			List<Future<Status>> statuses = new ArrayList<>();
+			for (File imageFile : imageFiles) {
+				String name = imageFile.getName();
+				File thumbnailFile = new File(directory, 
+						name.substring(0, name.length()-IMAGE_END.length())+THUMBNAIL_END);
+				statuses.add(executor.submit(
+						() -> process(imageFile, thumbnailFile, imageSize, thumbnailSize, result)));
+			}
+			if (storedFiles != null) {
+				for (File imageFile : storedFiles) {
+					File thumbnailFile = imageStore.getThumbnailFile(
+							ImageStore.IMAGES_DIR+"/"+imageFile.getName());
+					statuses.add(executor.submit(
+							() -> process(imageFile, thumbnailFile, 0, thumbnailSize, result)));
+				}
+			}
+			for (Future<Status> status : statuses) {
+				switch (status.get()) {
+					case PROCESSED:
+						result.processed++;
+						break;
+					case UP_TO_DATE:
+						result.upToDate++;
+						break;
+					default:
+						result.failed++;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			// should not happen: errors are caught by the tasks
+			throw new IOException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		result.elapsedNanos = System.nanoTime()-start;
+		return result;
+	}
+
+
+	/**
+	 * Resize an image if needed and write its thumbnail, on a worker thread
+	 * @param imageSize maximal size of the image, or 0 to keep the image as is
+	 * @param result result of the batch, whose byte counts are updated
+	 * @return outcome for this image
+	 */
+	private static Status process(File imageFile, File thumbnailFile, int imageSize, 
+			int thumbnailSize, Result result) {
+		try {
+			Dimension size = FileTools.readImageSize(imageFile);
+			boolean resize = imageSize > 0 && (size.width > imageSize || size.height > imageSize);
+			Dimension newSize = resize
+					? FileTools.getResizedSize(size.width, size.height, imageSize, imageSize) : size;
+			if (!resize && isUpToDate(thumbnailFile, imageFile, newSize, thumbnailSize)) {
+				return Status.UP_TO_DATE;
+			}
+
+			long bytesRead = imageFile.length();
+			if (resize) {
+				// the image is read before being replaced
+				FileTools.importAndResizeImage(imageFile, imageSize, imageSize, imageFile,
+						thumbnailSize, thumbnailSize, thumbnailFile, null);
+			} else {
+				FileTools.importAndResizeImage(imageFile, thumbnailSize, thumbnailSize, thumbnailFile);
+			}
+			long bytesWritten = thumbnailFile.length() + (resize ? imageFile.length() : 0);
+			synchronized (result) {
+				result.bytesRead += bytesRead;
+				result.bytesWritten += bytesWritten;
+			}
+			return Status.PROCESSED;
+		} catch (IOException e) {
+			LOGGER.fine("Cannot process "+imageFile+": "+e.getMessage());
+			synchronized (result) {
+				result.errors.add(imageFile+": "+e.getMessage());
+			}
+			return Status.FAILED;
+		}
+	}
+
+
+	/**
+	 * Tells if the thumbnail of an image is up to date: newer than the image, and at the
+	 * size of the image resized, within one pixel (the rounding depends on the subsampling
+	 * used to decode the image)
+	 */
+	private static boolean isUpToDate(File thumbnailFile, File imageFile, Dimension imageSize,
+			int thumbnailSize) {
+		if (!thumbnailFile.isFile() || thumbnailFile.lastModified() < imageFile.lastModified()) {
+			return false;
+		}
+		try {
+			Dimension size = FileTools.readImageSize(thumbnailFile);
+			Dimension expectedSize = FileTools.getResizedSize(imageSize.width, imageSize.height,
+					thumbnailSize, thumbnailSize);
+			return Math.abs(size.width-expectedSize.width) <= 1
+					&& Math.abs(size.height-expectedSize.height) <= 1;
+		} catch (IOException e) {
+			// unreadable thumbnail: written again
+			return false;
+		}
+	}
+
+
+	public static void main(String[] argv) {
+		if (argv.length != 1 && argv.length != 3) {
+			System.out.println("Usage: ImageBatch <data directory> [<image size> <thumbnail size>]");
+			System.exit(1);
+		}
+		File directory = new File(argv[0]);
+		if (!directory.isDirectory()) {
+			System.out.println("Directory does not exist: "+directory);
+			System.exit(1);
+		}
+		int imageSize = ImageStore.IMAGE_SIZE;
+		int thumbnailSize = ImageStore.THUMBNAIL_SIZE;
+		if (argv.length == 3) {
+			try {
+				imageSize = Integer.parseInt(argv[1]);
+				thumbnailSize = Integer.parseInt(argv[2]);
+			} catch (NumberFormatException e) {
+				System.out.println("Invalid size: "+e.getMessage());
+				System.exit(1);
+			}
+		}
+
+		try {
+			Result result = run(directory, imageSize, thumbnailSize,
+					Runtime.getRuntime().availableProcessors());
+			System.out.println(result);
+			if (result.getFailed() > 0) {
+				System.exit(1);
+			}
+		} catch (IOException e) {
+			System.out.println("Batch failed: "+e.getMessage());
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,272 @@
+package waya.engine;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.function.IntConsumer;
+import java.util.logging.Logger;
+
+/**
+ * Content-addressed store of the images of the persons, in the directory "images" of the
+ * data directory.
+ *
+ * An image is imported once resized (normalized), and stored under the hash of its pixels:
+ * persons with the same image share a single file, and a single entry of the image cache.
+ * The image path of a person (Person.imagePath) is the path of its image relative to the
+ * data directory, e.g. "images/<hash>.png", the thumbnail being "images/<hash>_thumbnail.png".
+ *
+ * The store counts the persons referencing each image: the counts are derived from the
+ * image paths of the persons when the store is loaded, then updated by the GUI. An image
+ * is deleted when its last reference is removed.
+ * @author bertrand
+ *
+ */
+public class ImageStore {
+	private static final Logger LOGGER = Logger.getLogger(ImageStore.class.getPackage().getName());
+	public static final String IMAGES_DIR = "images";
+	// maximal width and height of the thumbnails, at the display size of the person panel
+	public static final int THUMBNAIL_SIZE = 150;
+	// the images are kept larger than displayed, to be viewed at full size
+	public static final int IMAGE_TO_THUMBNAIL_RATIO = 4;
+	// maximal width and height of the images
+	public static final int IMAGE_SIZE = IMAGE_TO_THUMBNAIL_RATIO*THUMBNAIL_SIZE;
+	private static final String IMAGE_EXTENSION = ".png";
+	private static final ResourceBundle MESSAGES = ResourceBundle.getBundle("waya.gui.resources.messages");
+
+	private final File dataDirectory;
+	// image path -> number of persons referencing the image
+	private final HashMap<String, Integer> referenceCounts;
+	// images being written by an import: the other imports of an image wait for its write
+	private final HashSet<String> writtenImagePaths;
+	// images are deleted when not referenced, unless some persons could not be loaded
+	private final boolean deleteUnreferenced;
+
+	/**
+	 * Constructor of an empty store
+	 * @param dataDirectory data directory containing the directory of the images
+	 */
+	public ImageStore(File dataDirectory) {
+		this(dataDirectory, true);
+	}
+
+
+	private ImageStore(File dataDirectory, boolean deleteUnreferenced) {
+		this.dataDirectory = dataDirectory;
+		this.referenceCounts = new HashMap<>();
+		this.writtenImagePaths = new HashSet<>();
+		this.deleteUnreferenced = deleteUnreferenced;
+	}
+
+
+	/**
+	 * Load the store of a data directory, counting the references from the persons.
+	 * If some persons could not be loaded, their references are unknown: images are then
+	 * never deleted.
+	 * @param dataDirectory data directory
+	 * @param pm person manager of the data directory
+	 * @return image store
+	 */
+	public static ImageStore load(File dataDirectory, PersonManager pm) {
+		ImageStore store = new ImageStore(dataDirectory, pm.getLoadErrors().isEmpty());
+		for (String personId : pm.getPersonIds()) {
+			store.addReference(pm.getPersonView(personId).getImagePath());
+		}
+		return store;
+	}
+
+
+	/**
+	 * Import an image in the store: the image is resized, and written with its thumbnail
+	 * unless an identical image is already stored.
+	 * The image is returned with a reference held by the caller, so that it is not deleted
+	 * before being assigned to a person: the caller must call removeReference() if the image
+	 * is not used.
+	 * An image is written by a single import at a time: concurrent imports of the same image
+	 * wait for its write, then use the image written.
+	 * Meant to be run outside of the event thread: progress is given to a listener.
+	 * @param source image file imported
+	 * @param width maximal width of the image
+	 * @param height maximal height of the image
+	 * @param thumbnailWidth maximal width of the thumbnail
+	 * @param thumbnailHeight maximal height of the thumbnail
+	 * @param progress listener receiving the progress in percent, or null
+	 * @return image path of the image
+	 * @throws IOException if the source cannot be read or the image cannot be written, with
+	 * a message that can be displayed
+	 */
+	public String importImage(File source, int width, int height, int thumbnailWidth,
+			int thumbnailHeight, IntConsumer progress) throws IOException {
+		reportProgress(progress, 0);
+		BufferedImage image = FileTools.resizeImage(FileTools.readImage(source, width, height),
+				width, height);
+		reportProgress(progress, 50);
+		String imagePath = IMAGES_DIR+"/"+hash(image)+IMAGE_EXTENSION;
+
+		// reserve the image before checking that it exists: it cannot be deleted meanwhile
+		File imageFile = getImageFile(imagePath);
+		boolean exists;
+		synchronized (this) {
+			addReference(imagePath);
+			try {
+				while (writtenImagePaths.contains(imagePath)) {
+					wait();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				removeReference(imagePath);
+				throw new IOException(MESSAGES.getString("error_image_cannot_save"), e);
+			}
+			exists = imageFile.isFile();
+			if (!exists) {
+				writtenImagePaths.add(imagePath);
+			}
+		}
+		if (!exists) {
+			try {
+				Files.createDirectories(imageFile.getParentFile().toPath());
+				File thumbnailFile = getThumbnailFile(imagePath);
+				Map<String, byte[]> contents = new LinkedHashMap<>();
+				contents.put(imageFile.getAbsolutePath(), FileTools.encodeImage(image, imageFile));
+				BufferedImage thumbnail = FileTools.resizeImage(image, thumbnailWidth, thumbnailHeight);
+				contents.put(thumbnailFile.getAbsolutePath(), FileTools.encodeImage(thumbnail, thumbnailFile));
+				FileTools.overwriteFiles(contents, true);
+			} catch (IOException e) {
+				removeReference(imagePath);
+				throw new IOException(MESSAGES.getString("error_image_cannot_save"), e);
+			} finally {
+				synchronized (this) {
+					writtenImagePaths.remove(imagePath);
+					notifyAll();
+				}
+			}
+		}
+		reportProgress(progress, 100);
+		return imagePath;
+	}
+
+
+	/**
+	 * Tells if an image path designates an image of the store
+	 * @param imagePath image path of a person
+	 * @return true if the image is in the store
+	 */
+	public static boolean isStored(String imagePath) {
+		return imagePath != null && imagePath.startsWith(IMAGES_DIR+"/");
+	}
+
+
+	/**
+	 * Return the file of an image
+	 * @param imagePath image path of a person
+	 * @return image file
+	 */
+	public File getImageFile(String imagePath) {
+		return new File(dataDirectory, imagePath);
+	}
+
+
+	/**
+	 * Return the thumbnail of an image
+	 * @param imagePath image path of a person
+	 * @return thumbnail file
+	 */
+	public File getThumbnailFile(String imagePath) {
+		String path = imagePath.endsWith(IMAGE_EXTENSION)
+				? imagePath.substring(0, imagePath.length()-IMAGE_EXTENSION.length()) : imagePath;
+		return new File(dataDirectory, path+ImageBatch.THUMBNAIL_END);
+	}
+
+
+	/**
+	 * Count a new reference to an image, e.g. when a person is given this image
+	 * @param imagePath image path, nothing is done if empty
+	 */
+	public synchronized void addReference(String imagePath) {
+		if (imagePath != null && !imagePath.isEmpty()) {
+			referenceCounts.merge(imagePath, 1, Integer::sum);
+		}
+	}
+
+
+	/**
+	 * Release a reference to an image, e.g. when its person is deleted or changes image.
+	 * The image of the store is deleted when it is not referenced anymore.
+	 * @param imagePath image path, nothing is done if empty
+	 */
+	public synchronized void removeReference(String imagePath) {
+		if (imagePath == null || !referenceCounts.containsKey(imagePath)) {
+			return;
+		}
+		int count = referenceCounts.get(imagePath)-1;
+		if (count > 0) {
+			referenceCounts.put(imagePath, count);
+			return;
+		}
+		referenceCounts.remove(imagePath);
+		if (deleteUnreferenced && isStored(imagePath)) {
+			try {
+				Files.deleteIfExists(getImageFile(imagePath).toPath());
+				Files.deleteIfExists(getThumbnailFile(imagePath).toPath());
+			} catch (IOException e) {
+				LOGGER.warning("Cannot delete image "+imagePath+": "+e.getMessage());
+			}
+		}
+	}
+
+
+	/**
+	 * Return the number of persons referencing an image
+	 * @param imagePath image path
+	 * @return number of references
+	 */
+	public synchronized int getReferenceCount(String imagePath) {
+		return referenceCounts.getOrDefault(imagePath, 0);
+	}
+
+
+	/**
+	 * Hash of the pixels of an image, in hexadecimal
+	 */
+	private static String hash(BufferedImage image) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// SHA-256 is provided by every Java platform
+			throw new IllegalStateException(e);
+		}
+		int width = image.getWidth();
+		int height = image.getHeight();
+		digest.update(ByteBuffer.allocate(12).putInt(width).putInt(height)
+				.putInt(image.getColorModel().hasAlpha() ? 1 : 0).array());
+		ByteBuffer row = ByteBuffer.allocate(4*width);
+		int[] pixels = new int[width];
+		for (int y=0; y<height; y++) {
+			image.getRGB(0, y, width, 1, pixels, 0, width);
+			row.clear();
+			row.asIntBuffer().put(pixels);
+			digest.update(row.array(), 0, 4*width);
+		}
+		StringBuilder builder = new StringBuilder();
+		for (byte b : digest.digest()) {
+			builder.append(String.format("%02x", b));
+		}
+		return builder.toString();
+	}
+
+
+	private static void reportProgress(IntConsumer progress, int percent) {
+		if (progress != null) {
+			progress.accept(percent);
+		}
+	}
+}
@@ -4,12 +4,8 @@ import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
-import com.owlike.genson.Genson;
-import com.owlike.genson.GensonBuilder;
-
-public class Information {
-	@SuppressWarnings("unused")
-	private static final long VERSION = 1L;
+public class Information implements InformationView {
+	static final long VERSION = 1L;
 	
 	private String name;
 	private List<String> values;
@@ -158,21 +154,30 @@ public class Information {
 	 * @return formatted string
 	 */
 	public String toJson() {
-		GensonBuilder builder = new GensonBuilder();
-		builder.include("VERSION");
-		builder.include("values");
-		builder.exclude("numberOfValues");
-		Genson genson = builder.create();
-		return genson.serialize(this);
+		return JsonConverters.INFORMATION.serialize(this);
+	}
+	
+	@Override
+	public boolean equals(Object other) {
+		if (this == other) {
+			return true;
+		}
+		if (!(other instanceof Information)) {
+			return false;
+		}
+		Information otherInfo = (Information) other;
+		return name.equals(otherInfo.name) && values.equals(otherInfo.values);
 	}
 	
+	
+	@Override
+	public int hashCode() {
+		return 31 * name.hashCode() + values.hashCode();
+	}
+	
+	
 	@Override
 	public String toString() {
-		GensonBuilder builder = new GensonBuilder();
-		builder.include("VERSION");
-		builder.include("values");
-		builder.exclude("numberOfValues");
-		Genson genson = builder.create();
-		return genson.serialize(this);
+		return JsonConverters.INFORMATION.serialize(this);
 	}
 }
@@ -0,0 +1,38 @@
+package waya.engine;
+
+import java.util.List;
+
+/**
+ * Read-only access to an information of a person
+ * @author bertrand
+ *
+ * @see PersonView
+ */
+public interface InformationView {
+	
+	/**
+	 * @return name of the information
+	 */
+	public String getName();
+	
+	
+	/**
+	 * @return number of values
+	 */
+	public int getNumberOfValues();
+	
+	
+	/**
+	 * Return the value at index
+	 * @param index index accessed
+	 * @return value at given index
+	 * @throws IndexOutOfBoundsException
+	 */
+	public String getValue(int index);
+	
+	
+	/**
+	 * @return unmodifiable list of the values
+	 */
+	public List<String> getValues();
+}
@@ -0,0 +1,320 @@
+package waya.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * Append-only journal of the operations applied to a manager.
+ *
+ * Each operation is a line holding a JSON array of strings: the operation name followed by
+ * its arguments. The journal holds the operations done since the last snapshot of the
+ * manager: at startup, the manager loads its snapshot then replays the journal.
+ *
+ * When the journal grows too large, it is compacted: the current journal is set aside
+ * (<journal>.old), a new empty journal is started, and a new snapshot is written by a
+ * background thread. The old journal is deleted once the snapshot is written, so that
+ * no operation is lost if the snapshot cannot be written.
+ *
+ * With a persistence service, the appends, syncs and compactions are run by the worker
+ * thread of the service, in the order of the calls: the calling thread (e.g. the Swing
+ * event thread) only queues them. The failures are then reported by hasFailed().
+ * @author bertrand
+ *
+ */
+public class Journal {
+	private static final Logger LOGGER = Logger.getLogger(Journal.class.getPackage().getName());
+	private static final String OLD_EXTENSION = ".old";
+
+	private File file;
+	private File oldFile;
+	private FileChannel output;
+	// read without lock, so that the calling thread does not wait for a sync in progress
+	private volatile long size;
+	private long compactionThreshold;
+	private ExecutorService compactionExecutor;
+	private Future<?> pendingCompaction;
+	// runs the I/O of the journal, or null to run it on the calling thread
+	private PersistenceService persistenceService;
+	// key of the sync tasks, so that a single sync is pending
+	private final Object syncTaskKey = new Object();
+	private volatile boolean failed;
+
+	/**
+	 * Write the snapshot of a manager
+	 */
+	public interface SnapshotWriter {
+		public void write() throws IOException;
+	}
+
+
+	/**
+	 * Constructor: open the journal file, or create it if it does not exist
+	 * @param file journal file
+	 * @param compactionThreshold size (in bytes) above which the journal needs a compaction
+	 * @throws IOException
+	 */
+	public Journal(File file, long compactionThreshold) throws IOException {
+		this.file = file;
+		this.oldFile = new File(file.getPath()+OLD_EXTENSION);
+		this.compactionThreshold = compactionThreshold;
+		this.output = openOutput();
+		this.size = output.size();
+		this.pendingCompaction = null;
+		this.compactionExecutor = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "journal-compaction-"+file.getName());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+
+	/**
+	 * Run the I/O of the journal on the worker thread of a persistence service.
+	 * Set before any operation is appended.
+	 * @param service persistence service, or null to run the I/O on the calling thread
+	 */
+	public void setPersistenceService(PersistenceService service) {
+		this.persistenceService = service;
+	}
+
+
+	/**
+	 * Tells if an operation could not be appended or a snapshot could not be written by the
+	 * persistence service since the last compaction: the journal should be compacted
+	 * @return true if an I/O task failed
+	 */
+	public boolean hasFailed() {
+		return failed;
+	}
+
+
+	/**
+	 * Read the operations of the journal, including the operations of an old journal
+	 * whose compaction did not complete
+	 * @return list of operations: name followed by the arguments
+	 * @throws IOException
+	 */
+	public synchronized List<String[]> readEntries() throws IOException {
+		List<String[]> entries = new ArrayList<>();
+		for (File journalFile : new File[] {oldFile, file}) {
+			if (!journalFile.isFile()) {
+				continue;
+			}
+			for (String line : Files.readAllLines(journalFile.toPath(), StandardCharsets.UTF_8)) {
+				if (line.isEmpty()) {
+					continue;
+				}
+				try {
+					entries.add(JsonConverters.DEFAULT.deserialize(line, String[].class));
+				} catch (Exception e) {
+					// incomplete line left by an interrupted write
+					LOGGER.warning("Skip journal entry in "+journalFile.getName()+": "+line);
+				}
+			}
+		}
+		return entries;
+	}
+
+
+	/**
+	 * Append an operation to the journal
+	 * @param operation name of the operation, followed by its arguments
+	 * @throws IOException
+	 */
+	public void append(String... operation) throws IOException {
+		String line = JsonConverters.DEFAULT.serialize(operation)+"\n";
+		byte[] content = line.getBytes(StandardCharsets.UTF_8);
+		if (persistenceService == null) {
+			write(content);
+			return;
+		}
+		persistenceService.submit(null, () -> {
+			try {
+				write(content);
+			} catch (IOException e) {
+				failed = true;
+				throw e;
+			}
+		});
+	}
+
+
+	private synchronized void write(byte[] content) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(content);
+		while (buffer.hasRemaining()) {
+			size += output.write(buffer);
+		}
+	}
+
+
+	/**
+	 * Force the operations appended so far to the storage device
+	 * @throws IOException
+	 */
+	public void sync() throws IOException {
+		if (persistenceService == null) {
+			force();
+			return;
+		}
+		persistenceService.submit(syncTaskKey, () -> {
+			try {
+				force();
+			} catch (IOException e) {
+				failed = true;
+				throw e;
+			}
+		});
+	}
+
+
+	private synchronized void force() throws IOException {
+		output.force(false);
+	}
+
+
+	/**
+	 * Return the size of the journal
+	 * @return size in bytes
+	 */
+	public long getSize() {
+		return size;
+	}
+
+
+	/**
+	 * Tells if the journal is larger than the compaction threshold
+	 * @return true if the journal should be compacted
+	 */
+	public boolean needsCompaction() {
+		return size > compactionThreshold;
+	}
+
+
+	/**
+	 * Start a new journal and write a snapshot in the background.
+	 * The content of the snapshot must be captured by the caller before this call,
+	 * since the operations appended after this call go to the new journal.
+	 * With a persistence service, the compaction is queued after the operations appended
+	 * before this call.
+	 * @param writer writes the snapshot of the manager
+	 * @throws IOException
+	 */
+	public void compact(SnapshotWriter writer) throws IOException {
+		if (persistenceService == null) {
+			compactInBackground(writer);
+			return;
+		}
+		failed = false;
+		persistenceService.submit(null, () -> {
+			try {
+				startNewJournal();
+				writer.write();
+				Files.deleteIfExists(oldFile.toPath());
+			} catch (IOException e) {
+				// the old journal is kept: compacted again by the next save
+				failed = true;
+				throw new IOException("Cannot write snapshot", e);
+			}
+		});
+	}
+
+
+	private synchronized void compactInBackground(SnapshotWriter writer) throws IOException {
+		// a single compaction at a time
+		awaitCompaction();
+		startNewJournal();
+
+		// write snapshot, then drop the old journal
+		pendingCompaction = compactionExecutor.submit(() -> {
+			writer.write();
+			Files.deleteIfExists(oldFile.toPath());
+			return null;
+		});
+	}
+
+
+	/**
+	 * Set the current journal aside and start a new journal
+	 */
+	private synchronized void startNewJournal() throws IOException {
+		output.force(false);
+		output.close();
+		if (oldFile.exists()) {
+			// the previous snapshot failed: its operations are still needed
+			Files.write(oldFile.toPath(), Files.readAllBytes(file.toPath()),
+					StandardOpenOption.APPEND);
+			Files.delete(file.toPath());
+		} else {
+			Files.move(file.toPath(), oldFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		output = openOutput();
+		size = 0;
+	}
+
+
+	/**
+	 * Wait until the compaction in progress, if any, is over
+	 * @throws IOException if the snapshot could not be written (the old journal is kept)
+	 */
+	public synchronized void awaitCompaction() throws IOException {
+		if (pendingCompaction == null) {
+			return;
+		}
+		try {
+			pendingCompaction.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			throw new IOException("Cannot write snapshot", e.getCause());
+		} finally {
+			pendingCompaction = null;
+		}
+	}
+
+
+	/**
+	 * Wait for the compaction in progress, or with a persistence service for the tasks 
+	 * queued, force the journal to the storage device and close it
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		try {
+			if (persistenceService != null) {
+				persistenceService.flush();
+			}
+		} finally {
+			closeOutput();
+		}
+	}
+
+
+	private synchronized void closeOutput() throws IOException {
+		try {
+			awaitCompaction();
+		} finally {
+			compactionExecutor.shutdown();
+			output.force(false);
+			output.close();
+		}
+	}
+
+
+	private FileChannel openOutput() throws IOException {
+		return FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+}
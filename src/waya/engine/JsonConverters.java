@@ -0,0 +1,94 @@
+package waya.engine;
+
+import java.util.Map;
+
+import com.owlike.genson.GenericType;
+import com.owlike.genson.Genson;
+import com.owlike.genson.GensonBuilder;
+
+/**
+ * Shared JSON converters of the engine.
+ *
+ * Building a Genson object is costly (reflection on the classes, creation of the
+ * converters), while a Genson object is thread-safe and caches its converters: each
+ * configuration is built once and shared by all the calls and threads.
+ * @author bertrand
+ *
+ */
+public final class JsonConverters {
+
+	/**
+	 * Generic converter: maps, lists, strings (e.g. parsing of the saved files)
+	 */
+	public static final Genson DEFAULT = new Genson();
+
+	/**
+	 * Type of a parsed JSON object
+	 */
+	public static final GenericType<Map<String, Object>> MAP_TYPE =
+			new GenericType<Map<String, Object>>(){};
+
+	/**
+	 * Converter for Person objects
+	 */
+	public static final Genson PERSON = new GensonBuilder()
+			.include("id")
+			.include("name")
+			.include("imagePath")
+			.include("informations")
+			.include("VERSION")
+			.exclude("numberOfInformations")
+			// prevent creation of field "numberOfValues" for Information objects
+			.exclude("numberOfValues")
+			.acceptSingleValueAsList(true)
+			.create();
+
+	/**
+	 * Converter for Information objects
+	 */
+	public static final Genson INFORMATION = new GensonBuilder()
+			.include("VERSION")
+			.include("values")
+			.exclude("numberOfValues")
+			.create();
+
+	/**
+	 * Converter for TagManager objects
+	 */
+	public static final Genson TAG_MANAGER = new GensonBuilder()
+			.include("tags")
+			.acceptSingleValueAsList(true)
+			.useMethods(false)
+			.create();
+
+	/**
+	 * Converter for PersonManager objects: only the settings are serialized
+	 */
+	public static final Genson PERSON_MANAGER = new GensonBuilder()
+			.include("VERSION")
+			.include("idLength")
+			.exclude("persons")
+			.exclude("loadErrors")
+			.exclude("modifiedPersonIds")
+			.exclude("removedPersonIds")
+			.exclude("journal")
+			.exclude("journalFailed")
+			.exclude("searchIndex")
+			.exclude("searchIndexPending")
+			.exclude("searchIndexStore")
+			.exclude("unsavedIndexIds")
+			.exclude("dataFormat")
+			.exclude("persistenceService")
+			.exclude("collator")
+			.exclude("nameIndex")
+			.exclude("nameKeys")
+			.exclude("personIdsByName")
+			.acceptSingleValueAsList(true)
+			.useMethods(true)
+			.create();
+
+
+	private JsonConverters() {
+		// static members only
+	}
+}
@@ -0,0 +1,480 @@
+package waya.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Data store keeping all the entries in a single append-only file.
+ *
+ * The file starts with a header (magic string, format version, and sequence number reached
+ * when the file was written), followed by records:
+ * - put record: type (byte), key length (int), key (UTF-8), sequence number (long),
+ *   content length (int), content
+ * - delete record: type (byte), key length (int), key (UTF-8)
+ * Writing or deleting an entry appends a record. The last record of a key wins.
+ * Each put record gets the next sequence number, kept by compactions: it is the stamp of
+ * the entry (see version()). A file of format version 1, without sequence numbers, is
+ * converted when opened.
+ * An in-memory index gives the position of the content of each entry, so that an entry
+ * is read with a single positional read.
+ * The space used by overwritten and deleted entries is reclaimed by compact().
+ * Unless disabled with setSync(), the records are forced to the storage device before the
+ * writes return, once for all the entries given to writeAll().
+ * @author bertrand
+ *
+ */
+public class PackedDataStore implements DataStore {
+	private static final byte[] MAGIC = "WAYAPACK".getBytes(StandardCharsets.US_ASCII);
+	private static final int FORMAT_VERSION = 2;
+	// format version 1: no sequence numbers
+	private static final int HEADER_V1_SIZE = MAGIC.length + Integer.BYTES;
+	private static final int HEADER_SIZE = HEADER_V1_SIZE + Long.BYTES;
+	private static final byte RECORD_PUT = 1;
+	private static final byte RECORD_DELETE = 2;
+	private static final int RECORD_PREFIX_SIZE = 1 + Integer.BYTES;
+	// compact on close if the file is larger than this and mostly made of garbage
+	private static final long AUTO_COMPACT_MIN_SIZE = 1 << 20;
+
+	private File file;
+	private FileChannel channel;
+	private HashMap<String, Entry> index;
+	private long endOfData;
+	private long liveBytes;
+	// last sequence number given to a put record
+	private long sequence;
+	private boolean sync;
+
+	/**
+	 * Constructor: open the store file, or create it if it does not exist
+	 * @param file store file
+	 * @throws IOException if the file cannot be opened or is not a store file
+	 */
+	public PackedDataStore(File file) throws IOException {
+		this.file = file;
+		this.sync = true;
+		File directory = file.getAbsoluteFile().getParentFile();
+		if (directory.isDirectory() == false) {
+			Files.createDirectories(directory.toPath());
+		}
+		open();
+	}
+
+
+	/**
+	 * Return the store file
+	 * @return file
+	 */
+	public File getFile() {
+		return file;
+	}
+
+
+	/**
+	 * Set if the records are forced to the storage device before the writes return
+	 * @param sync true to force the records (default), false to leave it to the system or
+	 * to sync()
+	 */
+	public synchronized void setSync(boolean sync) {
+		this.sync = sync;
+	}
+
+
+	public synchronized boolean isSync() {
+		return sync;
+	}
+
+
+	@Override
+	public synchronized byte[] read(String key) throws IOException {
+		Entry entry = index.get(key);
+		if (entry == null) {
+			throw new IOException("No such entry: "+key);
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(entry.length);
+		if (!readFully(buffer, entry.position)) {
+			throw new IOException("Truncated entry: "+key);
+		}
+		return buffer.array();
+	}
+
+
+	@Override
+	public synchronized void write(String key, byte[] content) throws IOException {
+		append(key, content);
+		if (sync) {
+			channel.force(false);
+		}
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 * The records are appended, then forced to the storage device together.
+	 */
+	@Override
+	public synchronized void writeAll(Map<String, byte[]> contents) throws IOException {
+		for (Map.Entry<String, byte[]> entry : contents.entrySet()) {
+			append(entry.getKey(), entry.getValue());
+		}
+		if (sync && !contents.isEmpty()) {
+			channel.force(false);
+		}
+	}
+
+
+	@Override
+	public synchronized void delete(String key) throws IOException {
+		Entry previous = index.remove(key);
+		if (previous == null) {
+			return;
+		}
+		liveBytes -= previous.recordSize;
+
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer record = ByteBuffer.allocate(RECORD_PREFIX_SIZE + keyBytes.length);
+		record.put(RECORD_DELETE);
+		record.putInt(keyBytes.length);
+		record.put(keyBytes);
+		record.flip();
+		writeFully(record, endOfData);
+		endOfData += record.capacity();
+		if (sync) {
+			channel.force(false);
+		}
+	}
+
+
+	@Override
+	public synchronized boolean contains(String key) {
+		return index.containsKey(key);
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 * The stamp is the sequence number of the last write of the entry: it is never given
+	 * twice in a store file, and is kept when the entries are moved by a compaction.
+	 */
+	@Override
+	public synchronized long version(String key) {
+		Entry entry = index.get(key);
+		return (entry == null) ? -1 : entry.sequence;
+	}
+	
+	
+	@Override
+	public synchronized Set<String> keys() {
+		return new HashSet<>(index.keySet());
+	}
+
+
+	/**
+	 * Force the content written so far to the storage device
+	 * @throws IOException
+	 */
+	public synchronized void sync() throws IOException {
+		channel.force(false);
+	}
+
+
+	/**
+	 * Return the number of bytes of the file used by entries that were overwritten or deleted
+	 * @return number of bytes
+	 */
+	public synchronized long getGarbageSize() {
+		return endOfData - HEADER_SIZE - liveBytes;
+	}
+
+
+	/**
+	 * Rewrite the store file with the live entries only
+	 * @throws IOException
+	 */
+	public synchronized void compact() throws IOException {
+		Path path = file.toPath();
+		Path tmpPath = path.resolveSibling(file.getName()+".tmp");
+
+		// copy the live records in a new file
+		try (FileChannel output = FileChannel.open(tmpPath, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			ByteBuffer header = buildHeader(sequence);
+			while (header.hasRemaining()) {
+				output.write(header);
+			}
+			// records rewritten with their sequence number, the contents are copied
+			for (Map.Entry<String, Entry> indexEntry : index.entrySet()) {
+				Entry entry = indexEntry.getValue();
+				ByteBuffer record = buildPutRecord(indexEntry.getKey(), entry.sequence,
+						entry.length, null);
+				while (record.hasRemaining()) {
+					output.write(record);
+				}
+				long copied = 0;
+				while (copied < entry.length) {
+					copied += channel.transferTo(entry.position + copied,
+							entry.length - copied, output);
+				}
+			}
+			output.force(true);
+		}
+
+		// replace the store file
+		channel.close();
+		try {
+			Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING);
+		}
+		if (sync) {
+			// the new directory entry
+			FileTools.syncDirectory(path.toAbsolutePath().getParent());
+		}
+		open();
+	}
+
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (!channel.isOpen()) {
+			return;
+		}
+		if (endOfData > AUTO_COMPACT_MIN_SIZE && getGarbageSize() > liveBytes) {
+			compact();
+		}
+		channel.close();
+	}
+
+
+	/**
+	 * Open the store file and build the index of the entries
+	 * @throws IOException
+	 */
+	private void open() throws IOException {
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		index = new HashMap<>();
+		liveBytes = 0;
+		sequence = 0;
+
+		long size = channel.size();
+		if (size == 0) {
+			// new file: write header
+			writeFully(buildHeader(sequence), 0);
+			endOfData = HEADER_SIZE;
+			return;
+		}
+
+		// check header
+		ByteBuffer header = ByteBuffer.allocate(HEADER_V1_SIZE);
+		if (size < HEADER_V1_SIZE || !readFully(header, 0)) {
+			channel.close();
+			throw new IOException("Not a data store file: "+file);
+		}
+		header.flip();
+		byte[] magic = new byte[MAGIC.length];
+		header.get(magic);
+		int version = header.getInt();
+		if (!Arrays.equals(magic, MAGIC)) {
+			channel.close();
+			throw new IOException("Not a data store file: "+file);
+		}
+		if (version > FORMAT_VERSION) {
+			channel.close();
+			throw new IOException("Unsupported data store version "+version+": "+file);
+		}
+		boolean hasSequences = version >= 2;
+		long position = HEADER_V1_SIZE;
+		if (hasSequences) {
+			ByteBuffer headerSequence = ByteBuffer.allocate(Long.BYTES);
+			if (!readFully(headerSequence, position)) {
+				channel.close();
+				throw new IOException("Not a data store file: "+file);
+			}
+			headerSequence.flip();
+			sequence = headerSequence.getLong();
+			position += Long.BYTES;
+		}
+
+		// scan records: only the headers of the records are read
+		ByteBuffer recordSequence = ByteBuffer.allocate(Long.BYTES);
+		ByteBuffer prefix = ByteBuffer.allocate(RECORD_PREFIX_SIZE);
+		ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+		while (position < size) {
+			prefix.clear();
+			if (!readFully(prefix, position)) {
+				break;
+			}
+			prefix.flip();
+			byte type = prefix.get();
+			int keyLength = prefix.getInt();
+			if ((type != RECORD_PUT && type != RECORD_DELETE) || keyLength < 0
+					|| position + RECORD_PREFIX_SIZE + keyLength > size) {
+				break;
+			}
+			ByteBuffer keyBuffer = ByteBuffer.allocate(keyLength);
+			if (!readFully(keyBuffer, position + RECORD_PREFIX_SIZE)) {
+				break;
+			}
+			String key = new String(keyBuffer.array(), StandardCharsets.UTF_8);
+			long next = position + RECORD_PREFIX_SIZE + keyLength;
+
+			if (type == RECORD_PUT) {
+				long entrySequence;
+				if (hasSequences) {
+					recordSequence.clear();
+					if (!readFully(recordSequence, next)) {
+						break;
+					}
+					recordSequence.flip();
+					entrySequence = recordSequence.getLong();
+					next += Long.BYTES;
+				} else {
+					// format version 1: numbered in the order of the records
+					entrySequence = sequence + 1;
+				}
+				length.clear();
+				if (!readFully(length, next)) {
+					break;
+				}
+				length.flip();
+				int contentLength = length.getInt();
+				long contentPosition = next + Integer.BYTES;
+				if (contentLength < 0 || contentPosition + contentLength > size) {
+					break;
+				}
+				next = contentPosition + contentLength;
+				sequence = Math.max(sequence, entrySequence);
+				Entry previous = index.put(key,
+						new Entry(contentPosition, contentLength, next - position, entrySequence));
+				if (previous != null) {
+					liveBytes -= previous.recordSize;
+				}
+				liveBytes += next - position;
+			} else {
+				Entry previous = index.remove(key);
+				if (previous != null) {
+					liveBytes -= previous.recordSize;
+				}
+			}
+			position = next;
+		}
+
+		// drop an incomplete record left by an interrupted write
+		if (position < size) {
+			channel.truncate(position);
+		}
+		endOfData = position;
+
+		if (!hasSequences) {
+			// the records of format version 1 cannot be followed by records with sequences
+			compact();
+		}
+	}
+
+
+	/**
+	 * Append the put record of an entry and index it
+	 */
+	private void append(String key, byte[] content) throws IOException {
+		ByteBuffer record = buildPutRecord(key, ++sequence, content.length, content);
+
+		long recordPosition = endOfData;
+		writeFully(record, recordPosition);
+		endOfData += record.capacity();
+
+		Entry entry = new Entry(recordPosition + record.capacity() - content.length,
+				content.length, record.capacity(), sequence);
+		Entry previous = index.put(key, entry);
+		if (previous != null) {
+			liveBytes -= previous.recordSize;
+		}
+		liveBytes += entry.recordSize;
+	}
+
+
+	private static ByteBuffer buildHeader(long sequence) {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.put(MAGIC);
+		header.putInt(FORMAT_VERSION);
+		header.putLong(sequence);
+		header.flip();
+		return header;
+	}
+
+
+	/**
+	 * Build a put record
+	 * @param content content of the entry, or null to build the record without its content
+	 * (the content is then copied after the record)
+	 */
+	private static ByteBuffer buildPutRecord(String key, long sequence, int contentLength,
+			byte[] content) {
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer record = ByteBuffer.allocate(RECORD_PREFIX_SIZE + keyBytes.length
+				+ Long.BYTES + Integer.BYTES + (content == null ? 0 : contentLength));
+		record.put(RECORD_PUT);
+		record.putInt(keyBytes.length);
+		record.put(keyBytes);
+		record.putLong(sequence);
+		record.putInt(contentLength);
+		if (content != null) {
+			record.put(content);
+		}
+		record.flip();
+		return record;
+	}
+
+
+	/**
+	 * Fill the buffer from the file
+	 * @return false if the end of the file was reached before the buffer is full
+	 */
+	private boolean readFully(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position + buffer.position());
+			if (read < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+	private void writeFully(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer, position + buffer.position());
+		}
+	}
+
+
+	/**
+	 * Location of the content of an entry in the file, and sequence number of its record
+	 */
+	private static class Entry {
+		private final long position;
+		private final int length;
+		private final long recordSize;
+		private final long sequence;
+
+		private Entry(long position, int length, long recordSize, long sequence) {
+			this.position = position;
+			this.length = length;
+			this.recordSize = recordSize;
+			this.sequence = sequence;
+		}
+	}
+}
@@ -0,0 +1,265 @@
+package waya.engine;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Background writer of a data store, used so that saves do not block the calling thread
+ * (e.g. the Swing event thread).
+ *
+ * The managers encode their content on the calling thread and submit it here: the writes
+ * and deletes are queued by key, a new request for a key replacing the pending one, so
+ * that saving the same person or the tags several times in a row costs a single write.
+ * Pending requests are written in batches by a single worker thread, after a short delay
+ * gathering the requests made together.
+ * Other I/O tasks, e.g. the appends, syncs and compactions of the journals, are run by the
+ * same thread, in the order of the requests, after the writes of their batch. A task
+ * requested with the key of a task not run yet replaces it, so that e.g. the journal is
+ * forced once for several saves.
+ * flush() waits until all the requests made before the call are written or run.
+ * Requests that could not be written are written again after a delay, doubled at each
+ * failure in a row, without waiting for other requests or for flush().
+ * @author bertrand
+ *
+ */
+public class PersistenceService {
+	private static final Logger LOGGER = Logger.getLogger(PersistenceService.class.getPackage().getName());
+	// delay between the first pending request and the write of the batch
+	private static final long DEFAULT_DELAY_MILLIS = 200;
+	// delays before writing again requests that failed: doubled at each failure
+	private static final long MIN_RETRY_DELAY_MILLIS = 500;
+	private static final long MAX_RETRY_DELAY_MILLIS = 60000;
+
+	private final DataStore store;
+	private final long delayMillis;
+	private final ScheduledExecutorService executor;
+	// key -> content to write, or null to delete the entry
+	private Map<String, byte[]> pending;
+	// key -> task, in the order of the requests
+	private LinkedHashMap<Object, Task> tasks;
+	private Future<?> scheduledWrite;
+	private IOException lastError;
+	// number of batches that failed in a row
+	private int failures;
+
+	/**
+	 * I/O task run by the worker thread
+	 */
+	public interface Task {
+		public void run() throws IOException;
+	}
+
+	/**
+	 * Constructor
+	 * @param store data store written by the service
+	 */
+	public PersistenceService(DataStore store) {
+		this(store, DEFAULT_DELAY_MILLIS);
+	}
+
+
+	/**
+	 * Constructor
+	 * @param store data store written by the service
+	 * @param delayMillis delay (ms) during which requests are gathered before being written
+	 */
+	public PersistenceService(DataStore store, long delayMillis) {
+		this.store = store;
+		this.delayMillis = delayMillis;
+		this.pending = new LinkedHashMap<>();
+		this.tasks = new LinkedHashMap<>();
+		this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "persistence");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+
+	public DataStore getStore() {
+		return store;
+	}
+
+
+	/**
+	 * Request the write of an entry, replacing any pending request for this entry
+	 * @param key key of the entry
+	 * @param content new content
+	 */
+	public synchronized void write(String key, byte[] content) {
+		pending.put(key, content);
+		schedule();
+	}
+
+
+	/**
+	 * Request the removal of an entry, replacing any pending request for this entry
+	 * @param key key of the entry
+	 */
+	public synchronized void delete(String key) {
+		pending.put(key, null);
+		schedule();
+	}
+
+
+	/**
+	 * Request a task, run after the tasks requested before it
+	 * @param key key of the task: a pending task with the same key is removed, or null if
+	 * the task does not replace another task
+	 * @param task task run by the worker thread
+	 */
+	public synchronized void submit(Object key, Task task) {
+		Object taskKey = (key != null) ? key : new Object();
+		// a replaced task is moved to the end of the queue
+		tasks.remove(taskKey);
+		tasks.put(taskKey, task);
+		schedule();
+	}
+
+
+	/**
+	 * Tells if requests are waiting to be written or run
+	 * @return true if there are pending requests
+	 */
+	public synchronized boolean hasPendingWrites() {
+		return !pending.isEmpty() || !tasks.isEmpty();
+	}
+
+
+	/**
+	 * Write the pending requests now and wait until they are written
+	 * @throws IOException if a write failed since the last call to flush(): the failed
+	 * requests are kept pending, unless replaced by a new request
+	 */
+	public void flush() throws IOException {
+		Future<?> write;
+		synchronized (this) {
+			if (scheduledWrite != null) {
+				scheduledWrite.cancel(false);
+			}
+			write = executor.submit(this::writePending);
+			scheduledWrite = null;
+		}
+		try {
+			write.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+		synchronized (this) {
+			IOException error = lastError;
+			lastError = null;
+			if (error != null) {
+				throw error;
+			}
+		}
+	}
+
+
+	/**
+	 * Write the pending requests and stop the worker thread
+	 * @throws IOException if some requests could not be written
+	 */
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+
+	/**
+	 * Schedule the write of the pending requests, if not scheduled yet
+	 */
+	private void schedule() {
+		if (scheduledWrite == null) {
+			scheduledWrite = executor.schedule(this::writePending, delayMillis,
+					TimeUnit.MILLISECONDS);
+		}
+	}
+
+
+	/**
+	 * Write the pending requests then run the pending tasks, on the worker thread
+	 */
+	private void writePending() {
+		Map<String, byte[]> batch;
+		Map<Object, Task> batchTasks;
+		synchronized (this) {
+			batch = pending;
+			pending = new LinkedHashMap<>();
+			batchTasks = tasks;
+			tasks = new LinkedHashMap<>();
+			scheduledWrite = null;
+		}
+		writeBatch(batch);
+		for (Task task : batchTasks.values()) {
+			try {
+				task.run();
+			} catch (IOException e) {
+				LOGGER.warning("I/O task failed: "+e.getMessage());
+				synchronized (this) {
+					lastError = e;
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Write a batch of requests, on the worker thread
+	 */
+	private void writeBatch(Map<String, byte[]> batch) {
+		if (batch.isEmpty()) {
+			return;
+		}
+
+		Map<String, byte[]> contents = new LinkedHashMap<>();
+		List<String> deletedKeys = new ArrayList<>();
+		for (Map.Entry<String, byte[]> entry : batch.entrySet()) {
+			if (entry.getValue() != null) {
+				contents.put(entry.getKey(), entry.getValue());
+			} else {
+				deletedKeys.add(entry.getKey());
+			}
+		}
+		try {
+			store.writeAll(contents);
+			for (String key : deletedKeys) {
+				store.delete(key);
+			}
+			synchronized (this) {
+				failures = 0;
+			}
+		} catch (IOException e) {
+			LOGGER.warning("Cannot write the data store: "+e.getMessage());
+			synchronized (this) {
+				lastError = e;
+				// retry with the next batch, unless replaced by a newer request
+				for (Map.Entry<String, byte[]> entry : batch.entrySet()) {
+					if (!pending.containsKey(entry.getKey())) {
+						pending.put(entry.getKey(), entry.getValue());
+					}
+				}
+				failures++;
+				if (scheduledWrite == null && !executor.isShutdown()) {
+					long retryDelay = MIN_RETRY_DELAY_MILLIS << Math.min(failures-1, 16);
+					scheduledWrite = executor.schedule(this::writePending, 
+							Math.min(retryDelay, MAX_RETRY_DELAY_MILLIS), TimeUnit.MILLISECONDS);
+				}
+			}
+		}
+	}
+}
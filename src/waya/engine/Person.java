@@ -1,23 +1,16 @@
 package waya.engine;
 
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
 
-import com.owlike.genson.GenericType;
-import com.owlike.genson.Genson;
-import com.owlike.genson.GensonBuilder;
-
-public class Person {
-	@SuppressWarnings("unused")
-	private static final long VERSION = 1L;
+public class Person implements PersonView {
+	static final long VERSION = 1L;
 	
 	private String id;
 	private String name;
-	private LinkedList<Information> informations;
+	private ArrayList<Information> informations;
 	private String imagePath;
 
 	/**
@@ -29,7 +22,7 @@ public class Person {
 	public Person(String id, String name) {
 		this.id = id;
 		this.name = name;
-		this.informations = new LinkedList<Information>();
+		this.informations = new ArrayList<Information>();
 		this.imagePath = "";
 	}
 	
@@ -49,6 +42,7 @@ public class Person {
 	public Person(Person otherPerson) {
 		this(otherPerson.getId(), otherPerson.getName());
 		setImagePath(otherPerson.getImagePath());
+		informations.ensureCapacity(otherPerson.getNumberOfInformations());
 		for (int i=0; i<otherPerson.getNumberOfInformations(); i++) {
 			Information infoCopy = new Information(otherPerson.getInformation(i));
 			informations.add(infoCopy);
@@ -179,63 +173,337 @@ public class Person {
 	}
 	
 	
+	@Override
+	public boolean equals(Object other) {
+		if (this == other) {
+			return true;
+		}
+		if (!(other instanceof Person)) {
+			return false;
+		}
+		Person otherPerson = (Person) other;
+		return id.equals(otherPerson.id) 
+				&& name.equals(otherPerson.name)
+				&& imagePath.equals(otherPerson.imagePath)
+				&& informations.equals(otherPerson.informations);
+	}
+	
+	
+	@Override
+	public int hashCode() {
+		return id.hashCode();
+	}
+	
+	
 	/**
 	 * Serialize the object as a JSON
 	 * @return JSON string
 	 */
 	public String toJson() {		
-		GensonBuilder builder = new GensonBuilder();
-		builder.include("id");
-		builder.include("name");
-		builder.include("imagePath");
-		builder.include("informations");
-		builder.include("VERSION");
-		builder.exclude("numberOfInformations");
-		// prevent creation of field "numberOfValues" for Information objects
-		builder.exclude("numberOfValues");	
-		builder.acceptSingleValueAsList(true);
-		Genson genson = builder.create();	
-		return genson.serialize(this);
-		
+		return JsonConverters.PERSON.serialize(this);
 	}
 	
 	
 	public static Person load(String fileName) throws IOException {
 		
-		Genson genson = new Genson();
-		Map<String, Object> contentMap;
-		try ( FileReader reader = new FileReader(fileName); ) { 
-			contentMap = genson.deserialize(reader, new GenericType<Map<String, Object>>(){});
+		try { 
+			// JSON content is decoded as UTF-8, the encoding used to save it
+			return DataFormat.decodePerson(FileTools.readFile(Paths.get(fileName)));
 		} catch (IOException e) {
 			throw new IOException(e);
 		}
+	}
+	
+	
+	/**
+	 * Build a person from its JSON serialization
+	 * @param json JSON string, as created by toJson()
+	 * @return person
+	 * @throws IllegalArgumentException if the JSON is malformed or the person has no Id
+	 */
+	public static Person fromJson(String json) {
+		return new JsonParser(json).readPerson();
+	}
+	
+	
+	/**
+	 * Build a person from its JSON serialization
+	 * @param json JSON content encoded in UTF-8, as created by toJson()
+	 * @return person
+	 * @throws IllegalArgumentException if the JSON is malformed or the person has no Id
+	 */
+	public static Person fromJson(byte[] json) {
+		return fromJson(new String(json, StandardCharsets.UTF_8));
+	}
+	
+	
+	/**
+	 * Parser building Person and Information objects directly from the JSON text, field
+	 * by field, without intermediate maps and lists. Unknown fields are skipped.
+	 * Field names without escape sequences are matched in place, without allocation.
+	 */
+	private static class JsonParser {
+		private static final String[] FIELD_NAMES = 
+			{"id", "name", "imagePath", "informations", "values", "VERSION", "empty"};
+		
+		private final String text;
+		private int position;
+		
+		private JsonParser(String text) {
+			this.text = text;
+			this.position = 0;
+		}
+		
+		
+		private Person readPerson() {
+			Person result = new Person(null, "");
+			expect('{');
+			if (!consume('}')) {
+				do {
+					String field = readName();
+					expect(':');
+					switch (field) {
+					case "id":
+						result.id = readString();
+						break;
+					case "name":
+						result.name = readString();
+						break;
+					case "imagePath":
+						result.imagePath = readString();
+						break;
+					case "informations":
+						if (peek() == '{') {
+							// single information written as a value instead of a list
+							result.informations.add(readInformation());
+						} else if (!consumeNull()) {
+							expect('[');
+							if (!consume(']')) {
+								do {
+									result.informations.add(readInformation());
+								} while (consume(','));
+								expect(']');
+							}
+						}
+						break;
+					default:
+						skipValue();
+					}
+				} while (consume(','));
+				expect('}');
+			}
+			skipWhitespace();
+			if (position < text.length()) {
+				throw error("unexpected content");
+			}
+			if (result.id == null) {
+				throw new IllegalArgumentException("Person without id");
+			}
+			return result;
+		}
+		
+		
+		private Information readInformation() {
+			Information information = new Information("");
+			expect('{');
+			if (!consume('}')) {
+				do {
+					String field = readName();
+					expect(':');
+					switch (field) {
+					case "name":
+						information.setName(readString());
+						break;
+					case "values":
+						if (peek() != '[') {
+							// single value written as a value instead of a list
+							information.addValue(readNullableString());
+						} else {
+							expect('[');
+							if (!consume(']')) {
+								do {
+									information.addValue(readNullableString());
+								} while (consume(','));
+								expect(']');
+							}
+						}
+						break;
+					default:
+						skipValue();
+					}
+				} while (consume(','));
+				expect('}');
+			}
+			return information;
+		}
+		
 		
-		// parse fields
-		String mapId = contentMap.get("id").toString();
-		String mapName = contentMap.get("name").toString();
-		String mapImagePath = contentMap.get("imagePath").toString();
-		// - informations
-		List<Map<String, Object>> listRawInfo = 
-				(List<Map<String, Object>>) contentMap.get("informations");
-		LinkedList<Information> listInformations = new LinkedList<Information>();
-		for (Map<String, Object> rawInfo : listRawInfo) {
-			String name = rawInfo.get("name").toString();
-			List<String> listValues = (ArrayList<String>) rawInfo.get("values");
-			Information info = new Information(name);
-			for (String value : listValues) {
-				info.addValue(value);
+		/**
+		 * Read a field name: known names are returned as constants
+		 */
+		private String readName() {
+			skipWhitespace();
+			if (peek() == '"') {
+				for (String name : FIELD_NAMES) {
+					int end = position + 1 + name.length();
+					if (end < text.length() && text.charAt(end) == '"'
+							&& text.regionMatches(position+1, name, 0, name.length())) {
+						position = end + 1;
+						return name;
+					}
+				}
 			}
-			listInformations.add(info);
+			return readString();
 		}
 		
-		// build result
-		Person result = new Person(mapId, mapName);
-		for (Information information : listInformations)
-			result.addInformation(information);
-		result.setImagePath(mapImagePath);
-		return result;
+		
+		/**
+		 * Read a string value, null being read as an empty string
+		 */
+		private String readString() {
+			String value = readNullableString();
+			return (value == null) ? "" : value;
+		}
+		
+		
+		private String readNullableString() {
+			if (consumeNull()) {
+				return null;
+			}
+			expect('"');
+			int start = position;
+			// fast path: no escape sequence
+			while (position < text.length()) {
+				char c = text.charAt(position);
+				if (c == '"') {
+					return text.substring(start, position++);
+				}
+				if (c == '\\') {
+					break;
+				}
+				position++;
+			}
+			StringBuilder value = new StringBuilder(text.substring(start, position));
+			while (position < text.length()) {
+				char c = text.charAt(position++);
+				if (c == '"') {
+					return value.toString();
+				}
+				if (c != '\\') {
+					value.append(c);
+					continue;
+				}
+				if (position >= text.length()) {
+					break;
+				}
+				char escaped = text.charAt(position++);
+				switch (escaped) {
+				case 'b': value.append('\b'); break;
+				case 'f': value.append('\f'); break;
+				case 'n': value.append('\n'); break;
+				case 'r': value.append('\r'); break;
+				case 't': value.append('\t'); break;
+				case 'u':
+					if (position + 4 > text.length()) {
+						throw error("invalid unicode escape");
+					}
+					try {
+						value.append((char) Integer.parseInt(text.substring(position, position+4), 16));
+					} catch (NumberFormatException e) {
+						throw error("invalid unicode escape");
+					}
+					position += 4;
+					break;
+				default:
+					// \" \\ \/
+					value.append(escaped);
+				}
+			}
+			throw error("unterminated string");
+		}
+		
+		
+		/**
+		 * Skip a value of any type
+		 */
+		private void skipValue() {
+			char c = peek();
+			if (c == '"') {
+				readNullableString();
+			} else if (c == '{' || c == '[') {
+				char close = (c == '{') ? '}' : ']';
+				position++;
+				if (!consume(close)) {
+					do {
+						if (c == '{') {
+							readNullableString();
+							expect(':');
+						}
+						skipValue();
+					} while (consume(','));
+					expect(close);
+				}
+			} else {
+				// number, true, false, null
+				int start = position;
+				while (position < text.length() && ",}] \t\r\n".indexOf(text.charAt(position)) < 0) {
+					position++;
+				}
+				if (position == start) {
+					throw error("missing value");
+				}
+			}
+		}
+		
+		
+		private boolean consumeNull() {
+			skipWhitespace();
+			if (text.startsWith("null", position)) {
+				position += 4;
+				return true;
+			}
+			return false;
+		}
+		
+		
+		private boolean consume(char c) {
+			if (peek() == c) {
+				position++;
+				return true;
+			}
+			return false;
+		}
+		
+		
+		private void expect(char c) {
+			if (!consume(c)) {
+				throw error("'"+c+"' expected");
+			}
+		}
+		
+		
+		/**
+		 * Return the next character which is not a white space, without consuming it
+		 */
+		private char peek() {
+			skipWhitespace();
+			if (position >= text.length()) {
+				throw error("unexpected end");
+			}
+			return text.charAt(position);
+		}
+		
+		
+		private void skipWhitespace() {
+			while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+				position++;
+			}
+		}
+		
+		
+		private IllegalArgumentException error(String message) {
+			return new IllegalArgumentException("Malformed person JSON at position "
+					+position+": "+message);
+		}
 	}
 }
-
-
-
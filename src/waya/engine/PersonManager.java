@@ -3,26 +3,68 @@ package waya.engine;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.FileSystems;
-import java.nio.file.Files;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
-
-import com.owlike.genson.Genson;
-import com.owlike.genson.GensonBuilder;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
 
 public class PersonManager {
+	private static final Logger LOGGER = Logger.getLogger(PersonManager.class.getPackage().getName());
 	@SuppressWarnings("unused")
 	private static final long VERSION = 1L;
 	
 	private static final String DATA_END = "_data";
 	private static final String SAVE_EXTENSION = ".json";
+	private static final int LOAD_TASKS_PER_THREAD = 4;
+	private static final long JOURNAL_COMPACTION_THRESHOLD = 1024 * 1024;
+	private static final int MAX_SEARCH_RESULTS = 1000;
+	// sortByName() sorts the Ids if they are fewer than the persons / this ratio
+	private static final int NAME_SORT_RATIO = 16;
+	// number of persons written to the store at once when saving
+	private static final int SAVE_BATCH_SIZE = 256;
 	
 	HashMap<String, Person> persons;
 	private int idLength;
-	private File dataDirectory;
+	private DataStore store;
+	private Map<String, String> loadErrors;
+	// persons changed or deleted since they were last saved
+	private HashSet<String> modifiedPersonIds;
+	private HashSet<String> removedPersonIds;
+	private Journal journal;
+	private boolean journalFailed;
+	// persons captured by journal snapshots not written yet, with the number of the last
+	// snapshot capturing them: kept in the next snapshots until one of them is written
+	private final HashMap<String, Long> unwrittenSnapshotIds = new HashMap<>();
+	private long snapshotNumber;
+	private SearchIndex searchIndex;
+	// persons loaded but not indexed yet: indexed from the saved index or on the first search
+	private boolean searchIndexPending;
+	private SearchIndexStore searchIndexStore;
+	// persons indexed or removed since the saved index was last written
+	private HashSet<String> unsavedIndexIds;
+	private DataFormat dataFormat;
+	// background writer of the store, if any
+	private PersistenceService persistenceService;
+	// persons sorted by name, in the order of the default locale
+	private Collator collator;
+	private TreeMap<NameKey, String> nameIndex;
+	private HashMap<String, NameKey> nameKeys;
 	
 	/**
 	 * Constructor
@@ -31,13 +73,66 @@ public class PersonManager {
 	 * @throws IOException 
 	 */
 	public PersonManager(int idLength, File directory) throws IOException {
-		// create the directory if it does not exist
-		if (directory.isDirectory() == false) {
-			Files.createDirectories(directory.toPath());
-		}
+		this(idLength, new FileDataStore(directory));
+	}
+	
+	
+	/**
+	 * Constructor
+	 * @param idLength number of characters of the Id string
+	 * @param store storage backend used to save the persons
+	 */
+	public PersonManager(int idLength, DataStore store) {
 		this.persons = new HashMap<>();
 		this.idLength = idLength;
-		this.dataDirectory = directory;
+		this.store = store;
+		this.loadErrors = new LinkedHashMap<>();
+		this.modifiedPersonIds = new HashSet<>();
+		this.removedPersonIds = new HashSet<>();
+		this.searchIndex = new SearchIndex();
+		this.searchIndexPending = false;
+		this.unsavedIndexIds = new HashSet<>();
+		this.dataFormat = DataFormat.JSON;
+		this.collator = Collator.getInstance();
+		this.nameIndex = new TreeMap<>();
+		this.nameKeys = new HashMap<>();
+	}
+	
+	
+	/**
+	 * Select the format used to write the persons. Persons are read in any format, 
+	 * so that saveAll() converts the saved persons to the format selected.
+	 * @param format data format
+	 */
+	public void setDataFormat(DataFormat format) {
+		this.dataFormat = format;
+	}
+	
+	
+	/**
+	 * Return the format used to write the persons
+	 * @return data format
+	 */
+	public DataFormat getDataFormat() {
+		return dataFormat;
+	}
+	
+	
+	/**
+	 * Write the persons in the background: save() encodes the changes and submits them to 
+	 * the service instead of writing the data store. The journal, if any, is also appended,
+	 * forced and compacted by the service.
+	 * @param service background writer of the data store of this manager, or null to 
+	 * write the data store directly
+	 */
+	public void setPersistenceService(PersistenceService service) {
+		if (service != null && service.getStore() != store) {
+			throw new IllegalArgumentException("The service must write the store of the manager");
+		}
+		this.persistenceService = service;
+		if (journal != null) {
+			journal.setPersistenceService(service);
+		}
 	}
 	
 	
@@ -79,6 +174,17 @@ public class PersonManager {
 	 * @param person Person object
 	 */
 	public void addPerson(Person person) throws IllegalArgumentException {
+		addPerson(person, null);
+	}
+	
+	
+	/**
+	 * Add a person
+	 * @param person Person object
+	 * @param nameCollationKey collation key of the name of the person, or null to compute it
+	 */
+	private void addPerson(Person person, CollationKey nameCollationKey) 
+	throws IllegalArgumentException {
 		String personId = person.getId();
 		
 		// check id length
@@ -91,6 +197,11 @@ public class PersonManager {
 		}
 		
 		persons.put(personId, person);
+		modifiedPersonIds.add(personId);
+		removedPersonIds.remove(personId);
+		updateNameIndex(personId, nameCollationKey);
+		updateSearchIndex(personId);
+		logSetPerson(person);
 	}
 	
 	
@@ -109,7 +220,15 @@ public class PersonManager {
 			throw new IllegalArgumentException("No person with such Id");
 		}
 		
-		persons.put(personId, person);
+		// the person needs to be saved only if its content has changed
+		// (a person object modified in place cannot be compared to its previous state)
+		Person previous = persons.put(personId, person);
+		if (previous == person || !person.equals(previous)) {
+			modifiedPersonIds.add(personId);
+			updateNameIndex(personId, null);
+			updateSearchIndex(personId);
+			logSetPerson(person);
+		}
 	}
 	
 	
@@ -122,6 +241,95 @@ public class PersonManager {
 	}
 	
 	
+	/**
+	 * Return the Ids of all the persons, sorted by name in the order of the default locale
+	 * (persons with the same name are sorted by Id).
+	 * The order is maintained when persons are added, modified or removed: this method
+	 * only copies it.
+	 * @return list of Ids
+	 */
+	public List<String> getPersonIdsByName() {
+		return new ArrayList<>(nameIndex.values());
+	}
+	
+	
+	/**
+	 * Return the position of a person in the order of getPersonIdsByName()
+	 * @param personId Id of the person
+	 * @return key of the person, comparable to the keys of the other persons
+	 * @throws IllegalArgumentException if there is no person with this Id
+	 */
+	public NameKey getNameKey(String personId) throws IllegalArgumentException {
+		NameKey key = nameKeys.get(personId);
+		if (key == null) {
+			throw new IllegalArgumentException("No person with such Id");
+		}
+		return key;
+	}
+	
+	
+	/**
+	 * Sort Ids of persons by name, as getPersonIdsByName() does
+	 * @param personIds Ids of persons of the manager (unknown Ids are ignored)
+	 * @return list of Ids sorted by name
+	 */
+	public List<String> sortByName(Collection<String> personIds) {
+		List<String> result = new ArrayList<>(personIds.size());
+		if (personIds.size() * NAME_SORT_RATIO < nameIndex.size()) {
+			// few persons: sort them with the keys computed for the index
+			List<NameKey> keys = new ArrayList<>(personIds.size());
+			for (String personId : personIds) {
+				NameKey key = nameKeys.get(personId);
+				if (key != null) {
+					keys.add(key);
+				}
+			}
+			Collections.sort(keys);
+			for (NameKey key : keys) {
+				result.add(key.personId);
+			}
+		} else {
+			// many persons: select them in the index, already sorted
+			Set<String> selectedIds = (personIds instanceof Set) ? 
+					(Set<String>) personIds : new HashSet<>(personIds);
+			for (String personId : nameIndex.values()) {
+				if (selectedIds.contains(personId)) {
+					result.add(personId);
+				}
+			}
+		}
+		return result;
+	}
+	
+	
+	/**
+	 * Update the position of a person in the name index after it was added, modified 
+	 * or removed
+	 * @param personId Id of the person
+	 * @param collationKey collation key of the name of the person, or null to compute it
+	 */
+	private void updateNameIndex(String personId, CollationKey collationKey) {
+		Person person = persons.get(personId);
+		NameKey previousKey = nameKeys.get(personId);
+		if (previousKey != null) {
+			if (person != null && person.getName().equals(previousKey.name)) {
+				// same name: same position
+				return;
+			}
+			nameIndex.remove(previousKey);
+			nameKeys.remove(personId);
+		}
+		if (person != null) {
+			if (collationKey == null) {
+				collationKey = collator.getCollationKey(person.getName());
+			}
+			NameKey key = new NameKey(person.getName(), collationKey, personId);
+			nameIndex.put(key, personId);
+			nameKeys.put(personId, key);
+		}
+	}
+	
+	
 	/**
 	 * Remove a person
 	 * @param personId Id of the person removed
@@ -132,13 +340,20 @@ public class PersonManager {
 			throw new IllegalArgumentException("No person with such Id");
 		} else {
 			persons.remove(personId);
+			modifiedPersonIds.remove(personId);
+			removedPersonIds.add(personId);
+			updateNameIndex(personId, null);
+			updateSearchIndex(personId);
+			log("removePerson", personId);
 			return true;
 		}
 	}
 	
 	
 	/**
-	 * Return a copy of the person object with requested Id
+	 * Return a copy of the person object with requested Id, that can be modified then set
+	 * back with setPerson(). To only read a person, use getPersonView() or getPersonName(),
+	 * which do not copy it.
 	 * @param personId Id of the person
 	 * @return Person object
 	 */
@@ -152,6 +367,166 @@ public class PersonManager {
 	}
 	
 	
+	/**
+	 * Return a read-only view of the person with requested Id, without copying it
+	 * @param personId Id of the person
+	 * @return view of the person
+	 * @throws IllegalArgumentException if there is no person with this Id
+	 */
+	public PersonView getPersonView(String personId) throws IllegalArgumentException {
+		Person person = persons.get(personId);
+		if (person == null) {
+			throw new IllegalArgumentException("No person with such Id");
+		}
+		return person;
+	}
+	
+	
+	/**
+	 * Return the name of the person with requested Id, without copying the person
+	 * @param personId Id of the person
+	 * @return name of the person
+	 * @throws IllegalArgumentException if there is no person with this Id
+	 */
+	public String getPersonName(String personId) throws IllegalArgumentException {
+		return getPersonView(personId).getName();
+	}
+	
+	
+	/**
+	 * Search the persons whose name or informations contain all the terms of a query.
+	 * Terms are matched regardless of case and accents, and a term also matches the longer
+	 * words it starts with (e.g. "eng" matches "Engineer").
+	 * @param query terms searched, separated by spaces
+	 * @return Ids of the matching persons, best matches first
+	 */
+	public List<String> search(String query) {
+		if (searchIndexPending) {
+			// loaded persons without saved index: index them now
+			for (Person person : persons.values()) {
+				searchIndex.index(person);
+			}
+			searchIndexPending = false;
+		}
+		return searchIndex.search(query, MAX_SEARCH_RESULTS);
+	}
+	
+	
+	/**
+	 * Use a saved search index: the persons whose entry in the data store has not changed 
+	 * since they were indexed get their terms from the saved index, the others are 
+	 * re-indexed. Call this method before openJournal(), so that the persons modified by
+	 * the journal are re-indexed.
+	 * @param directory directory of the saved index (existing or created)
+	 * @throws IOException
+	 */
+	public void openSearchIndex(File directory) throws IOException {
+		if (searchIndexStore != null) {
+			throw new IllegalStateException("A search index is already open");
+		}
+		SearchIndexStore newStore = new SearchIndexStore(directory);
+		Map<String, SearchIndexStore.Record> records = newStore.read();
+		
+		if (searchIndexPending) {
+			int reused = 0;
+			for (Person person : persons.values()) {
+				String personId = person.getId();
+				SearchIndexStore.Record record = records.get(personId);
+				long stamp = store.version(storeKey(personId));
+				if (record != null && stamp != -1 && record.getStamp() == stamp
+						&& !modifiedPersonIds.contains(personId)) {
+					searchIndex.put(personId, record.getTerms());
+					reused++;
+				} else {
+					searchIndex.index(person);
+					unsavedIndexIds.add(personId);
+				}
+			}
+			searchIndexPending = false;
+			LOGGER.fine("Search index: "+reused+" persons up to date, "
+					+unsavedIndexIds.size()+" re-indexed");
+		} else {
+			// the index was built in memory: save all the persons not up to date
+			for (String personId : persons.keySet()) {
+				SearchIndexStore.Record record = records.get(personId);
+				if (record == null || record.getStamp() != store.version(storeKey(personId))) {
+					unsavedIndexIds.add(personId);
+				}
+			}
+		}
+		// persons removed while the index was not open
+		for (String personId : records.keySet()) {
+			if (!persons.containsKey(personId)) {
+				unsavedIndexIds.add(personId);
+			}
+		}
+		
+		searchIndexStore = newStore;
+		saveSearchIndex();
+		searchIndexStore.mergeIfNeeded();
+	}
+	
+	
+	/**
+	 * Save the changes of the search index and close it.
+	 * Call this method after closeJournal(), once the persons are written to the data store.
+	 * @throws IOException
+	 */
+	public void closeSearchIndex() throws IOException {
+		if (searchIndexStore != null) {
+			try {
+				saveSearchIndex();
+			} finally {
+				searchIndexStore.close();
+				searchIndexStore = null;
+			}
+		}
+	}
+	
+	
+	/**
+	 * Write the persons indexed or removed since the last write in a new segment.
+	 * A person not saved in the data store yet keeps its previous record: its saved version
+	 * has not changed.
+	 * @throws IOException
+	 */
+	private void saveSearchIndex() throws IOException {
+		List<SearchIndexStore.Record> records = new ArrayList<>();
+		for (String personId : new ArrayList<>(unsavedIndexIds)) {
+			if (modifiedPersonIds.contains(personId)) {
+				continue;
+			}
+			long stamp = store.version(storeKey(personId));
+			if (persons.containsKey(personId) && stamp != -1) {
+				records.add(new SearchIndexStore.Record(personId, stamp, 
+						searchIndex.getTerms(personId)));
+			} else if (!persons.containsKey(personId)) {
+				records.add(new SearchIndexStore.Record(personId, -1, null));
+			}
+			unsavedIndexIds.remove(personId);
+		}
+		searchIndexStore.writeSegment(records);
+	}
+	
+	
+	/**
+	 * Update the search index after a person was added, modified or removed
+	 * @param personId Id of the person
+	 */
+	private void updateSearchIndex(String personId) {
+		if (searchIndexPending) {
+			// the person will be indexed with the others
+			return;
+		}
+		if (persons.containsKey(personId)) {
+			searchIndex.index(persons.get(personId));
+		} else {
+			searchIndex.remove(personId);
+		}
+		unsavedIndexIds.add(personId);
+	}
+	
+	
 	/**
 	 * Tells if the manager contains a person with the given Id
 	 * @param personId input person Id
@@ -162,36 +537,70 @@ public class PersonManager {
 	}
 	
 	
+	/**
+	 * Tells if a person was added or modified since it was last saved
+	 * @param personId Id of the person
+	 * @return true if the person needs to be saved
+	 */
+	public boolean isModified(String personId) {
+		return modifiedPersonIds.contains(personId);
+	}
+	
+	
+	/**
+	 * Tells if some persons were added, modified or removed since the last save
+	 * @return true if save() has something to write
+	 */
+	public boolean hasUnsavedChanges() {
+		return !modifiedPersonIds.isEmpty() || !removedPersonIds.isEmpty();
+	}
+	
+	
+	/**
+	 * Return the entries that could not be loaded by the last call to load, with the reason
+	 * @return map: file name or store key -> error message
+	 */
+	public Map<String, String> getLoadErrors() {
+		return Collections.unmodifiableMap(loadErrors);
+	}
+	
+	
 	/**
 	 * Serialize the object as a JSON
 	 * @return JSON string
 	 */
 	public String toJson() {
-		GensonBuilder builder = new GensonBuilder()
-			.include("VERSION")
-			.include("idLength")
-			.exclude("persons")
-			.acceptSingleValueAsList(true)
-			.useMethods(true);
-		Genson genson = builder.create();
-		return genson.serialize(this);
+		return JsonConverters.PERSON_MANAGER.serialize(this);
 	}
 	
 	
 	/**
-	 * Save a single person to a file
+	 * Return the key of a person in the data store
+	 * @param personId person ID
+	 * @return key
+	 */
+	private static String storeKey(String personId) {
+		return personId+DATA_END;
+	}
+	
+	
+	/**
+	 * Save a single person to the data store
 	 * @param personId person ID
 	 * @throws IOException
 	 */
 	public void saveSinglePerson(String personId) throws IOException {
-		String fileName;
-		String pathSeparator = FileSystems.getDefault().getSeparator();
-		fileName = dataDirectory + pathSeparator + personId+DATA_END+SAVE_EXTENSION;
-		FileTools.overwriteTextFile(fileName, persons.get(personId).toJson());
+		byte[] content = dataFormat.encode(persons.get(personId));
+		if (persistenceService != null) {
+			persistenceService.write(storeKey(personId), content);
+		} else {
+			store.write(storeKey(personId), content);
+		}
+		modifiedPersonIds.remove(personId);
 	}
 	
 	/**
-	 * Remove the save file of a single person
+	 * Remove the saved data of a single person
 	 * @param directory save directory
 	 * @param personId person ID
 	 * @throws IOException
@@ -201,26 +610,244 @@ public class PersonManager {
 		if (!directory.isDirectory()) {
 			throw new IOException("Directory does not exist");
 		}
-		String fileName;
-		String pathSeparator = FileSystems.getDefault().getSeparator();
-		fileName = directory + pathSeparator + personId+DATA_END+SAVE_EXTENSION;
-		File file = new File(fileName);
-		file.delete();
+		deleteEntry(storeKey(personId));
+		removedPersonIds.remove(personId);
+		// a person still in the manager has no saved version anymore
+		if (persons.containsKey(personId)) {
+			modifiedPersonIds.add(personId);
+		}
 	}
 	
 	
 	/**
-	 * Save the manager's content to a file
-	 * @param directory save directory
+	 * Save the manager's content to the data store: only the persons added or modified 
+	 * since the last save are written, and the persons removed are deleted.
+	 * Persons are written by batches, so that the store can group the synchronization 
+	 * with the storage device. With a persistence service, the changes are encoded then
+	 * written in the background.
+	 * With a journal, the changes are already in the journal: the journal is forced to disk,
+	 * and compacted in the background if it became too large. With a persistence service, 
+	 * the sync and the compaction are queued, so that save() does no I/O.
 	 * @throws IOException 
 	 */
 	public void save() throws IOException {
-		// write a file for each Person object in persons
-		String fileName;
-		String pathSeparator = FileSystems.getDefault().getSeparator();
-		for (String personId : persons.keySet()) {
-			fileName = dataDirectory + pathSeparator + personId+DATA_END+SAVE_EXTENSION;
-			FileTools.overwriteTextFile(fileName, persons.get(personId).toJson());
+		if (journal != null) {
+			if (journalFailed || journal.hasFailed() || journal.needsCompaction()) {
+				compactJournal();
+			} else {
+				journal.sync();
+			}
+			return;
+		}
+		
+		// write an entry for each modified Person object
+		List<String> personIds = new ArrayList<>(modifiedPersonIds);
+		for (int start=0; start<personIds.size(); start+=SAVE_BATCH_SIZE) {
+			List<String> batch = 
+					personIds.subList(start, Math.min(start+SAVE_BATCH_SIZE, personIds.size()));
+			Map<String, byte[]> contents = new LinkedHashMap<>();
+			for (String personId : batch) {
+				contents.put(storeKey(personId), dataFormat.encode(persons.get(personId)));
+			}
+			if (persistenceService != null) {
+				for (Map.Entry<String, byte[]> entry : contents.entrySet()) {
+					persistenceService.write(entry.getKey(), entry.getValue());
+				}
+			} else {
+				store.writeAll(contents);
+			}
+			modifiedPersonIds.removeAll(batch);
+		}
+		// delete the entries of removed persons
+		for (String personId : new ArrayList<>(removedPersonIds)) {
+			deleteEntry(storeKey(personId));
+			removedPersonIds.remove(personId);
+		}
+	}
+	
+	
+	/**
+	 * Wait until the changes saved so far are written: with a persistence service, the
+	 * writes, journal syncs and compactions queued by save() are run. Without service,
+	 * save() already wrote them.
+	 * @throws IOException if a write of the persistence service failed
+	 */
+	public void flush() throws IOException {
+		if (persistenceService != null) {
+			persistenceService.flush();
+		}
+	}
+	
+	
+	/**
+	 * Delete an entry of the data store, through the persistence service if any
+	 * @param key key of the entry
+	 * @throws IOException
+	 */
+	private void deleteEntry(String key) throws IOException {
+		if (persistenceService != null) {
+			persistenceService.delete(key);
+		} else {
+			store.delete(key);
+		}
+	}
+	
+	
+	/**
+	 * Replay the operations of a journal over the current content, then log every 
+	 * subsequent operation in this journal
+	 * @param journalFile journal file (existing or created)
+	 * @throws IOException
+	 */
+	public void openJournal(File journalFile) throws IOException {
+		if (journal != null) {
+			throw new IllegalStateException("A journal is already open");
+		}
+		Journal newJournal = new Journal(journalFile, JOURNAL_COMPACTION_THRESHOLD);
+		newJournal.setPersistenceService(persistenceService);
+		List<String[]> entries = newJournal.readEntries();
+		for (String[] entry : entries) {
+			try {
+				replay(entry);
+			} catch (RuntimeException e) {
+				LOGGER.warning("Skip journal operation "+entry[0]+": "+e.getMessage());
+			}
+		}
+		journal = newJournal;
+		journalFailed = false;
+		
+		// write the replayed operations to the data store
+		if (!entries.isEmpty()) {
+			compactJournal();
+		}
+	}
+	
+	
+	/**
+	 * Wait for the compaction in progress, if any, and close the journal
+	 * @throws IOException
+	 */
+	public void closeJournal() throws IOException {
+		if (journal != null) {
+			try {
+				journal.close();
+			} finally {
+				journal = null;
+			}
+		}
+	}
+	
+	
+	/**
+	 * Start a new journal and write the changes to the data store in the background.
+	 * The persons captured by a snapshot are captured again by the next snapshots until a
+	 * snapshot capturing them is written: the old journal deleted by a snapshot may hold
+	 * the operations of a previous snapshot that could not be written.
+	 * @throws IOException
+	 */
+	private void compactJournal() throws IOException {
+		// capture the changes now: they are written by another thread
+		Map<String, byte[]> contents = new HashMap<>();
+		List<String> deletedKeys = new ArrayList<>();
+		final long number;
+		synchronized (unwrittenSnapshotIds) {
+			number = ++snapshotNumber;
+			Set<String> personIds = new HashSet<>(unwrittenSnapshotIds.keySet());
+			personIds.addAll(modifiedPersonIds);
+			personIds.addAll(removedPersonIds);
+			for (String personId : personIds) {
+				Person person = persons.get(personId);
+				if (person != null) {
+					contents.put(storeKey(personId), dataFormat.encode(person));
+				} else {
+					deletedKeys.add(storeKey(personId));
+				}
+				unwrittenSnapshotIds.put(personId, number);
+			}
+		}
+		modifiedPersonIds.clear();
+		removedPersonIds.clear();
+		journalFailed = false;
+		
+		final DataStore targetStore = store;
+		journal.compact(() -> {
+			targetStore.writeAll(contents);
+			for (String key : deletedKeys) {
+				targetStore.delete(key);
+			}
+			// the persons captured again by a later snapshot wait for that snapshot
+			synchronized (unwrittenSnapshotIds) {
+				unwrittenSnapshotIds.values().removeIf(last -> last == number);
+			}
+		});
+	}
+	
+	
+	/**
+	 * Append an operation to the journal, if any
+	 * @param operation name of the operation, followed by its arguments
+	 */
+	private void log(String... operation) {
+		if (journal == null) {
+			return;
+		}
+		try {
+			journal.append(operation);
+		} catch (IOException e) {
+			// the next save will write the changes to the data store
+			LOGGER.warning("Cannot append to the journal: "+e.getMessage());
+			journalFailed = true;
+		}
+	}
+	
+	
+	/**
+	 * Append the new value of a person to the journal, if any
+	 * (the person is serialized only when there is a journal)
+	 * @param person person added or modified
+	 */
+	private void logSetPerson(Person person) {
+		if (journal != null) {
+			log("setPerson", person.toJson());
+		}
+	}
+	
+	
+	/**
+	 * Apply an operation read from the journal
+	 * @param entry name of the operation, followed by its arguments
+	 */
+	private void replay(String[] entry) {
+		switch (entry[0]) {
+		case "setPerson":
+			Person person = Person.fromJson(entry[1]);
+			if (persons.containsKey(person.getId())) {
+				setPerson(person.getId(), person);
+			} else {
+				addPerson(person);
+			}
+			break;
+		case "removePerson":
+			if (persons.containsKey(entry[1])) {
+				removePerson(entry[1]);
+			}
+			break;
+		default:
+			LOGGER.warning("Unknown journal operation: "+entry[0]);
+		}
+	}
+	
+	
+	/**
+	 * Save all the persons, whether they were modified or not
+	 * @throws IOException
+	 */
+	public void saveAll() throws IOException {
+		modifiedPersonIds.addAll(persons.keySet());
+		if (journal != null) {
+			compactJournal();
+		} else {
+			save();
 		}
 	}
 	
@@ -234,7 +861,7 @@ public class PersonManager {
 	public static PersonManager load(File directory, int idLength) throws IOException {
 		// check that path exists
 		if (!directory.isDirectory()) {
-			System.out.println("dir not exist");
+			LOGGER.warning("dir not exist");
 			throw new IOException("Directory does not exist");
 		}
 		
@@ -250,25 +877,205 @@ public class PersonManager {
 		
 		// create PersonManager
 		PersonManager pm = new PersonManager(idLength, directory);
+		pm.searchIndexPending = true;
 		for (String fileName : personFiles) {
 			Person personLoaded = Person.load(fileName);
-			String personFile = (new File(fileName).getName());
-			if (personLoaded.isEmpty()) {
-				// skip empty person
-				System.out.println("Skip file "+personFile+": empty person");
-				continue;
+			pm.addLoadedPerson(fileName, personLoaded, null);
+		}
+		// loaded persons are identical to their saved version
+		pm.modifiedPersonIds.clear();
+		
+		return pm;
+	}
+	
+	
+	/**
+	 * Load a person manager from a directory, reading the person files in parallel.
+	 * @param directory data directory
+	 * @param idLength number of characters of the Id string
+	 * @param numberOfThreads number of worker threads reading the person files
+	 * @return person manager object
+	 * @throws IOException if the directory cannot be listed
+	 * @see #load(DataStore, int, int)
+	 */
+	public static PersonManager load(File directory, int idLength, int numberOfThreads) 
+	throws IOException {
+		// check that path exists
+		if (!directory.isDirectory()) {
+			throw new IOException("Directory does not exist");
+		}
+		return load(new FileDataStore(directory), idLength, numberOfThreads);
+	}
+	
+	
+	/**
+	 * Load a person manager from a data store, reading the persons in parallel.
+	 * Persons are read and parsed on a pool of worker threads and added to the manager as 
+	 * soon as they are read. An entry that cannot be loaded is skipped and reported in 
+	 * getLoadErrors(), instead of aborting the whole load.
+	 * @param store data store containing the persons
+	 * @param idLength number of characters of the Id string
+	 * @param numberOfThreads number of worker threads reading the persons
+	 * @return person manager object
+	 * @throws IOException if the content of the store cannot be listed
+	 */
+	public static PersonManager load(DataStore store, int idLength, int numberOfThreads) 
+	throws IOException {
+		if (numberOfThreads < 1) {
+			throw new IllegalArgumentException("Number of threads must be positive");
+		}
+		
+		PersonManager pm = new PersonManager(idLength, store);
+		// persons are indexed from the saved index, if any, or on the first search
+		pm.searchIndexPending = true;
+		ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+		CompletionService<LoadResult> loader = new ExecutorCompletionService<>(executor);
+		// bound the number of entries read ahead, so that parsed persons do not pile up 
+		int maxTasksInFlight = numberOfThreads * LOAD_TASKS_PER_THREAD;
+		int tasksInFlight = 0;
+		// the collation keys of the names are computed by the workers too, each with its 
+		// own collator (not thread-safe) cloned from a template not used otherwise
+		Collator collatorTemplate = (Collator) pm.collator.clone();
+		ThreadLocal<Collator> collators = 
+				ThreadLocal.withInitial(() -> (Collator) collatorTemplate.clone());
+		
+		try {
+			for (String key : store.keys()) {
+				if (!key.endsWith(DATA_END)) {
+					continue;
+				}
+				loader.submit(() -> LoadResult.read(store, key, collators.get()));
+				tasksInFlight++;
+				
+				// consume results while submitting reads
+				if (tasksInFlight >= maxTasksInFlight) {
+					pm.addLoadResult(loader.take().get());
+					tasksInFlight--;
+				}
 			}
 			
-			// check ID length
-			if (personLoaded.getId().length() != idLength) {
-				System.out.println("Skip file "+personFile+": ID with wrong length");
-				continue;
+			// consume remaining results
+			while (tasksInFlight > 0) {
+				pm.addLoadResult(loader.take().get());
+				tasksInFlight--;
 			}
-			
-			// add valid person
-			pm.addPerson(personLoaded);	
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			// should not happen: load errors are caught by the tasks
+			throw new IOException(e.getCause());
+		} finally {
+			executor.shutdownNow();
 		}
+		// loaded persons are identical to their saved version
+		pm.modifiedPersonIds.clear();
 		
 		return pm;
 	}
+	
+	
+	/**
+	 * Add a person loaded from a file, or report why it was skipped
+	 * @param fileName name of the file (or store key) the person was loaded from
+	 * @param personLoaded person read from the file
+	 * @param nameCollationKey collation key of the name of the person, or null to compute it
+	 */
+	private void addLoadedPerson(String fileName, Person personLoaded, 
+			CollationKey nameCollationKey) {
+		String personFile = (new File(fileName).getName());
+		if (personLoaded.isEmpty()) {
+			// skip empty person
+			LOGGER.warning("Skip file "+personFile+": empty person");
+			loadErrors.put(fileName, "empty person");
+			return;
+		}
+		
+		// check ID length
+		if (personLoaded.getId().length() != idLength) {
+			LOGGER.warning("Skip file "+personFile+": ID with wrong length");
+			loadErrors.put(fileName, "ID with wrong length");
+			return;
+		}
+		
+		// add valid person
+		addPerson(personLoaded, nameCollationKey);
+	}
+	
+	
+	/**
+	 * Add the result of a parallel read, or report the read error
+	 * @param result result of the read
+	 */
+	private void addLoadResult(LoadResult result) {
+		if (result.error != null) {
+			LOGGER.warning("Skip file "+(new File(result.fileName).getName())+": "
+					+result.error);
+			loadErrors.put(result.fileName, result.error.toString());
+			return;
+		}
+		try {
+			addLoadedPerson(result.fileName, result.person, result.nameCollationKey);
+		} catch (IllegalArgumentException e) {
+			// e.g. two files with the same Id
+			loadErrors.put(result.fileName, e.getMessage());
+		}
+	}
+	
+	
+	/**
+	 * Position of a person in the name index: collation key of the name, then Id.
+	 * Keys can be kept to maintain a list sorted as the index (e.g. in the GUI): the key
+	 * of a person changes only when its name changes.
+	 */
+	public static final class NameKey implements Comparable<NameKey> {
+		private final String name;
+		private final CollationKey collationKey;
+		private final String personId;
+		
+		private NameKey(String name, CollationKey collationKey, String personId) {
+			this.name = name;
+			this.collationKey = collationKey;
+			this.personId = personId;
+		}
+		
+		public String getPersonId() {
+			return personId;
+		}
+		
+		@Override
+		public int compareTo(NameKey other) {
+			int result = collationKey.compareTo(other.collationKey);
+			return (result != 0) ? result : personId.compareTo(other.personId);
+		}
+	}
+	
+	
+	/**
+	 * Result of the read of a person by a worker thread
+	 */
+	private static class LoadResult {
+		private final String fileName;
+		private final Person person;
+		private final CollationKey nameCollationKey;
+		private final Exception error;
+		
+		private LoadResult(String fileName, Person person, CollationKey nameCollationKey, 
+				Exception error) {
+			this.fileName = fileName;
+			this.person = person;
+			this.nameCollationKey = nameCollationKey;
+			this.error = error;
+		}
+		
+		private static LoadResult read(DataStore store, String key, Collator collator) {
+			try {
+				Person person = DataFormat.decodePerson(store.read(key));
+				return new LoadResult(key, person, collator.getCollationKey(person.getName()), null);
+			} catch (Exception e) {
+				// IO errors and malformed content
+				return new LoadResult(key, null, null, e);
+			}
+		}
+	}
 }
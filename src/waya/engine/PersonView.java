@@ -0,0 +1,43 @@
+package waya.engine;
+
+/**
+ * Read-only access to a person.
+ * Returned by PersonManager.getPersonView() without copying the person: a view reflects
+ * the current state of the person in the manager, and must not be cast to modify it.
+ * @author bertrand
+ *
+ */
+public interface PersonView {
+	
+	/**
+	 * @return id of the person
+	 */
+	public String getId();
+	
+	
+	/**
+	 * @return name of the person
+	 */
+	public String getName();
+	
+	
+	/**
+	 * @return path of the image file
+	 */
+	public String getImagePath();
+	
+	
+	/**
+	 * @return number of informations
+	 */
+	public int getNumberOfInformations();
+	
+	
+	/**
+	 * Return the information at given index
+	 * @param index index of the information
+	 * @return read-only information
+	 * @throws IndexOutOfBoundsException
+	 */
+	public InformationView getInformation(int index);
+}
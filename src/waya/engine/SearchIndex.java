@@ -0,0 +1,272 @@
+package waya.engine;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Full-text index of the persons: name, information names and information values.
+ *
+ * The text is split in terms (letters and digits), lower-cased and stripped from accents,
+ * so that "Éric" is found with "eric". The index maps each term to the persons containing it
+ * (posting list) with a weight: the number of occurrences, the terms of the name counting more.
+ * The terms are sorted, so that the terms starting with a prefix are a contiguous range.
+ *
+ * A query is a list of terms: a person matches if it contains every term, either exactly
+ * or as the prefix of a longer term. Matching persons are ranked by the sum of the weights
+ * of the matched terms multiplied by their rarity (tf-idf).
+ *
+ * The index is updated person by person: the terms of each person are kept so that the
+ * postings of a modified or removed person can be removed without rebuilding the index.
+ * @author bertrand
+ *
+ */
+public class SearchIndex {
+	private static final int NAME_WEIGHT = 3;
+	private static final int INFORMATION_NAME_WEIGHT = 1;
+	private static final int VALUE_WEIGHT = 1;
+	// a term found as the prefix of a longer term counts less than an exact match
+	private static final double PREFIX_MATCH_FACTOR = 0.5;
+
+	// term -> (person Id -> weight of the term in the person)
+	private TreeMap<String, HashMap<String, Integer>> postings;
+	// person Id -> (term -> weight), to update the postings of a person
+	private HashMap<String, Map<String, Integer>> personTerms;
+
+	/**
+	 * Constructor: empty index
+	 */
+	public SearchIndex() {
+		postings = new TreeMap<>();
+		personTerms = new HashMap<>();
+	}
+
+
+	/**
+	 * Add a person to the index, or update it if it is already indexed
+	 * @param person person indexed
+	 */
+	public void index(PersonView person) {
+		Map<String, Integer> terms = extractTerms(person);
+		Map<String, Integer> previousTerms = personTerms.get(person.getId());
+		if (terms.equals(previousTerms)) {
+			// nothing to update
+			return;
+		}
+		remove(person.getId());
+		addPostings(person.getId(), terms);
+	}
+
+
+	/**
+	 * Add a person to the index with terms already extracted, e.g. read from a saved index
+	 * @param personId Id of the person
+	 * @param terms terms of the person with their weight
+	 */
+	public void put(String personId, Map<String, Integer> terms) {
+		remove(personId);
+		addPostings(personId, terms);
+	}
+
+
+	/**
+	 * Return the terms of an indexed person with their weight
+	 * @param personId Id of the person
+	 * @return unmodifiable map term -> weight, or null if the person is not indexed
+	 */
+	public Map<String, Integer> getTerms(String personId) {
+		Map<String, Integer> terms = personTerms.get(personId);
+		return (terms == null) ? null : Collections.unmodifiableMap(terms);
+	}
+
+
+	/**
+	 * Remove a person from the index
+	 * @param personId Id of the person
+	 */
+	public void remove(String personId) {
+		Map<String, Integer> terms = personTerms.remove(personId);
+		if (terms == null) {
+			return;
+		}
+		for (String term : terms.keySet()) {
+			HashMap<String, Integer> personWeights = postings.get(term);
+			personWeights.remove(personId);
+			if (personWeights.isEmpty()) {
+				postings.remove(term);
+			}
+		}
+	}
+
+
+	/**
+	 * Remove all the persons from the index
+	 */
+	public void clear() {
+		postings.clear();
+		personTerms.clear();
+	}
+
+
+	/**
+	 * Return the number of persons in the index
+	 * @return number of persons
+	 */
+	public int size() {
+		return personTerms.size();
+	}
+
+
+	/**
+	 * Return the Ids of the persons matching all the terms of a query, best matches first
+	 * @param query terms searched, e.g. "acme paris" or "eng" for "engineer"
+	 * @param maxResults maximum number of Ids returned
+	 * @return list of person Ids
+	 */
+	public List<String> search(String query, int maxResults) {
+		List<String> queryTerms = tokenize(query);
+		if (queryTerms.isEmpty() || maxResults <= 0) {
+			return Collections.emptyList();
+		}
+
+		// score of each person matching all the terms processed so far
+		HashMap<String, Double> scores = null;
+		for (String queryTerm : queryTerms) {
+			HashMap<String, Double> termScores = scoreTerm(queryTerm);
+			if (scores == null) {
+				scores = termScores;
+			} else {
+				// keep the persons matching the previous terms and this one
+				HashMap<String, Double> intersection = new HashMap<>();
+				for (Map.Entry<String, Double> entry : scores.entrySet()) {
+					Double termScore = termScores.get(entry.getKey());
+					if (termScore != null) {
+						intersection.put(entry.getKey(), entry.getValue() + termScore);
+					}
+				}
+				scores = intersection;
+			}
+			if (scores.isEmpty()) {
+				return Collections.emptyList();
+			}
+		}
+
+		// rank: best score first, then Id for a stable order
+		Comparator<Map.Entry<String, Double>> ranking = (entry1, entry2) -> {
+			int comparison = Double.compare(entry2.getValue(), entry1.getValue());
+			return (comparison != 0) ? comparison : entry1.getKey().compareTo(entry2.getKey());
+		};
+		// keep the best results only: heap whose head is the worst result kept
+		PriorityQueue<Map.Entry<String, Double>> best =
+				new PriorityQueue<>(Math.min(maxResults, scores.size()), ranking.reversed());
+		for (Map.Entry<String, Double> entry : scores.entrySet()) {
+			if (best.size() < maxResults) {
+				best.add(entry);
+			} else if (ranking.compare(entry, best.peek()) < 0) {
+				best.poll();
+				best.add(entry);
+			}
+		}
+		List<Map.Entry<String, Double>> sorted = new ArrayList<>(best);
+		sorted.sort(ranking);
+		List<String> result = new ArrayList<>(sorted.size());
+		for (Map.Entry<String, Double> entry : sorted) {
+			result.add(entry.getKey());
+		}
+		return result;
+	}
+
+
+	/**
+	 * Split a text in normalized terms: lower-case letters and digits, without accents
+	 * @param text input text
+	 * @return list of terms, in the order of the text
+	 */
+	public static List<String> tokenize(String text) {
+		List<String> terms = new ArrayList<>();
+		if (text == null || text.isEmpty()) {
+			return terms;
+		}
+		String normalized = Normalizer.normalize(text, Normalizer.Form.NFD);
+		StringBuilder term = new StringBuilder();
+		for (int i=0; i<normalized.length(); i++) {
+			char c = normalized.charAt(i);
+			if (Character.getType(c) == Character.NON_SPACING_MARK) {
+				// accent detached from its letter by the normalization
+				continue;
+			}
+			if (Character.isLetterOrDigit(c)) {
+				term.append(Character.toLowerCase(c));
+			} else if (term.length() > 0) {
+				terms.add(term.toString());
+				term.setLength(0);
+			}
+		}
+		if (term.length() > 0) {
+			terms.add(term.toString());
+		}
+		return terms;
+	}
+
+
+	/**
+	 * Return the score of the persons containing a term or a longer term starting with it
+	 */
+	private HashMap<String, Double> scoreTerm(String queryTerm) {
+		HashMap<String, Double> scores = new HashMap<>();
+		double numberOfPersons = personTerms.size();
+		// all the terms starting with the query term
+		SortedMap<String, HashMap<String, Integer>> matches =
+				postings.subMap(queryTerm, queryTerm + Character.MAX_VALUE);
+		for (Map.Entry<String, HashMap<String, Integer>> match : matches.entrySet()) {
+			HashMap<String, Integer> personWeights = match.getValue();
+			double idf = Math.log(1 + numberOfPersons / personWeights.size());
+			double factor = match.getKey().equals(queryTerm) ? 1 : PREFIX_MATCH_FACTOR;
+			for (Map.Entry<String, Integer> entry : personWeights.entrySet()) {
+				scores.merge(entry.getKey(), factor * entry.getValue() * idf, Double::sum);
+			}
+		}
+		return scores;
+	}
+
+
+	/**
+	 * Return the terms of a person with their weight
+	 */
+	private static Map<String, Integer> extractTerms(PersonView person) {
+		HashMap<String, Integer> terms = new HashMap<>();
+		addTerms(terms, person.getName(), NAME_WEIGHT);
+		for (int i=0; i<person.getNumberOfInformations(); i++) {
+			InformationView information = person.getInformation(i);
+			addTerms(terms, information.getName(), INFORMATION_NAME_WEIGHT);
+			// values are a linked list: iterated, not accessed by index
+			for (String value : information.getValues()) {
+				addTerms(terms, value, VALUE_WEIGHT);
+			}
+		}
+		return terms;
+	}
+
+
+	private static void addTerms(Map<String, Integer> terms, String text, int weight) {
+		for (String term : tokenize(text)) {
+			terms.merge(term, weight, Integer::sum);
+		}
+	}
+
+
+	private void addPostings(String personId, Map<String, Integer> terms) {
+		for (Map.Entry<String, Integer> entry : terms.entrySet()) {
+			postings.computeIfAbsent(entry.getKey(), term -> new HashMap<>())
+					.put(personId, entry.getValue());
+		}
+		personTerms.put(personId, terms);
+	}
+}
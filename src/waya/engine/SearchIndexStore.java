@@ -0,0 +1,368 @@
+package waya.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * Persistent copy of the search index, so that the persons do not need to be re-indexed
+ * at each start.
+ *
+ * The index is saved as immutable segment files (segment-<number>.idx) in a directory.
+ * A segment holds one record per person: the terms of the person with their weight, and
+ * the stamp of the person entry in the data store when it was indexed (a record without
+ * terms marks a person removed). A segment is never modified: the changes are written
+ * in a new segment, and the record of the most recent segment wins.
+ *
+ * Segments are read through a memory mapping. When there are too many segments, they are
+ * merged into one by a background thread.
+ *
+ * Segment format: magic string, format version (int), number of records (int), records.
+ * Record: person Id, stamp (long), number of terms (int, -1 if removed), terms and weights.
+ * Strings are written as a length (int) followed by the UTF-8 bytes.
+ * @author bertrand
+ *
+ */
+public class SearchIndexStore {
+	private static final Logger LOGGER = Logger.getLogger(SearchIndexStore.class.getPackage().getName());
+	private static final byte[] MAGIC = "WAYAIDX".getBytes(StandardCharsets.US_ASCII);
+	private static final int FORMAT_VERSION = 1;
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_EXTENSION = ".idx";
+	private static final String TMP_EXTENSION = ".tmp";
+	// number of segments above which the segments are merged
+	private static final int MAX_SEGMENTS = 4;
+
+	private File directory;
+	private int lastSegmentNumber;
+	private ExecutorService mergeExecutor;
+	private Future<?> pendingMerge;
+
+	/**
+	 * Record of a person in a segment
+	 */
+	public static class Record {
+		private final String personId;
+		private final long stamp;
+		private final Map<String, Integer> terms;
+
+		/**
+		 * Constructor
+		 * @param personId Id of the person
+		 * @param stamp version of the person entry in the data store
+		 * @param terms terms of the person with their weight, or null if the person is removed
+		 */
+		public Record(String personId, long stamp, Map<String, Integer> terms) {
+			this.personId = personId;
+			this.stamp = stamp;
+			this.terms = terms;
+		}
+
+		public String getPersonId() {
+			return personId;
+		}
+
+		public long getStamp() {
+			return stamp;
+		}
+
+		/**
+		 * @return terms with their weight, or null if the person is removed
+		 */
+		public Map<String, Integer> getTerms() {
+			return terms;
+		}
+	}
+
+
+	/**
+	 * Constructor
+	 * @param directory directory of the segment files (existing or created)
+	 * @throws IOException
+	 */
+	public SearchIndexStore(File directory) throws IOException {
+		if (directory.isDirectory() == false) {
+			Files.createDirectories(directory.toPath());
+		}
+		this.directory = directory;
+		this.lastSegmentNumber = 0;
+		for (int number : listSegmentNumbers()) {
+			lastSegmentNumber = Math.max(lastSegmentNumber, number);
+		}
+		this.pendingMerge = null;
+		this.mergeExecutor = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "search-index-merge");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+
+	/**
+	 * Read the records of all the segments: for each person, the most recent record
+	 * @return person Id -> record, without the persons removed
+	 */
+	public synchronized Map<String, Record> read() {
+		Map<String, Record> records = readSegments(listSegmentNumbers());
+		records.values().removeIf(record -> record.terms == null);
+		return records;
+	}
+
+
+	/**
+	 * Write records in a new segment
+	 * @param records records of the persons indexed or removed
+	 * @throws IOException
+	 */
+	public synchronized void writeSegment(Collection<Record> records) throws IOException {
+		if (records.isEmpty()) {
+			return;
+		}
+		lastSegmentNumber++;
+		writeSegmentFile(getSegmentFile(lastSegmentNumber), records);
+	}
+
+
+	/**
+	 * Return the number of segment files
+	 * @return number of segments
+	 */
+	public synchronized int getNumberOfSegments() {
+		return listSegmentNumbers().size();
+	}
+
+
+	/**
+	 * Merge the segments in a background thread, if there are too many of them
+	 */
+	public synchronized void mergeIfNeeded() {
+		if (pendingMerge != null && !pendingMerge.isDone()) {
+			return;
+		}
+		final List<Integer> numbers = listSegmentNumbers();
+		if (numbers.size() <= MAX_SEGMENTS) {
+			return;
+		}
+		pendingMerge = mergeExecutor.submit(() -> {
+			merge(numbers);
+			return null;
+		});
+	}
+
+
+	/**
+	 * Wait for the merge in progress, if any, and release the merge thread
+	 * @throws IOException if the merge failed (the segments are left unchanged)
+	 */
+	public void close() throws IOException {
+		Future<?> merge;
+		synchronized (this) {
+			merge = pendingMerge;
+			pendingMerge = null;
+			mergeExecutor.shutdown();
+		}
+		if (merge == null) {
+			return;
+		}
+		try {
+			merge.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			throw new IOException("Cannot merge the search index segments", e.getCause());
+		}
+	}
+
+
+	/**
+	 * Merge segments into one segment, which replaces the most recent of them.
+	 * The segments written meanwhile have larger numbers, hence remain more recent.
+	 */
+	private void merge(List<Integer> numbers) throws IOException {
+		// all the segments are merged: records of removed persons are not needed anymore
+		Map<String, Record> records = readSegments(numbers);
+		records.values().removeIf(record -> record.terms == null);
+		int mergedNumber = numbers.get(numbers.size()-1);
+		File tmpFile = new File(directory, SEGMENT_PREFIX+mergedNumber+TMP_EXTENSION);
+		writeSegmentFile(tmpFile, records.values());
+
+		synchronized (this) {
+			Path path = getSegmentFile(mergedNumber).toPath();
+			try {
+				Files.move(tmpFile.toPath(), path, StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmpFile.toPath(), path, StandardCopyOption.REPLACE_EXISTING);
+			}
+			for (int number : numbers) {
+				if (number != mergedNumber) {
+					Files.deleteIfExists(getSegmentFile(number).toPath());
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Read segments, from the oldest to the most recent
+	 * @return person Id -> most recent record, including the records of removed persons
+	 */
+	private Map<String, Record> readSegments(List<Integer> numbers) {
+		Map<String, Record> records = new HashMap<>();
+		for (int number : numbers) {
+			File file = getSegmentFile(number);
+			try {
+				for (Record record : readSegmentFile(file)) {
+					records.put(record.personId, record);
+				}
+			} catch (IOException | RuntimeException e) {
+				// the persons of this segment are found stale and re-indexed
+				LOGGER.warning("Skip search index segment "+file.getName()+": "+e.getMessage());
+			}
+		}
+		return records;
+	}
+
+
+	private List<Record> readSegmentFile(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			byte[] magic = new byte[MAGIC.length];
+			buffer.get(magic);
+			if (!Arrays.equals(magic, MAGIC)) {
+				throw new IOException("not a segment file");
+			}
+			int version = buffer.getInt();
+			if (version > FORMAT_VERSION) {
+				throw new IOException("unsupported segment version "+version);
+			}
+			int numberOfRecords = buffer.getInt();
+			List<Record> records = new ArrayList<>(numberOfRecords);
+			for (int i=0; i<numberOfRecords; i++) {
+				String personId = getString(buffer);
+				long stamp = buffer.getLong();
+				int numberOfTerms = buffer.getInt();
+				Map<String, Integer> terms = null;
+				if (numberOfTerms >= 0) {
+					terms = new HashMap<>();
+					for (int j=0; j<numberOfTerms; j++) {
+						String term = getString(buffer);
+						terms.put(term, buffer.getInt());
+					}
+				}
+				records.add(new Record(personId, stamp, terms));
+			}
+			return records;
+		}
+	}
+
+
+	private static void writeSegmentFile(File file, Collection<Record> records) throws IOException {
+		// size of the segment
+		int size = MAGIC.length + 2 * Integer.BYTES;
+		List<byte[]> strings = new ArrayList<>();
+		for (Record record : records) {
+			strings.add(record.personId.getBytes(StandardCharsets.UTF_8));
+			size += Integer.BYTES + strings.get(strings.size()-1).length + Long.BYTES + Integer.BYTES;
+			if (record.terms != null) {
+				for (Map.Entry<String, Integer> entry : record.terms.entrySet()) {
+					strings.add(entry.getKey().getBytes(StandardCharsets.UTF_8));
+					size += Integer.BYTES + strings.get(strings.size()-1).length + Integer.BYTES;
+				}
+			}
+		}
+
+		// content: the strings were encoded in the order they are written
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		buffer.put(MAGIC);
+		buffer.putInt(FORMAT_VERSION);
+		buffer.putInt(records.size());
+		int stringIndex = 0;
+		for (Record record : records) {
+			putString(buffer, strings.get(stringIndex++));
+			buffer.putLong(record.stamp);
+			if (record.terms == null) {
+				buffer.putInt(-1);
+			} else {
+				buffer.putInt(record.terms.size());
+				for (Map.Entry<String, Integer> entry : record.terms.entrySet()) {
+					putString(buffer, strings.get(stringIndex++));
+					buffer.putInt(entry.getValue());
+				}
+			}
+		}
+		buffer.flip();
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(false);
+		}
+	}
+
+
+	private static String getString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+
+	private static void putString(ByteBuffer buffer, byte[] bytes) {
+		buffer.putInt(bytes.length);
+		buffer.put(bytes);
+	}
+
+
+	private File getSegmentFile(int number) {
+		return new File(directory, SEGMENT_PREFIX+number+SEGMENT_EXTENSION);
+	}
+
+
+	/**
+	 * Return the numbers of the segment files, in increasing order
+	 */
+	private List<Integer> listSegmentNumbers() {
+		String[] fileNames = directory.list();
+		if (fileNames == null) {
+			return Collections.emptyList();
+		}
+		TreeMap<Integer, String> numbers = new TreeMap<>();
+		for (String fileName : fileNames) {
+			if (fileName.startsWith(SEGMENT_PREFIX) && fileName.endsWith(SEGMENT_EXTENSION)) {
+				try {
+					int number = Integer.parseInt(fileName.substring(SEGMENT_PREFIX.length(),
+							fileName.length()-SEGMENT_EXTENSION.length()));
+					numbers.put(number, fileName);
+				} catch (NumberFormatException e) {
+					// not a segment
+				}
+			}
+		}
+		return new ArrayList<>(numbers.keySet());
+	}
+}
@@ -0,0 +1,173 @@
+package waya.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Tool to copy the data of WAYA from a storage backend to another.
+ *
+ * Usage: StoreMigration <data directory> [--to-files | --format json|binary]
+ * - default: copy the files of the directory (one file per person, tags.json) to the packed
+ *   store <data directory>/waya.pack
+ * - --to-files: copy the packed store back to one file per entry
+ * The source is left untouched.
+ * - --format: rewrite the persons and the tags of the files of the directory in the given 
+ *   data format
+ * @author bertrand
+ *
+ */
+public class StoreMigration {
+	public static final String PACKED_STORE_FILE = "waya.pack";
+	private static final String TAGS_KEY = "tags";
+	private static final String PERSON_KEY_END = "_data";
+
+	/**
+	 * Copy all the entries of a store to another store, and check the copy
+	 * @param source store read
+	 * @param target store written
+	 * @return number of entries copied
+	 * @throws IOException if an entry cannot be copied or differs after the copy
+	 */
+	public static int migrate(DataStore source, DataStore target) throws IOException {
+		boolean sync = disableSync(target);
+		int count = 0;
+		try {
+			for (String key : source.keys()) {
+				byte[] content = source.read(key);
+				target.write(key, content);
+				if (!Arrays.equals(content, target.read(key))) {
+					throw new IOException("Entry differs after copy: "+key);
+				}
+				count++;
+			}
+		} finally {
+			restoreSync(target, sync);
+		}
+		return count;
+	}
+
+
+	/**
+	 * Rewrite the persons and the tags of a store in a data format
+	 * @param store store converted in place
+	 * @param format new data format
+	 * @return number of entries converted
+	 * @throws IOException if an entry cannot be read, decoded or written
+	 */
+	public static int convert(DataStore store, DataFormat format) throws IOException {
+		boolean sync = disableSync(store);
+		int count = 0;
+		try {
+			for (String key : store.keys()) {
+				try {
+					if (key.equals(TAGS_KEY)) {
+						TagManager tagManager = TagManager.load(store);
+						tagManager.setDataFormat(format);
+						tagManager.save();
+						count++;
+					} else if (key.endsWith(PERSON_KEY_END)) {
+						Person person = DataFormat.decodePerson(store.read(key));
+						store.write(key, format.encode(person));
+						count++;
+					}
+				} catch (IllegalArgumentException e) {
+					throw new IOException("Cannot decode entry "+key, e);
+				}
+			}
+		} finally {
+			restoreSync(store, sync);
+		}
+		return count;
+	}
+
+
+	/**
+	 * Stop forcing each record of a packed store: the records written by a migration are
+	 * forced once, by restoreSync()
+	 * @return previous sync setting of the store
+	 */
+	private static boolean disableSync(DataStore store) {
+		if (!(store instanceof PackedDataStore)) {
+			return false;
+		}
+		PackedDataStore packed = (PackedDataStore) store;
+		boolean sync = packed.isSync();
+		packed.setSync(false);
+		return sync;
+	}
+
+
+	/**
+	 * Force the records written to a packed store, and restore its sync setting
+	 */
+	private static void restoreSync(DataStore store, boolean sync) throws IOException {
+		if (store instanceof PackedDataStore) {
+			PackedDataStore packed = (PackedDataStore) store;
+			packed.setSync(sync);
+			packed.sync();
+		}
+	}
+	
+	
+	public static void main(String[] argv) {
+		if (argv.length == 3 && argv[1].equals("--format")) {
+			mainConvert(new File(argv[0]), argv[2]);
+			return;
+		}
+		if (argv.length < 1 || argv.length > 2
+				|| (argv.length == 2 && !argv[1].equals("--to-files"))) {
+			System.out.println("Usage: StoreMigration <data directory> [--to-files | --format json|binary]");
+			System.exit(1);
+		}
+		File directory = new File(argv[0]);
+		if (!directory.isDirectory()) {
+			System.out.println("Directory does not exist: "+directory);
+			System.exit(1);
+		}
+		boolean toFiles = (argv.length == 2);
+
+		DataStore files = null;
+		DataStore packed = null;
+		try {
+			files = new FileDataStore(directory);
+			packed = new PackedDataStore(new File(directory, PACKED_STORE_FILE));
+			int count;
+			if (toFiles) {
+				count = migrate(packed, files);
+			} else {
+				count = migrate(files, packed);
+			}
+			System.out.println("Copied "+count+" entries");
+		} catch (IOException e) {
+			System.out.println("Migration failed: "+e.getMessage());
+			System.exit(1);
+		} finally {
+			try {
+				if (packed != null) {
+					packed.close();
+				}
+			} catch (IOException e) {
+				System.out.println("Cannot close "+PACKED_STORE_FILE+": "+e.getMessage());
+			}
+		}
+	}
+	
+	
+	private static void mainConvert(File directory, String formatName) {
+		if (!directory.isDirectory()) {
+			System.out.println("Directory does not exist: "+directory);
+			System.exit(1);
+		}
+		try {
+			int count = convert(new FileDataStore(directory), DataFormat.fromName(formatName));
+			System.out.println("Converted "+count+" entries");
+		} catch (IllegalArgumentException e) {
+			System.out.println("Unknown format: "+formatName);
+			System.exit(1);
+		} catch (IOException e) {
+			System.out.println("Conversion failed: "+e.getMessage());
+			System.exit(1);
+		}
+	}
+}
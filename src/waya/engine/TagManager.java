@@ -1,19 +1,16 @@
 package waya.engine;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-
-import com.owlike.genson.GenericType;
-import com.owlike.genson.Genson;
-import com.owlike.genson.GensonBuilder;
+import java.util.logging.Logger;
 
 
 /**
@@ -23,21 +20,24 @@ import com.owlike.genson.GensonBuilder;
  *
  */
 public class TagManager {
+	private static final Logger LOGGER = Logger.getLogger(TagManager.class.getPackage().getName());
+	static final long VERSION = 1L;
 	private static String ERROR_NO_TAG = "There is no tag: ";
 	private static String ERROR_TAG_EXISTS = "Tag already exists: ";
-	private static final String SAVE_FILE = "tags.json";
-	private static final Genson GENSON_CONVERTER;
-	
-	private HashMap<String, ArrayList<String>> tags;
-	private File dataDirectory;
+	private static final String STORE_KEY = "tags";
+	private static final long JOURNAL_COMPACTION_THRESHOLD = 64 * 1024;
 	
-	static {
-		GensonBuilder builder = new GensonBuilder()
-			.include("tags")
-			.acceptSingleValueAsList(true)
-			.useMethods(false);
-		GENSON_CONVERTER = builder.create();
-	}
+	// tag -> items, without duplicates, in insertion order
+	private HashMap<String, LinkedHashSet<String>> tags;
+	// reverse index: item -> tags containing the item
+	private HashMap<String, HashSet<String>> itemTags;
+	private DataStore store;
+	private Journal journal;
+	private boolean journalFailed;
+	private long modificationCount;
+	private DataFormat dataFormat;
+	// background writer of the store, if any
+	private PersistenceService persistenceService;
 	
 	/**
 	 * Constructor
@@ -45,12 +45,55 @@ public class TagManager {
 	 * @throws IOException 
 	 */
 	public TagManager(File directory) throws IOException {
-		// create data directory if it does not exist
-		if (directory.isDirectory() == false) {
-			Files.createDirectories(directory.toPath());
-		}
+		this(new FileDataStore(directory));
+	}
+	
+	
+	/**
+	 * Constructor
+	 * @param store storage backend used to save the tags
+	 */
+	public TagManager(DataStore store) {
 		tags = new HashMap<>();
-		this.dataDirectory = directory;
+		itemTags = new HashMap<>();
+		this.store = store;
+		this.dataFormat = DataFormat.JSON;
+	}
+	
+	
+	/**
+	 * Select the format used to write the tags. Tags are read in any format.
+	 * @param format data format
+	 */
+	public void setDataFormat(DataFormat format) {
+		this.dataFormat = format;
+	}
+	
+	
+	/**
+	 * Return the format used to write the tags
+	 * @return data format
+	 */
+	public DataFormat getDataFormat() {
+		return dataFormat;
+	}
+	
+	
+	/**
+	 * Write the tags in the background: save() encodes the tags and submits them to the 
+	 * service instead of writing the data store. The journal, if any, is also appended,
+	 * forced and compacted by the service.
+	 * @param service background writer of the data store of this manager, or null to 
+	 * write the data store directly
+	 */
+	public void setPersistenceService(PersistenceService service) {
+		if (service != null && service.getStore() != store) {
+			throw new IllegalArgumentException("The service must write the store of the manager");
+		}
+		this.persistenceService = service;
+		if (journal != null) {
+			journal.setPersistenceService(service);
+		}
 	}
 	
 	
@@ -59,10 +102,10 @@ public class TagManager {
 	}
 	
 	
-	public List<String> getContent(String tagName) throws IllegalArgumentException {
+	public Set<String> getContent(String tagName) throws IllegalArgumentException {
 		if (hasTag(tagName)) {
 			// return an unmodifiable view of the content of the tag
-			List<String> output = Collections.unmodifiableList(tags.get(tagName));
+			Set<String> output = Collections.unmodifiableSet(tags.get(tagName));
 			return output;
 		} else {
 			throw new IllegalArgumentException(ERROR_NO_TAG+tagName);
@@ -70,9 +113,36 @@ public class TagManager {
 	}
 	
 	
+	/**
+	 * Return the tags containing an item
+	 * @param item item, e.g. a person Id
+	 * @return unmodifiable set of tags (empty if the item has no tag)
+	 */
+	public Set<String> getTagsOf(String item) {
+		Set<String> itemTagSet = itemTags.get(item);
+		if (itemTagSet == null) {
+			return Collections.emptySet();
+		}
+		return Collections.unmodifiableSet(itemTagSet);
+	}
+	
+	
+	/**
+	 * Tells if a tag contains an item
+	 * @param tagName name of the tag
+	 * @param item item, e.g. a person Id
+	 * @return true if the tag contains the item
+	 */
+	public boolean isInTag(String tagName, String item) {
+		Set<String> itemTagSet = itemTags.get(item);
+		return (itemTagSet != null) && itemTagSet.contains(tagName);
+	}
+	
+	
 	public void addTag(String tagName) throws IllegalArgumentException {
 		if (!hasTag(tagName)) {
-			tags.put(tagName, new ArrayList<String>());
+			tags.put(tagName, new LinkedHashSet<String>());
+			recordOperation("addTag", tagName);
 		} else {
 			throw new IllegalArgumentException(ERROR_TAG_EXISTS+tagName);
 		}
@@ -81,7 +151,10 @@ public class TagManager {
 	
 	public void removeTag(String tagName) throws IllegalArgumentException {
 		if (hasTag(tagName)) {
-			tags.remove(tagName);
+			for (String item : tags.remove(tagName)) {
+				unindex(tagName, item);
+			}
+			recordOperation("removeTag", tagName);
 		} else {
 			throw new IllegalArgumentException(ERROR_NO_TAG+tagName);
 		}
@@ -104,15 +177,29 @@ public class TagManager {
 		}
 		
 		// create a new tag, transfer content and remove old tag
-		ArrayList<String> content = tags.get(oldName);
+		LinkedHashSet<String> content = tags.get(oldName);
 		tags.put(newName, content);
 		tags.remove(oldName);
+		for (String item : content) {
+			unindex(oldName, item);
+			index(newName, item);
+		}
+		recordOperation("renameTag", oldName, newName);
 	}
 	
 	
+	/**
+	 * Add an item to a tag. Nothing is done if the tag already contains the item.
+	 * @param tagName name of the tag
+	 * @param item item added
+	 * @throws IllegalArgumentException if the tag does not exist
+	 */
 	public void addToTag(String tagName, String item) throws IllegalArgumentException {
 		if (hasTag(tagName)) {
-			tags.get(tagName).add(item);
+			if (tags.get(tagName).add(item)) {
+				index(tagName, item);
+				recordOperation("addToTag", tagName, item);
+			}
 		} else {
 			throw new IllegalArgumentException(ERROR_NO_TAG+tagName);
 		}
@@ -121,18 +208,13 @@ public class TagManager {
 	
 	public void removeFromTag(String tagName, String item) throws IllegalArgumentException {
 		if (hasTag(tagName)) {
-			ArrayList<String> tagContent = tags.get(tagName);
-			try {
-				boolean wasRemoved = tagContent.removeIf(item::equals);
-				// warn if removal failed because there were no occurrences of item in the tag
-				if (!wasRemoved) {
-					throw new IllegalArgumentException();
-				}
-			} catch (Exception e) {
+			// warn if removal failed because the item is not in the tag
+			if (!tags.get(tagName).remove(item)) {
 				throw new IllegalArgumentException("Cannot remove item "+item
 						+" from tag "+tagName);
 			}
-			tags.get(tagName).remove(item);
+			unindex(tagName, item);
+			recordOperation("removeFromTag", tagName, item);
 			
 		} else {
 			throw new IllegalArgumentException(ERROR_NO_TAG+tagName);
@@ -141,9 +223,16 @@ public class TagManager {
 	
 	
 	public void removeFromAllTags(String item) {
-		for (String tag : tags.keySet()) {
+		// only the tags containing the item are visited
+		Set<String> itemTagSet = itemTags.remove(item);
+		if (itemTagSet == null) {
+			// item in no tag: nothing to record
+			return;
+		}
+		for (String tag : itemTagSet) {
 			tags.get(tag).remove(item);
 		}
+		recordOperation("removeFromAllTags", item);
 	}
 	
 	
@@ -152,29 +241,208 @@ public class TagManager {
 	}
 	
 	
+	/**
+	 * Return the number of modifications done since the creation of the manager.
+	 * Used to detect that data computed from the tags is outdated.
+	 * @return number of modifications
+	 */
+	public long getModificationCount() {
+		return modificationCount;
+	}
+	
+	
+	/**
+	 * Add a tag to the reverse index of an item
+	 */
+	private void index(String tagName, String item) {
+		HashSet<String> itemTagSet = itemTags.get(item);
+		if (itemTagSet == null) {
+			itemTagSet = new HashSet<>();
+			itemTags.put(item, itemTagSet);
+		}
+		itemTagSet.add(tagName);
+	}
+	
+	
+	/**
+	 * Remove a tag from the reverse index of an item
+	 */
+	private void unindex(String tagName, String item) {
+		HashSet<String> itemTagSet = itemTags.get(item);
+		if (itemTagSet != null) {
+			itemTagSet.remove(tagName);
+			if (itemTagSet.isEmpty()) {
+				itemTags.remove(item);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Save the tags. 
+	 * Without journal, the whole content is written, in the background if a persistence
+	 * service is set. With a journal, the operations are 
+	 * already in the journal: the journal is forced to disk, and compacted in the background
+	 * if it became too large. With a persistence service, the sync and the compaction are 
+	 * queued, so that save() does no I/O.
+	 * @throws IOException
+	 */
 	public void save() throws IOException {
+		if (journal == null && persistenceService != null) {
+			persistenceService.write(STORE_KEY, encode());
+		} else if (journal == null) {
+			store.write(STORE_KEY, encode());
+		} else if (journalFailed || journal.hasFailed() || journal.needsCompaction()) {
+			compactJournal();
+		} else {
+			journal.sync();
+		}
+	}
+	
+	
+	/**
+	 * Replay the operations of a journal over the current content, then log every 
+	 * subsequent operation in this journal
+	 * @param journalFile journal file (existing or created)
+	 * @throws IOException
+	 */
+	public void openJournal(File journalFile) throws IOException {
+		if (journal != null) {
+			throw new IllegalStateException("A journal is already open");
+		}
+		Journal newJournal = new Journal(journalFile, JOURNAL_COMPACTION_THRESHOLD);
+		newJournal.setPersistenceService(persistenceService);
+		List<String[]> entries = newJournal.readEntries();
+		for (String[] entry : entries) {
+			try {
+				replay(entry);
+			} catch (RuntimeException e) {
+				// e.g. operation already applied in the snapshot
+				LOGGER.warning("Skip journal operation "+String.join(" ", entry)+": "+e.getMessage());
+			}
+		}
+		journal = newJournal;
+		journalFailed = false;
 		
-		// create and write data as a JSON string
-		String jsonString = GENSON_CONVERTER.serialize(this);
-		String fileName = dataDirectory + File.separator + SAVE_FILE;
-		FileTools.overwriteTextFile(fileName, jsonString);
+		// write the replayed operations in a new snapshot
+		if (!entries.isEmpty()) {
+			compactJournal();
+		}
+	}
+	
+	
+	/**
+	 * Wait for the compaction in progress, if any, and close the journal
+	 * @throws IOException
+	 */
+	public void closeJournal() throws IOException {
+		if (journal != null) {
+			try {
+				journal.close();
+			} finally {
+				journal = null;
+			}
+		}
 	}
 	
 	
-	public static TagManager load(File directory) throws IOException {		
-		// parse file
-		Map<String, Object> parseMap;
-		Genson genson = new Genson();
-		String fileName = directory + File.separator + SAVE_FILE;
-		try ( FileReader reader = new FileReader(fileName); ) { 
-			parseMap = genson.deserialize(reader, new GenericType<Map<String, Object>>(){});
+	/**
+	 * Start a new journal and write a snapshot of the tags in the background
+	 * @throws IOException
+	 */
+	private void compactJournal() throws IOException {
+		// capture the content now: the snapshot is written by another thread
+		byte[] content = encode();
+		journalFailed = false;
+		journal.compact(() -> store.write(STORE_KEY, content));
+	}
+	
+	
+	/**
+	 * Encode the tags in the selected data format
+	 * @return content written to the data store
+	 */
+	private byte[] encode() {
+		if (dataFormat == DataFormat.BINARY) {
+			return BinaryCodec.encodeTags(tags);
+		}
+		return JsonConverters.TAG_MANAGER.serialize(this).getBytes(StandardCharsets.UTF_8);
+	}
+	
+	
+	/**
+	 * Count a modification of the tags, and append the operation to the journal, if any
+	 * @param operation name of the operation, followed by its arguments
+	 */
+	private void recordOperation(String... operation) {
+		modificationCount++;
+		if (journal == null) {
+			return;
+		}
+		try {
+			journal.append(operation);
 		} catch (IOException e) {
+			// the next save will write a full snapshot
+			LOGGER.warning("Cannot append to the journal: "+e.getMessage());
+			journalFailed = true;
+		}
+	}
+	
+	
+	/**
+	 * Apply an operation read from the journal
+	 * @param entry name of the operation, followed by its arguments
+	 */
+	private void replay(String[] entry) {
+		switch (entry[0]) {
+		case "addTag":
+			addTag(entry[1]);
+			break;
+		case "removeTag":
+			removeTag(entry[1]);
+			break;
+		case "renameTag":
+			renameTag(entry[1], entry[2]);
+			break;
+		case "addToTag":
+			addToTag(entry[1], entry[2]);
+			break;
+		case "removeFromTag":
+			removeFromTag(entry[1], entry[2]);
+			break;
+		case "removeFromAllTags":
+			removeFromAllTags(entry[1]);
+			break;
+		default:
+			LOGGER.warning("Unknown journal operation: "+entry[0]);
+		}
+	}
+	
+	
+	public static TagManager load(File directory) throws IOException {
+		return load(new FileDataStore(directory));
+	}
+	
+	
+	public static TagManager load(DataStore store) throws IOException {		
+		// parse content, in any data format
+		Map<String, List<String>> contentMap;
+		byte[] content = store.read(STORE_KEY);
+		try { 
+			if (BinaryCodec.isBinary(content)) {
+				contentMap = BinaryCodec.decodeTags(content);
+			} else {
+				String jsonString = new String(content, StandardCharsets.UTF_8);
+				Map<String, Object> parseMap = 
+						JsonConverters.DEFAULT.deserialize(jsonString, JsonConverters.MAP_TYPE);
+				contentMap = (Map<String, List<String>>) parseMap.get("tags");
+			}
+		} catch (Exception e) {
 			throw new IOException(e);
 		}
-		Map<String, List<String>> contentMap = (Map<String, List<String>>) parseMap.get("tags");
 		
 		// fill tag manager
-		TagManager tm = new TagManager(directory);
+		TagManager tm = new TagManager(store);
 		for (String tagName : contentMap.keySet()) {
 			// create tag
 			tm.addTag(tagName);
@@ -0,0 +1,385 @@
+package waya.engine;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Select persons with a boolean expression on tags, e.g. "colleagues AND paris AND NOT archived".
+ *
+ * Syntax:
+ * - operators AND, OR, NOT (case insensitive, or &amp;, |, !), by increasing precedence: OR, AND, NOT
+ * - parentheses to group expressions
+ * - a tag name is a sequence of words, e.g. ex work, or any text between double quotes
+ *
+ * Person Ids are mapped to dense integers and each tag is stored as a bitmap, so that an
+ * expression is evaluated with bulk bitmap operations. The bitmaps are computed from the tag
+ * manager when a tag is first used, and recomputed after the tags are modified.
+ * @author bertrand
+ *
+ */
+public class TagQueryEngine {
+	private static final String ERROR_SYNTAX = "Syntax error in tag query: ";
+
+	private TagManager tagManager;
+	private PersonManager personManager;
+	// dense integer for each Id
+	private HashMap<String, Integer> idToIndex;
+	private ArrayList<String> indexToId;
+	// bitmap of each tag, valid for the modification count of the tag manager
+	private HashMap<String, BitSet> tagBitmaps;
+	private long tagBitmapsModificationCount;
+
+	/**
+	 * Constructor
+	 * @param tm tag manager
+	 * @param pm person manager: the persons selected by NOT are taken from it
+	 */
+	public TagQueryEngine(TagManager tm, PersonManager pm) {
+		tagManager = tm;
+		personManager = pm;
+		idToIndex = new HashMap<>();
+		indexToId = new ArrayList<>();
+		tagBitmaps = new HashMap<>();
+		tagBitmapsModificationCount = tm.getModificationCount();
+	}
+
+
+	/**
+	 * Return the Ids of the persons matching an expression
+	 * @param expression tag expression
+	 * @return set of person Ids
+	 * @throws IllegalArgumentException if the expression is invalid or uses an unknown tag
+	 */
+	public Set<String> select(String expression) throws IllegalArgumentException {
+		Node query = new Parser(expression).parse();
+		BitSet result = query.evaluate(this);
+
+		Set<String> personIds = new HashSet<>();
+		for (int index = result.nextSetBit(0); index >= 0; index = result.nextSetBit(index+1)) {
+			personIds.add(indexToId.get(index));
+		}
+		return personIds;
+	}
+
+
+	/**
+	 * Check the syntax of an expression and the existence of its tags
+	 * @param expression tag expression
+	 * @throws IllegalArgumentException if the expression is invalid or uses an unknown tag
+	 */
+	public void check(String expression) throws IllegalArgumentException {
+		new Parser(expression).parse().check(tagManager);
+	}
+
+
+	/**
+	 * Return the bitmap of a tag
+	 */
+	private BitSet getTagBitmap(String tag) {
+		// drop the bitmaps computed before the last modification of the tags
+		if (tagBitmapsModificationCount != tagManager.getModificationCount()) {
+			tagBitmaps.clear();
+			tagBitmapsModificationCount = tagManager.getModificationCount();
+		}
+
+		BitSet bitmap = tagBitmaps.get(tag);
+		if (bitmap == null) {
+			bitmap = new BitSet();
+			for (String personId : tagManager.getContent(tag)) {
+				bitmap.set(getIndex(personId));
+			}
+			tagBitmaps.put(tag, bitmap);
+		}
+		return bitmap;
+	}
+
+
+	/**
+	 * Return the bitmap of all the persons
+	 */
+	private BitSet getAllPersonsBitmap() {
+		BitSet bitmap = new BitSet(indexToId.size());
+		for (String personId : personManager.getPersonIds()) {
+			bitmap.set(getIndex(personId));
+		}
+		return bitmap;
+	}
+
+
+	/**
+	 * Return the integer of an Id, and create it if needed
+	 */
+	private int getIndex(String id) {
+		Integer index = idToIndex.get(id);
+		if (index == null) {
+			index = indexToId.size();
+			idToIndex.put(id, index);
+			indexToId.add(id);
+		}
+		return index;
+	}
+
+
+	/**
+	 * Node of a parsed expression
+	 */
+	private static abstract class Node {
+		/**
+		 * Return a new bitmap of the persons matching the node
+		 */
+		abstract BitSet evaluate(TagQueryEngine engine);
+
+		abstract void check(TagManager tagManager);
+	}
+
+
+	private static class TagNode extends Node {
+		private final String tag;
+
+		TagNode(String tag) {
+			this.tag = tag;
+		}
+
+		@Override
+		BitSet evaluate(TagQueryEngine engine) {
+			return (BitSet) engine.getTagBitmap(tag).clone();
+		}
+
+		@Override
+		void check(TagManager tagManager) {
+			if (!tagManager.hasTag(tag)) {
+				throw new IllegalArgumentException("There is no tag: "+tag);
+			}
+		}
+	}
+
+
+	private static class NotNode extends Node {
+		private final Node operand;
+
+		NotNode(Node operand) {
+			this.operand = operand;
+		}
+
+		@Override
+		BitSet evaluate(TagQueryEngine engine) {
+			BitSet result = engine.getAllPersonsBitmap();
+			result.andNot(operand.evaluate(engine));
+			return result;
+		}
+
+		@Override
+		void check(TagManager tagManager) {
+			operand.check(tagManager);
+		}
+	}
+
+
+	private static class AndNode extends Node {
+		private final List<Node> operands;
+
+		AndNode(List<Node> operands) {
+			this.operands = operands;
+		}
+
+		@Override
+		BitSet evaluate(TagQueryEngine engine) {
+			// start from a positive operand, so that "a AND NOT b" is computed as a - b
+			// without building the bitmap of all the persons
+			BitSet result = null;
+			for (Node operand : operands) {
+				if (!(operand instanceof NotNode)) {
+					if (result == null) {
+						result = operand.evaluate(engine);
+					} else {
+						result.and(operand.evaluate(engine));
+					}
+				}
+			}
+			for (Node operand : operands) {
+				if (operand instanceof NotNode) {
+					if (result == null) {
+						result = operand.evaluate(engine);
+					} else {
+						result.andNot(((NotNode) operand).operand.evaluate(engine));
+					}
+				}
+			}
+			return result;
+		}
+
+		@Override
+		void check(TagManager tagManager) {
+			for (Node operand : operands) {
+				operand.check(tagManager);
+			}
+		}
+	}
+
+
+	private static class OrNode extends Node {
+		private final List<Node> operands;
+
+		OrNode(List<Node> operands) {
+			this.operands = operands;
+		}
+
+		@Override
+		BitSet evaluate(TagQueryEngine engine) {
+			BitSet result = operands.get(0).evaluate(engine);
+			for (int i=1; i<operands.size(); i++) {
+				result.or(operands.get(i).evaluate(engine));
+			}
+			return result;
+		}
+
+		@Override
+		void check(TagManager tagManager) {
+			for (Node operand : operands) {
+				operand.check(tagManager);
+			}
+		}
+	}
+
+
+	/**
+	 * Recursive descent parser:
+	 * expression := and (OR and)*
+	 * and := not (AND not)*
+	 * not := NOT not | '(' expression ')' | tag
+	 */
+	private static class Parser {
+		private final String text;
+		private final List<String> tokens;
+		private final List<Boolean> quoted;
+		private int position;
+
+		Parser(String text) {
+			this.text = text;
+			this.tokens = new ArrayList<>();
+			this.quoted = new ArrayList<>();
+			this.position = 0;
+			tokenize();
+		}
+
+		Node parse() {
+			if (tokens.isEmpty()) {
+				throw new IllegalArgumentException(ERROR_SYNTAX+"empty query");
+			}
+			Node node = parseOr();
+			if (position < tokens.size()) {
+				throw new IllegalArgumentException(ERROR_SYNTAX+"unexpected '"
+						+tokens.get(position)+"' in "+text);
+			}
+			return node;
+		}
+
+		private Node parseOr() {
+			List<Node> operands = new ArrayList<>();
+			operands.add(parseAnd());
+			while (isOperator("OR")) {
+				position++;
+				operands.add(parseAnd());
+			}
+			return (operands.size() == 1) ? operands.get(0) : new OrNode(operands);
+		}
+
+		private Node parseAnd() {
+			List<Node> operands = new ArrayList<>();
+			operands.add(parseNot());
+			while (isOperator("AND")) {
+				position++;
+				operands.add(parseNot());
+			}
+			return (operands.size() == 1) ? operands.get(0) : new AndNode(operands);
+		}
+
+		private Node parseNot() {
+			if (position >= tokens.size()) {
+				throw new IllegalArgumentException(ERROR_SYNTAX+"incomplete query "+text);
+			}
+			if (isOperator("NOT")) {
+				position++;
+				return new NotNode(parseNot());
+			}
+			if (isOperator("(")) {
+				position++;
+				Node node = parseOr();
+				if (!isOperator(")")) {
+					throw new IllegalArgumentException(ERROR_SYNTAX+"missing ')' in "+text);
+				}
+				position++;
+				return node;
+			}
+			if (isOperator("AND") || isOperator("OR") || isOperator(")")) {
+				throw new IllegalArgumentException(ERROR_SYNTAX+"unexpected '"
+						+tokens.get(position)+"' in "+text);
+			}
+
+			// tag name: quoted string, or sequence of words
+			if (quoted.get(position)) {
+				return new TagNode(tokens.get(position++));
+			}
+			StringBuilder tag = new StringBuilder(tokens.get(position++));
+			while (position < tokens.size() && !quoted.get(position) && !isAnyOperator()) {
+				tag.append(' ').append(tokens.get(position++));
+			}
+			return new TagNode(tag.toString());
+		}
+
+		private boolean isAnyOperator() {
+			return isOperator("AND") || isOperator("OR") || isOperator("NOT")
+					|| isOperator("(") || isOperator(")");
+		}
+
+		private boolean isOperator(String operator) {
+			return position < tokens.size() && !quoted.get(position)
+					&& tokens.get(position).equalsIgnoreCase(operator);
+		}
+
+		private void tokenize() {
+			int i = 0;
+			while (i < text.length()) {
+				char c = text.charAt(i);
+				if (Character.isWhitespace(c)) {
+					i++;
+				} else if (c == '(' || c == ')') {
+					addToken(String.valueOf(c), false);
+					i++;
+				} else if (c == '&') {
+					addToken("AND", false);
+					i++;
+				} else if (c == '|') {
+					addToken("OR", false);
+					i++;
+				} else if (c == '!') {
+					addToken("NOT", false);
+					i++;
+				} else if (c == '"') {
+					int end = text.indexOf('"', i+1);
+					if (end < 0) {
+						throw new IllegalArgumentException(ERROR_SYNTAX+"missing '\"' in "+text);
+					}
+					addToken(text.substring(i+1, end), true);
+					i = end + 1;
+				} else {
+					int start = i;
+					while (i < text.length() && !Character.isWhitespace(text.charAt(i))
+							&& "()&|!\"".indexOf(text.charAt(i)) < 0) {
+						i++;
+					}
+					addToken(text.substring(start, i), false);
+				}
+			}
+		}
+
+		private void addToken(String token, boolean isQuoted) {
+			tokens.add(token);
+			quoted.add(isQuoted);
+		}
+	}
+}
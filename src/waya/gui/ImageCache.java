@@ -0,0 +1,242 @@
+package waya.gui;
+
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import javax.imageio.ImageIO;
+import javax.swing.SwingUtilities;
+
+/**
+ * Cache of the images displayed, scaled to their display size.
+ *
+ * Images are decoded and scaled by worker threads, so that the event thread never waits for
+ * a decode: the result is given to a callback run on the event thread.
+ * The scaled images are kept in a LRU cache bounded by their size in memory. An entry is
+ * identified by the file, its modification date and size, and the scale: an image replaced
+ * on disk is decoded again.
+ * @author bertrand
+ *
+ */
+public class ImageCache {
+	private static final Logger LOGGER = Logger.getLogger(ImageCache.class.getPackage().getName());
+	private static final int DECODER_THREADS = 2;
+	// size in memory of a pixel of the scaled images (ARGB)
+	private static final int BYTES_PER_PIXEL = 4;
+
+	private final long maxBytes;
+	private final ExecutorService executor;
+	// scaled images, from the least to the most recently used
+	private final LinkedHashMap<CacheKey, BufferedImage> images;
+	// callbacks waiting for the images being decoded
+	private final HashMap<CacheKey, List<Consumer<BufferedImage>>> pendingCallbacks;
+	private long sizeInBytes;
+
+	/**
+	 * Constructor
+	 * @param maxBytes maximal size in memory of the images kept
+	 */
+	public ImageCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+		this.images = new LinkedHashMap<>(16, 0.75f, true);
+		this.pendingCallbacks = new HashMap<>();
+		this.sizeInBytes = 0;
+		this.executor = Executors.newFixedThreadPool(DECODER_THREADS, runnable -> {
+			Thread thread = new Thread(runnable, "image-decoder");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+
+	/**
+	 * Return the scaled image of a file if it is in the cache
+	 * @param file image file
+	 * @param scale scale ratio applied to the image
+	 * @return scaled image, or null if not in the cache
+	 */
+	public synchronized BufferedImage getIfPresent(File file, double scale) {
+		return images.get(new CacheKey(file, scale));
+	}
+
+
+	/**
+	 * Give the scaled image of a file to a callback, run on the event thread.
+	 * The image is taken from the cache, or decoded by a worker thread.
+	 * @param file image file
+	 * @param scale scale ratio applied to the image
+	 * @param callback called with the scaled image, or null if the file cannot be read
+	 */
+	public void load(File file, double scale, Consumer<BufferedImage> callback) {
+		CacheKey key = new CacheKey(file, scale);
+		synchronized (this) {
+			BufferedImage image = images.get(key);
+			if (image != null) {
+				SwingUtilities.invokeLater(() -> callback.accept(image));
+				return;
+			}
+			List<Consumer<BufferedImage>> callbacks = pendingCallbacks.get(key);
+			if (callbacks != null) {
+				// already being decoded
+				callbacks.add(callback);
+				return;
+			}
+			callbacks = new ArrayList<>();
+			callbacks.add(callback);
+			pendingCallbacks.put(key, callbacks);
+		}
+		executor.execute(() -> decode(key));
+	}
+
+
+	/**
+	 * Remove the images of a file from the cache, e.g. when it was replaced
+	 * @param file image file
+	 */
+	public synchronized void invalidate(File file) {
+		String path = file.getAbsolutePath();
+		Iterator<Map.Entry<CacheKey, BufferedImage>> iterator = images.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<CacheKey, BufferedImage> entry = iterator.next();
+			if (entry.getKey().path.equals(path)) {
+				sizeInBytes -= getSizeInBytes(entry.getValue());
+				iterator.remove();
+			}
+		}
+	}
+
+
+	/**
+	 * Return the size in memory of the images kept
+	 * @return size in bytes
+	 */
+	public synchronized long getSizeInBytes() {
+		return sizeInBytes;
+	}
+
+
+	/**
+	 * Decode and scale an image, on a worker thread, then run the callbacks waiting for it
+	 */
+	private void decode(CacheKey key) {
+		BufferedImage image = null;
+		try {
+			BufferedImage source = ImageIO.read(new File(key.path));
+			if (source != null) {
+				image = scale(source, key.scale);
+			}
+		} catch (Exception e) {
+			LOGGER.finest("Cannot read image "+key.path+": "+e.getMessage());
+		}
+
+		List<Consumer<BufferedImage>> callbacks;
+		synchronized (this) {
+			callbacks = pendingCallbacks.remove(key);
+			if (image != null) {
+				put(key, image);
+			}
+		}
+		final BufferedImage result = image;
+		SwingUtilities.invokeLater(() -> {
+			for (Consumer<BufferedImage> callback : callbacks) {
+				callback.accept(result);
+			}
+		});
+	}
+
+
+	/**
+	 * Add an image to the cache, removing the least recently used images if needed
+	 */
+	private void put(CacheKey key, BufferedImage image) {
+		BufferedImage previous = images.put(key, image);
+		if (previous != null) {
+			sizeInBytes -= getSizeInBytes(previous);
+		}
+		sizeInBytes += getSizeInBytes(image);
+		Iterator<Map.Entry<CacheKey, BufferedImage>> iterator = images.entrySet().iterator();
+		while (sizeInBytes > maxBytes && iterator.hasNext()) {
+			Map.Entry<CacheKey, BufferedImage> eldest = iterator.next();
+			if (eldest.getKey().equals(key)) {
+				// keep the image just added, even if larger than the cache
+				continue;
+			}
+			sizeInBytes -= getSizeInBytes(eldest.getValue());
+			iterator.remove();
+		}
+	}
+
+
+	private static long getSizeInBytes(BufferedImage image) {
+		return (long) image.getWidth()*image.getHeight()*BYTES_PER_PIXEL;
+	}
+
+
+	/**
+	 * Scale an image, with a smooth filter as the image is scaled once
+	 * @param source image decoded
+	 * @param scale scale ratio
+	 * @return scaled image
+	 */
+	private static BufferedImage scale(BufferedImage source, double scale) {
+		int width = Math.max(1, (int) Math.round(source.getWidth()*scale));
+		int height = Math.max(1, (int) Math.round(source.getHeight()*scale));
+		BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g2d = scaled.createGraphics();
+		if (width == source.getWidth() && height == source.getHeight()) {
+			g2d.drawImage(source, 0, 0, null);
+		} else {
+			g2d.drawImage(source.getScaledInstance(width, height, Image.SCALE_AREA_AVERAGING), 0, 0, null);
+		}
+		g2d.dispose();
+		return scaled;
+	}
+
+
+	/**
+	 * Key of an image: file, version of the file and scale
+	 */
+	private static final class CacheKey {
+		private final String path;
+		private final long lastModified;
+		private final long length;
+		private final double scale;
+
+		CacheKey(File file, double scale) {
+			this.path = file.getAbsolutePath();
+			this.lastModified = file.lastModified();
+			this.length = file.length();
+			this.scale = scale;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof CacheKey)) {
+				return false;
+			}
+			CacheKey other = (CacheKey) obj;
+			return path.equals(other.path) && lastModified == other.lastModified
+					&& length == other.length && scale == other.scale;
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = path.hashCode();
+			hash = 31*hash + Long.hashCode(lastModified);
+			hash = 31*hash + Long.hashCode(length);
+			hash = 31*hash + Double.hashCode(scale);
+			return hash;
+		}
+	}
+}
@@ -2,40 +2,61 @@ package waya.gui;
 
 import java.awt.BorderLayout;
 import java.awt.Dimension;
-import java.awt.geom.AffineTransform;
 import java.awt.Graphics;
-import java.awt.Graphics2D;
-import java.awt.Image;
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.util.ResourceBundle;
 import java.util.logging.Logger;
 
-import javax.imageio.ImageIO;
 import javax.swing.JButton;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.SwingConstants;
 
 
 public class ImageViewer extends JPanel {
 	private static final long serialVersionUID = 1L;
 	private static final Logger LOGGER = Logger.getLogger(ImageViewer.class.getPackage().getName());
-	private Image image;
+	// maximal size in memory of the scaled images kept by the cache
+	private static final long IMAGE_CACHE_BYTES = 32L*1024*1024;
+	private static final ImageCache IMAGE_CACHE = new ImageCache(IMAGE_CACHE_BYTES);
+	private BufferedImage image;
+	// number of the last image requested: older requests are ignored
+	private int requestNumber;
 	private int width;
 	private int height;
 	private double scaleRatio;
 	private File imageFile;
+	private File thumbnailFile;
+	private JProgressBar progressBar;
 	private static final ResourceBundle MESSAGES = ResourceBundle.getBundle("waya.gui.resources.messages");
 	private static final String NO_PHOTO_STRING = MESSAGES.getString("label_no_photo");
+	private static final String LOADING_PHOTO_STRING = MESSAGES.getString("label_loading_photo");
 	private static JLabel noPhotoLabel;
+	private static JLabel loadingPhotoLabel;
 	
 	static {
 		noPhotoLabel = new JLabel(NO_PHOTO_STRING, SwingConstants.CENTER);
+		loadingPhotoLabel = new JLabel(LOADING_PHOTO_STRING, SwingConstants.CENTER);
 	}
 	
-	public ImageViewer(File inputImageFile, int inputWidth, int inputHeight, double inputScale) {
+	/**
+	 * Constructor
+	 * @param inputImageFile image displayed, scaled
+	 * @param inputThumbnailFile image at display size, displayed instead of the image when it
+	 * exists, or null
+	 * @param inputWidth width of the viewer
+	 * @param inputHeight height of the viewer
+	 * @param inputScale scale ratio applied to the image
+	 */
+	public ImageViewer(File inputImageFile, File inputThumbnailFile, int inputWidth, int inputHeight, 
+			double inputScale) {
 		super();
 		imageFile = inputImageFile;
+		thumbnailFile = inputThumbnailFile;
+		progressBar = new JProgressBar(0, 100);
+		progressBar.setStringPainted(true);
 		width = inputWidth;
 		height = inputHeight;
 		scaleRatio = inputScale;
@@ -56,20 +77,99 @@ public class ImageViewer extends JPanel {
 	}
 	
 	
+	/**
+	 * Display the image of the file, scaled. The image is decoded in the background if it 
+	 * is not in the cache: a placeholder is displayed meanwhile. Without image file, the
+	 * "no photo" label is displayed at once.
+	 */
 	public void updateImage() {
 		LOGGER.finest("Draw "+imageFile);
-		try {
-			image = ImageIO.read(imageFile);
-		} catch (Exception e) {
-			image = null;
+		final int request = ++requestNumber;
+		// the thumbnail is already at display size
+		final File file;
+		final double scale;
+		if (thumbnailFile != null && thumbnailFile.isFile()) {
+			file = thumbnailFile;
+			scale = 1;
+		} else if (imageFile != null && imageFile.isFile()) {
+			file = imageFile;
+			scale = scaleRatio;
+		} else {
+			// no image to decode
+			showImage(null);
+			return;
+		}
+		BufferedImage cachedImage = IMAGE_CACHE.getIfPresent(file, scale);
+		if (cachedImage != null) {
+			showImage(cachedImage);
+			return;
 		}
 		
+		image = null;
+		removeAll();
+		add(loadingPhotoLabel, BorderLayout.CENTER);
+		revalidate();
+		repaint();
+		IMAGE_CACHE.load(file, scale, loadedImage -> {
+			if (request == requestNumber) {
+				showImage(loadedImage);
+			}
+		});
+	}
+	
+	
+	/**
+	 * Display the image of the file after it was replaced
+	 */
+	public void imageChanged() {
+		IMAGE_CACHE.invalidate(imageFile);
+		if (thumbnailFile != null) {
+			IMAGE_CACHE.invalidate(thumbnailFile);
+		}
+		updateImage();
+	}
+	
+	
+	/**
+	 * Display other image files, e.g. after a new image was imported
+	 * @param inputImageFile image displayed, scaled
+	 * @param inputThumbnailFile image at display size, displayed instead of the image when it
+	 * exists, or null
+	 */
+	public void setImageFiles(File inputImageFile, File inputThumbnailFile) {
+		imageFile = inputImageFile;
+		thumbnailFile = inputThumbnailFile;
+		updateImage();
+	}
+	
+	
+	/**
+	 * Display the progress of an import, until the next image is displayed
+	 * @param percent progress in percent
+	 */
+	public void showProgress(int percent) {
+		// requests made before the import are obsolete
+		requestNumber++;
+		image = null;
+		progressBar.setValue(percent);
+		if (progressBar.getParent() != this) {
+			removeAll();
+			add(progressBar, BorderLayout.PAGE_END);
+			revalidate();
+		}
+		repaint();
+	}
+	
+	
+	private void showImage(BufferedImage scaledImage) {
+		image = scaledImage;
 		removeAll();
 		if (image == null) {
 			LOGGER.finest(" -> image = null");
 			add(noPhotoLabel, BorderLayout.CENTER);
 		} else
 			LOGGER.finest(" -> image OK");	
+		revalidate();
 		repaint();
 	}
 	
@@ -78,8 +178,8 @@ public class ImageViewer extends JPanel {
 	public void paint(Graphics g) {
 		super.paint(g);
 		if (image != null) {
-			Graphics2D g2d = (Graphics2D) g;
-			g2d.drawImage(image, AffineTransform.getScaleInstance(scaleRatio, scaleRatio), this);
+			// the image is scaled when decoded
+			g.drawImage(image, 0, 0, this);
 		}
 	}
 }
@@ -11,8 +11,7 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.HashSet;
 import java.util.Locale;
 import java.util.Properties;
 import java.util.ResourceBundle;
@@ -31,11 +30,21 @@ import javax.swing.JFrame;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JSplitPane;
+import javax.swing.JTextField;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 
 import com.formdev.flatlaf.FlatIntelliJLaf;
 
+import waya.engine.DataFormat;
+import waya.engine.DataStore;
+import waya.engine.FileDataStore;
+import waya.engine.ImageStore;
+import waya.engine.PackedDataStore;
+import waya.engine.PersistenceService;
 import waya.engine.Person;
 import waya.engine.PersonManager;
+import waya.engine.StoreMigration;
 import waya.engine.TagManager;
 
 public class MainFrame extends JFrame {
@@ -45,6 +54,9 @@ public class MainFrame extends JFrame {
 	private ResourceBundle messages = ResourceBundle.getBundle("waya.gui.resources.messages");
 	private static final File USER_CONFIG_FILE = new File("./config.properties");
 	private static final File DATA_DIR = new File("data");
+	private static final String PERSONS_JOURNAL_FILE = "persons.journal";
+	private static final String TAGS_JOURNAL_FILE = "tags.journal";
+	private static final String SEARCH_INDEX_DIR = "search";
 	private static final int ID_LENGTH = 6;
 	private static final int WINDOW_WIDTH = 800;
 	private static final int WINDOW_HEIGHT = 600;
@@ -54,20 +66,25 @@ public class MainFrame extends JFrame {
 	private static final int NUMBER_SERVICES = 2;
 	private static PersonManager personManager;
 	private static TagManager tagManager;
+	private static DataStore dataStore;
+	private static PersistenceService persistenceService;
+	private static ImageStore imageStore;
 	
 	private JPanel sidePanel;
 	private JPanel centerPanel;
 	private TagManager tm;
 	private PersonManager pm;
+	private ImageStore images;
 	private PersonPanel currentPersonPanel;
 	private PersonListPanel personListPanel;
 	private TagsFilterPanel tagsFilterPanel;
 	private File dataDirectory;
 	
-	public MainFrame(TagManager i_tm, PersonManager i_pm, File directory) {
+	public MainFrame(TagManager i_tm, PersonManager i_pm, ImageStore i_images, File directory) {
 		LOGGER.finest("MainFrame - constructor");
 		tm = i_tm;
 		pm = i_pm;
+		images = i_images;
 		dataDirectory = directory;
 
 		LOGGER.finest("MainFrame: personListPanel");
@@ -78,6 +95,7 @@ public class MainFrame extends JFrame {
 		LOGGER.finest("MainFrame: sidePanel");
 		sidePanel = new JPanel(new BorderLayout());
 		sidePanel.add(tagsFilterPanel, BorderLayout.PAGE_END);
+		sidePanel.add(createSearchField(), BorderLayout.PAGE_START);
 		JScrollPane personScrollPane = new JScrollPane(personListPanel, 
 				JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED, 
 				JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
@@ -113,6 +131,43 @@ public class MainFrame extends JFrame {
 		closePersonPanel(false);
 		// close handlers
 		LOGGER.finest("Exit main frame");
+		// the journals are closed first: their operations are written by the service
+		try {
+			pm.closeJournal();
+		} catch (IOException e) {
+			LOGGER.severe("Cannot close the journal of the persons");
+			e.printStackTrace();
+		} finally {
+			// closed even if the journal of the persons failed
+			try {
+				tm.closeJournal();
+			} catch (IOException e) {
+				LOGGER.severe("Cannot close the journal of the tags");
+				e.printStackTrace();
+			}
+		}
+		if (persistenceService != null) {
+			try {
+				persistenceService.close();
+			} catch (IOException e) {
+				LOGGER.severe("Cannot write the pending saves");
+				e.printStackTrace();
+			}
+		}
+		try {
+			pm.closeSearchIndex();
+		} catch (IOException e) {
+			LOGGER.warning("Cannot save the search index");
+			e.printStackTrace();
+		}
+		if (dataStore != null) {
+			try {
+				dataStore.close();
+			} catch (IOException e) {
+				LOGGER.severe("Cannot close the data store");
+				e.printStackTrace();
+			}
+		}
 		for (Handler handler : LOGGER.getHandlers()) {
 			handler.close();
 		}
@@ -124,7 +179,7 @@ public class MainFrame extends JFrame {
 		if (pm.containsPersonId(personId)) {
 			closePersonPanel(false);
 			Person person = pm.getPerson(personId);
-			currentPersonPanel = new PersonPanel(this, person, pm, tm, dataDirectory);
+			currentPersonPanel = new PersonPanel(this, person, pm, tm, images, dataDirectory);
 			centerPanel.removeAll();
 			centerPanel.add(currentPersonPanel, BorderLayout.CENTER);
 			centerPanel.revalidate();
@@ -140,9 +195,11 @@ public class MainFrame extends JFrame {
 				currentPersonPanel.save();
 			}
 			
-			// update the person list panel if the name has changed
-			if (currentPersonPanel.nameHasChanged() || personIsDeleted) {
-				refreshPersonList();
+			// update the row of the person in the list panel
+			if (personIsDeleted) {
+				personListPanel.personRemoved(currentPersonPanel.getPersonId());
+			} else if (currentPersonPanel.nameHasChanged()) {
+				personListPanel.personChanged(currentPersonPanel.getPersonId());
 			}
 			
 			// unselect the person in the list panel
@@ -159,6 +216,33 @@ public class MainFrame extends JFrame {
 	}
 	
 	
+	/**
+	 * Create the search field: the person list is updated as the user types
+	 * @return search field
+	 */
+	private JTextField createSearchField() {
+		JTextField searchField = new JTextField();
+		searchField.setToolTipText(messages.getString("tooltip_search"));
+		searchField.getDocument().addDocumentListener(new DocumentListener() {
+			@Override
+			public void insertUpdate(DocumentEvent e) {
+				personListPanel.search(searchField.getText());
+			}
+			
+			@Override
+			public void removeUpdate(DocumentEvent e) {
+				personListPanel.search(searchField.getText());
+			}
+			
+			@Override
+			public void changedUpdate(DocumentEvent e) {
+				personListPanel.search(searchField.getText());
+			}
+		});
+		return searchField;
+	}
+	
+	
 	public void refreshPersonList() {
 		personListPanel.updateListContent();
 	}
@@ -174,6 +258,11 @@ public class MainFrame extends JFrame {
 	}
 	
 	
+	public void setPersonFilterQuery(String query) throws IllegalArgumentException {
+		personListPanel.filterByQuery(query);
+	}
+	
+	
 	public void createPerson() {
 		// create person
 		String personId = pm.createPersonId();
@@ -182,7 +271,7 @@ public class MainFrame extends JFrame {
 		
 		// close the panel of the current person, if any, and open the panel of the new person
 		closePersonPanel(false);
-		refreshPersonList();
+		personListPanel.personAdded(personId);
 		openPersonPanel(personId);
 	}
 	
@@ -349,6 +438,8 @@ public class MainFrame extends JFrame {
 		Properties config = loadConfig();
 		Boolean openFullscreen = Boolean.parseBoolean(config.getProperty("fullscreen"));
 		String language = config.getProperty("language", "english").toLowerCase();
+		String storage = config.getProperty("storage", "files").toLowerCase();
+		String format = config.getProperty("format", "json");
 		
 		// set locale from the language set in config file
 		LOGGER.finest("language = "+language+" in config.properties");
@@ -379,6 +470,21 @@ public class MainFrame extends JFrame {
 		}
 		
 		
+		// open the data store: one file per entry (default) or a single packed file
+		LOGGER.finest("storage = "+storage+" in config.properties");
+		try {
+			if (storage.equals("packed")) {
+				dataStore = new PackedDataStore(new File(DATA_DIR, StoreMigration.PACKED_STORE_FILE));
+			} else {
+				dataStore = new FileDataStore(DATA_DIR);
+			}
+		} catch (IOException e) {
+			LOGGER.severe("Error: cannot open the data store in "+DATA_DIR.getAbsolutePath());
+			e.printStackTrace();
+			return;
+		}
+		
+		
 		// set UI from flatlaf in a dedicated thread
 		ExecutorService flatlafExecutor = Executors.newSingleThreadExecutor();
 		Future<?> flatlafFuture = flatlafExecutor.submit(new Runnable() {
@@ -399,16 +505,15 @@ public class MainFrame extends JFrame {
 			public void run() {
 				LOGGER.finest("Load the person manager");
 				try {
-					personManager = PersonManager.load(DATA_DIR, ID_LENGTH);
+					int numberOfThreads = Runtime.getRuntime().availableProcessors();
+					personManager = PersonManager.load(dataStore, ID_LENGTH, numberOfThreads);
+					for (String key : personManager.getLoadErrors().keySet()) {
+						LOGGER.warning("Cannot load person "+key+": "
+								+personManager.getLoadErrors().get(key));
+					}
 				} catch (Exception e) {
 					LOGGER.info("Cannot load person files");
-					try {
-						personManager = new PersonManager(ID_LENGTH, DATA_DIR);
-					} catch (IOException e2) {
-						LOGGER.severe("Cannot create a data dir at "+DATA_DIR.getPath());
-						LOGGER.severe("Exiting");
-						return;
-					}
+					personManager = new PersonManager(ID_LENGTH, dataStore);
 				}
 			}
 		});
@@ -419,17 +524,10 @@ public class MainFrame extends JFrame {
 			public void run() {
 				LOGGER.finest("Load the tag manager");
 				try {
-					tagManager = TagManager.load(DATA_DIR);
+					tagManager = TagManager.load(dataStore);
 				} catch (Exception e) {
 					LOGGER.info("Cannot load tags file");
-					try {
-						tagManager = new TagManager(DATA_DIR);
-					} catch (IOException e2) {
-						// Error: we cannot access the data directory -> exit
-						LOGGER.severe("Cannot create a data dir at "+DATA_DIR.getPath());
-						LOGGER.severe("Exiting");
-						return;
-					}
+					tagManager = new TagManager(dataStore);
 				}
 			}
 		});
@@ -469,16 +567,50 @@ public class MainFrame extends JFrame {
 //		}
 		
 		
+		// format of the data written: data is read in any format
+		LOGGER.finest("format = "+format+" in config.properties");
+		try {
+			personManager.setDataFormat(DataFormat.fromName(format));
+			tagManager.setDataFormat(DataFormat.fromName(format));
+		} catch (IllegalArgumentException e) {
+			LOGGER.warning("Unknown data format '"+format+"': use json");
+		}
+		
+		// saves requested by the GUI are written in the background
+		persistenceService = new PersistenceService(dataStore);
+		personManager.setPersistenceService(persistenceService);
+		tagManager.setPersistenceService(persistenceService);
+		
+		// index the persons: only the persons changed since the last run are re-indexed
+		LOGGER.finest("Open the search index");
+		try {
+			personManager.openSearchIndex(new File(DATA_DIR, SEARCH_INDEX_DIR));
+		} catch (IOException e) {
+			LOGGER.warning("Cannot open the saved search index: persons are indexed on the first search");
+			e.printStackTrace();
+		}
+		
+		// replay the operations done since the last snapshot, and journal the next ones
+		LOGGER.finest("Open the journals");
+		try {
+			personManager.openJournal(new File(DATA_DIR, PERSONS_JOURNAL_FILE));
+			tagManager.openJournal(new File(DATA_DIR, TAGS_JOURNAL_FILE));
+		} catch (IOException e) {
+			LOGGER.warning("Cannot open the journals: changes are saved without journal");
+			e.printStackTrace();
+		}
+		
+		// count the references to the images from the persons, once the journal is replayed
+		imageStore = ImageStore.load(DATA_DIR, personManager);
+		
 		LOGGER.finest("Check the tags");
 		Set<String> personIds = personManager.getPersonIds();
-		List<String> personIdToRemove = new LinkedList<String>();
+		Set<String> personIdToRemove = new HashSet<String>();
 		for (String tag : tagManager.getTags()) {
-			List<String> personIdsInTag = tagManager.getContent(tag);
+			Set<String> personIdsInTag = tagManager.getContent(tag);
 			for (String idInTag : personIdsInTag) {
 				if (!personIds.contains(idInTag)) {
-					if (!personIdToRemove.contains(idInTag)) {
-						personIdToRemove.add(idInTag);
-					}
+					personIdToRemove.add(idInTag);
 				}
 			}
 		}
@@ -518,7 +650,7 @@ public class MainFrame extends JFrame {
 		//   MainFrame frame = new MainFrame(tm, pm, DATA_DIR, config);
 		if (statusOk) {
 			LOGGER.finest("Open the frame");
-			MainFrame frame = new MainFrame(tagManager, personManager, DATA_DIR);
+			MainFrame frame = new MainFrame(tagManager, personManager, imageStore, DATA_DIR);
 			frame.setVisible(true);
 			// set preferred size
 			frame.setSize(new Dimension(WINDOW_WIDTH, WINDOW_HEIGHT));
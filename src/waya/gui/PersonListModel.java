@@ -0,0 +1,424 @@
+package waya.gui;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import javax.swing.AbstractListModel;
+
+import waya.engine.PersonManager;
+import waya.engine.PersonManager.NameKey;
+
+/**
+ * Model of the person list, displaying the names of the persons.
+ *
+ * In sorted mode, the model holds the name keys of the persons displayed, sorted as the
+ * name index of the person manager, in a tree counting the keys of each subtree: a person
+ * added, renamed or removed is located and moved in O(log n), and only its row is updated,
+ * with an interval event. The row of an index is also found in O(log n).
+ * In ranked mode (search results), the model holds the Ids in the order given.
+ * The names are read from the person manager when a row is displayed.
+ * @author bertrand
+ *
+ */
+public class PersonListModel extends AbstractListModel<String> {
+
+	private static final long serialVersionUID = 1L;
+	private PersonManager personManager;
+	// sorted mode: keys of the persons displayed, in the order of the name index
+	private KeyTree keys;
+	private HashMap<String, NameKey> displayedKeys;
+	// persons that can be displayed in sorted mode (null: all the persons)
+	private Set<String> filter;
+	// ranked mode: Ids of the persons displayed, or null in sorted mode
+	private List<String> rankedIds;
+
+	public PersonListModel(PersonManager pm) {
+		personManager = pm;
+		keys = new KeyTree();
+		displayedKeys = new HashMap<>();
+		filter = null;
+		rankedIds = null;
+	}
+
+
+	/**
+	 * Display persons sorted by name
+	 * @param personIds Ids of the persons displayed, or null for all the persons. The set is
+	 * read again by personAdded(), so it can be a view updated by its owner.
+	 */
+	public void setSortedContent(Set<String> personIds) {
+		List<String> sortedIds = (personIds == null) ? personManager.getPersonIdsByName()
+				: personManager.sortByName(personIds);
+		ArrayList<NameKey> newKeys = new ArrayList<>(sortedIds.size());
+		HashMap<String, NameKey> newDisplayedKeys = new HashMap<>();
+		for (String personId : sortedIds) {
+			NameKey key = personManager.getNameKey(personId);
+			newKeys.add(key);
+			newDisplayedKeys.put(personId, key);
+		}
+		replaceContent(KeyTree.of(newKeys), newDisplayedKeys, personIds, null);
+	}
+
+
+	/**
+	 * Display persons in a given order, e.g. the ranking of a search
+	 * @param personIds Ids of the persons displayed
+	 */
+	public void setRankedContent(List<String> personIds) {
+		replaceContent(new KeyTree(), new HashMap<>(), null, new ArrayList<>(personIds));
+	}
+
+
+	/**
+	 * Tells if the persons are sorted by name: else they are in the order of a search
+	 * @return true in sorted mode
+	 */
+	public boolean isSorted() {
+		return rankedIds == null;
+	}
+
+
+	@Override
+	public int getSize() {
+		return (rankedIds != null) ? rankedIds.size() : keys.size();
+	}
+
+
+	/**
+	 * Return the name displayed at given row.
+	 * A space is added after the name so that the row is correctly rendered even if the
+	 * name is empty (by default empty name = empty/flat element)
+	 */
+	@Override
+	public String getElementAt(int index) {
+		return personManager.getPersonName(getPersonId(index))+" ";
+	}
+
+
+	/**
+	 * Return the Id of the person displayed at given row
+	 * @param index row
+	 * @return Id of the person
+	 */
+	public String getPersonId(int index) {
+		return (rankedIds != null) ? rankedIds.get(index) : keys.get(index).getPersonId();
+	}
+
+
+	/**
+	 * Return the row of a person
+	 * @param personId Id of the person
+	 * @return row, or -1 if the person is not displayed
+	 */
+	public int indexOf(String personId) {
+		if (rankedIds != null) {
+			return rankedIds.indexOf(personId);
+		}
+		NameKey key = displayedKeys.get(personId);
+		return (key == null) ? -1 : keys.indexOf(key);
+	}
+
+
+	/**
+	 * Insert the row of a person just added to the person manager, if it passes the filter
+	 * @param personId Id of the person
+	 */
+	public void personAdded(String personId) {
+		if (rankedIds != null || displayedKeys.containsKey(personId)
+				|| (filter != null && !filter.contains(personId))) {
+			return;
+		}
+		insertRow(personManager.getNameKey(personId));
+	}
+
+
+	/**
+	 * Update the row of a person modified in the person manager: the row is moved if the
+	 * name has changed
+	 * @param personId Id of the person
+	 */
+	public void personChanged(String personId) {
+		if (rankedIds != null) {
+			int index = rankedIds.indexOf(personId);
+			if (index >= 0) {
+				fireContentsChanged(this, index, index);
+			}
+			return;
+		}
+		NameKey previousKey = displayedKeys.get(personId);
+		if (previousKey == null) {
+			return;
+		}
+		NameKey key = personManager.getNameKey(personId);
+		if (key.compareTo(previousKey) == 0) {
+			// same name
+			int index = keys.indexOf(previousKey);
+			fireContentsChanged(this, index, index);
+			return;
+		}
+		int index = keys.remove(previousKey);
+		int newIndex = keys.add(key);
+		displayedKeys.put(personId, key);
+		if (newIndex == index) {
+			// same row
+			fireContentsChanged(this, index, index);
+		} else {
+			fireIntervalRemoved(this, index, index);
+			fireIntervalAdded(this, newIndex, newIndex);
+		}
+	}
+
+
+	/**
+	 * Remove the row of a person removed from the person manager
+	 * @param personId Id of the person
+	 */
+	public void personRemoved(String personId) {
+		int index;
+		if (rankedIds != null) {
+			index = rankedIds.indexOf(personId);
+			if (index >= 0) {
+				rankedIds.remove(index);
+			}
+		} else {
+			NameKey key = displayedKeys.remove(personId);
+			index = (key == null) ? -1 : keys.remove(key);
+		}
+		if (index >= 0) {
+			fireIntervalRemoved(this, index, index);
+		}
+	}
+
+
+	/**
+	 * Insert a row at the position of its key
+	 */
+	private void insertRow(NameKey key) {
+		int index = keys.add(key);
+		displayedKeys.put(key.getPersonId(), key);
+		fireIntervalAdded(this, index, index);
+	}
+
+
+	/**
+	 * Replace the whole content, with a single event for the rows removed and a single
+	 * event for the rows added
+	 */
+	private void replaceContent(KeyTree newKeys, HashMap<String, NameKey> newDisplayedKeys,
+			Set<String> newFilter, List<String> newRankedIds) {
+		int previousSize = getSize();
+		keys = newKeys;
+		displayedKeys = newDisplayedKeys;
+		filter = newFilter;
+		rankedIds = newRankedIds;
+		if (previousSize > 0) {
+			fireIntervalRemoved(this, 0, previousSize-1);
+		}
+		if (getSize() > 0) {
+			fireIntervalAdded(this, 0, getSize()-1);
+		}
+	}
+
+
+	/**
+	 * Sorted keys in a treap (binary search tree balanced by random priorities) whose nodes
+	 * count the keys of their subtree, so that a key is inserted, removed or ranked, and the
+	 * key at an index is found, in O(log n) expected
+	 */
+	private static final class KeyTree {
+		private static final Random RANDOM = new Random();
+		private Node root;
+
+		private static final class Node {
+			private final NameKey key;
+			private final int priority;
+			private Node left;
+			private Node right;
+			private int size;
+
+			Node(NameKey key) {
+				this.key = key;
+				this.priority = RANDOM.nextInt();
+				this.size = 1;
+			}
+		}
+
+
+		/**
+		 * Build a tree from sorted keys, in O(n): the nodes are linked as a cartesian tree
+		 * of their priorities
+		 * @param sortedKeys keys, sorted
+		 * @return tree
+		 */
+		static KeyTree of(List<NameKey> sortedKeys) {
+			// right branch of the tree built so far, from the bottom
+			ArrayDeque<Node> rightBranch = new ArrayDeque<>();
+			for (NameKey key : sortedKeys) {
+				Node node = new Node(key);
+				Node child = null;
+				while (!rightBranch.isEmpty() && rightBranch.peek().priority < node.priority) {
+					child = rightBranch.pop();
+				}
+				node.left = child;
+				if (!rightBranch.isEmpty()) {
+					rightBranch.peek().right = node;
+				}
+				rightBranch.push(node);
+			}
+			KeyTree tree = new KeyTree();
+			tree.root = rightBranch.peekLast();
+			updateSizes(tree.root);
+			return tree;
+		}
+
+
+		int size() {
+			return size(root);
+		}
+
+
+		/**
+		 * Return the key at an index
+		 * @throws IndexOutOfBoundsException
+		 */
+		NameKey get(int index) {
+			if (index < 0 || index >= size()) {
+				throw new IndexOutOfBoundsException("Index: "+index+", size: "+size());
+			}
+			Node node = root;
+			while (true) {
+				int leftSize = size(node.left);
+				if (index < leftSize) {
+					node = node.left;
+				} else if (index == leftSize) {
+					return node.key;
+				} else {
+					index -= leftSize+1;
+					node = node.right;
+				}
+			}
+		}
+
+
+		/**
+		 * Return the index of a key, or -1 if it is not in the tree
+		 */
+		int indexOf(NameKey key) {
+			int index = 0;
+			Node node = root;
+			while (node != null) {
+				int comparison = key.compareTo(node.key);
+				if (comparison < 0) {
+					node = node.left;
+				} else if (comparison == 0) {
+					return index+size(node.left);
+				} else {
+					index += size(node.left)+1;
+					node = node.right;
+				}
+			}
+			return -1;
+		}
+
+
+		/**
+		 * Insert a key that is not in the tree
+		 * @return index of the key
+		 */
+		int add(NameKey key) {
+			Node[] parts = split(root, key);
+			int index = size(parts[0]);
+			root = merge(merge(parts[0], new Node(key)), parts[1]);
+			return index;
+		}
+
+
+		/**
+		 * Remove a key
+		 * @return index of the key removed, or -1 if it was not in the tree
+		 */
+		int remove(NameKey key) {
+			int index = indexOf(key);
+			if (index >= 0) {
+				root = remove(root, key);
+			}
+			return index;
+		}
+
+
+		private static Node remove(Node node, NameKey key) {
+			int comparison = key.compareTo(node.key);
+			if (comparison == 0) {
+				return merge(node.left, node.right);
+			}
+			if (comparison < 0) {
+				node.left = remove(node.left, key);
+			} else {
+				node.right = remove(node.right, key);
+			}
+			node.size--;
+			return node;
+		}
+
+
+		/**
+		 * Split a subtree into the keys lower than a key and the others
+		 */
+		private static Node[] split(Node node, NameKey key) {
+			if (node == null) {
+				return new Node[] {null, null};
+			}
+			Node[] parts;
+			if (node.key.compareTo(key) < 0) {
+				parts = split(node.right, key);
+				node.right = parts[0];
+				parts[0] = node;
+			} else {
+				parts = split(node.left, key);
+				node.left = parts[1];
+				parts[1] = node;
+			}
+			node.size = size(node.left)+size(node.right)+1;
+			return parts;
+		}
+
+
+		/**
+		 * Merge two subtrees, the keys of the first being lower than the keys of the second
+		 */
+		private static Node merge(Node lower, Node upper) {
+			if (lower == null) {
+				return upper;
+			}
+			if (upper == null) {
+				return lower;
+			}
+			if (lower.priority > upper.priority) {
+				lower.right = merge(lower.right, upper);
+				lower.size = size(lower.left)+size(lower.right)+1;
+				return lower;
+			}
+			upper.left = merge(lower, upper.left);
+			upper.size = size(upper.left)+size(upper.right)+1;
+			return upper;
+		}
+
+
+		private static int updateSizes(Node node) {
+			if (node == null) {
+				return 0;
+			}
+			node.size = updateSizes(node.left)+updateSizes(node.right)+1;
+			return node.size;
+		}
+
+
+		private static int size(Node node) {
+			return (node == null) ? 0 : node.size;
+		}
+	}
+}
@@ -2,14 +2,11 @@ package waya.gui;
 
 import java.awt.BorderLayout;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.ResourceBundle;
+import java.util.Set;
 import java.util.logging.Logger;
 
-import javax.swing.DefaultListModel;
 import javax.swing.JList;
 import javax.swing.JPanel;
 import javax.swing.ListSelectionModel;
@@ -18,6 +15,7 @@ import javax.swing.event.ListSelectionListener;
 
 import waya.engine.PersonManager;
 import waya.engine.TagManager;
+import waya.engine.TagQueryEngine;
 
 public class PersonListPanel extends JPanel {
 
@@ -25,33 +23,40 @@ public class PersonListPanel extends JPanel {
 	private static final Logger LOGGER = Logger.getLogger(PersonListPanel.class.getPackage().getName());
 	private static final ResourceBundle MESSAGES = ResourceBundle.getBundle("waya.gui.resources.messages");
 	private static final String TAG_ALL = MESSAGES.getString("label_filter_all_tags");
+	// sets the width and height of the rows: the list is stretched to the panel's width
+	private static final String PROTOTYPE_CELL_VALUE = "Prototype person name";
 	private PersonManager personManager;
 	private TagManager tagManager;
 	private JPanel listPanel;
 	private String currentTag;
+	private TagQueryEngine tagQueryEngine;
+	private String currentQuery;
+	private String searchText;
 	private boolean displayAllPersons;
-	private Comparator<String> personIdComparator;
 	private MainFrame parent;
-	private List<String> personIdsList;
 	private JList<String> personListWidget;
-	private DefaultListModel<String> personListData;
+	private PersonListModel personListData;
 	private String selectedPersonId;
 	
 	public PersonListPanel(MainFrame mf, PersonManager pm, TagManager tm) {
 		
 		listPanel = new JPanel(new BorderLayout());
-		personIdsList = new ArrayList<String>();
 		parent = mf;
 		personManager = pm;
 		tagManager = tm;
 		currentTag = TAG_ALL;
+		tagQueryEngine = new TagQueryEngine(tm, pm);
+		currentQuery = null;
+		searchText = "";
 		displayAllPersons = true;
 		selectedPersonId = "";
 		
 		// list
-		personListData = new DefaultListModel<String>();
+		personListData = new PersonListModel(pm);
 		personListWidget = new JList<>();
 		personListWidget.setModel(personListData);
+		// fixed row size: the list does not measure every row of the model
+		personListWidget.setPrototypeCellValue(PROTOTYPE_CELL_VALUE);
 		personListWidget.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
 		personListWidget.addListSelectionListener(new ListSelectionListener() {
 			@Override
@@ -61,7 +66,7 @@ public class PersonListPanel extends JPanel {
 					if (!event.getValueIsAdjusting()) {
 						// to avoid multiple activation from a single user action
 						int index = list.getMinSelectionIndex();
-						String newSelectedPersonId = personIdsList.get(index);
+						String newSelectedPersonId = personListData.getPersonId(index);
 						if (newSelectedPersonId != selectedPersonId) {
 							selectedPersonId = newSelectedPersonId;
 							parent.openPersonPanel(newSelectedPersonId);
@@ -71,20 +76,6 @@ public class PersonListPanel extends JPanel {
 			}
 		});
 		
-		// create a comparator to sort personIds after the real name
-		personIdComparator = new Comparator<String>() {
-			@Override
-			public int compare(String id1, String id2) {
-				try {
-					String name1 = personManager.getPerson(id1).getName();
-					String name2 = personManager.getPerson(id2).getName();
-					return compare(name1, name2);
-				} catch (IllegalArgumentException e) {
-					return 0;
-				}
-			}
-		};
-		
 		// main layout
 		setLayout(new BorderLayout());
 		listPanel.add(personListWidget, BorderLayout.CENTER);
@@ -97,10 +88,11 @@ public class PersonListPanel extends JPanel {
 	
 	public void filterByTag(boolean displayAll, String tag) {
 		// check if filter has changed
-		if (displayAll == displayAllPersons && tag == currentTag) {
+		if (currentQuery == null && displayAll == displayAllPersons && tag == currentTag) {
 			// nothing to do
 			return;
 		} else {
+			currentQuery = null;
 			displayAllPersons = displayAll;
 			currentTag = tag;
 			updateListContent();
@@ -108,40 +100,104 @@ public class PersonListPanel extends JPanel {
 	}
 	
 	
+	/**
+	 * Display the persons matching a tag expression, e.g. "family AND NOT archived"
+	 * @param query tag expression
+	 * @throws IllegalArgumentException if the expression is invalid: the filter is not changed
+	 */
+	public void filterByQuery(String query) throws IllegalArgumentException {
+		tagQueryEngine.check(query);
+		currentQuery = query;
+		updateListContent();
+	}
+	
+	
+	/**
+	 * Display only the persons matching a full-text search, best matches first.
+	 * The search applies within the current tag filter.
+	 * @param text terms searched (empty: no search)
+	 */
+	public void search(String text) {
+		String newSearchText = text.trim();
+		if (!newSearchText.equals(searchText)) {
+			searchText = newSearchText;
+			updateListContent();
+		}
+	}
+	
+	
+	/**
+	 * Rebuild the list from the current filter and search
+	 */
 	public void updateListContent() {
 		
-		personIdsList.clear();
-		personListData.clear();
-		
-		// create the list of person Ids, sorted after the person name
-		List<String> personIds; 
-		if (displayAllPersons || !tagManager.hasTag(currentTag)) {
-			// all persons
-			personIds = new LinkedList<String>(personManager.getPersonIds());
-		} else {
+		// select the person Ids: null for all the persons
+		Set<String> selectedIds = null;
+		if (currentQuery != null) {
+			// only persons matching the tag expression
+			try {
+				selectedIds = tagQueryEngine.select(currentQuery);
+			} catch (IllegalArgumentException e) {
+				// a tag of the expression was renamed or deleted
+				LOGGER.warning("Tag expression no longer valid: "+e.getMessage());
+				currentQuery = null;
+			}
+		} else if (!displayAllPersons && tagManager.hasTag(currentTag)) {
 			// only persons matching the current tag
-			personIds = new LinkedList<String>(tagManager.getContent(currentTag));
+			selectedIds = tagManager.getContent(currentTag);
 		}
-		Collections.sort(personIds, personIdComparator);
-		personIdsList.addAll(personIds);
 		
-		// 
-		personListData = new DefaultListModel<>();
-		for (String id : personIds) {
-			// we add a space after the name so that the element is correctly rendered
-			// even if the name is empty (by default empty name = empty/flat element)
-			String name = personManager.getPerson(id).getName()+" ";
-			personListData.addElement(name);
+		if (searchText.isEmpty()) {
+			// sorted after the person name, in the order maintained by the person manager
+			personListData.setSortedContent(selectedIds);
+		} else {
+			// persons matching the search, in the order of the ranking
+			List<String> personIds = new ArrayList<String>();
+			for (String id : personManager.search(searchText)) {
+				if (selectedIds == null || selectedIds.contains(id)) {
+					personIds.add(id);
+				}
+			}
+			personListData.setRankedContent(personIds);
 		}
-		personListWidget.setModel(personListData);
-		// update the selected person
-		//selectPerson(selectedPersonId);
 		
 		revalidate();
 		repaint();
 	}
 	
 	
+	/**
+	 * Insert a person just created in the list, if it passes the current filter
+	 * @param personId Id of the person
+	 */
+	public void personAdded(String personId) {
+		if (searchText.isEmpty()) {
+			personListData.personAdded(personId);
+		} else {
+			// the rank of the person in the search is unknown
+			updateListContent();
+		}
+	}
+	
+	
+	/**
+	 * Update the row of a person modified, e.g. renamed
+	 * @param personId Id of the person
+	 */
+	public void personChanged(String personId) {
+		personListData.personChanged(personId);
+	}
+	
+	
+	/**
+	 * Remove the row of a person deleted
+	 * @param personId Id of the person
+	 */
+	public void personRemoved(String personId) {
+		personListData.personRemoved(personId);
+	}
+	
+	
 	/**
 	 * Mark the person as selected in the panel
 	 * @param personId
@@ -165,17 +221,6 @@ public class PersonListPanel extends JPanel {
 	}
 	
 	
-	/**
-	 * Change the name displayed in the panel for the currently selected person
-	 * @param newName
-	 */
-	public void changeSelectedPersonLabel(String newName) {
-		if (!personListWidget.isSelectionEmpty()) {
-			personListData.setElementAt(newName, personListWidget.getMinSelectionIndex());
-		}			
-	}
-	
-	
 	/**
 	 * Create a button for the person with given Id (Id cannot be null)
 	 * @param personId
@@ -183,7 +228,7 @@ public class PersonListPanel extends JPanel {
 	 */
 	/*
 	private JToggleButton createButton(String personId) {
-		String personName = personManager.getPerson(personId).getName();
+		String personName = personManager.getPersonName(personId);
 		JToggleButton button = new JToggleButton(personName);
 		button.addActionListener(new ActionListener() {
 			@Override
@@ -2,18 +2,28 @@ package waya.gui;
 
 import java.awt.BorderLayout;
 import java.awt.Color;
+import java.awt.Component;
+import java.awt.Dimension;
 import java.awt.FileDialog;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
+import java.awt.Insets;
+import java.awt.KeyboardFocusManager;
+import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.List;
 import java.util.ResourceBundle;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Logger;
 
+import javax.swing.BorderFactory;
 import javax.swing.JButton;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
@@ -21,8 +31,13 @@ import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
 import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 
-import waya.engine.FileTools;
+import waya.engine.ImageBatch;
+import waya.engine.ImageStore;
 import waya.engine.Information;
 import waya.engine.Person;
 import waya.engine.PersonManager;
@@ -35,10 +50,17 @@ public class PersonPanel extends JPanel {
 	private static final ResourceBundle MESSAGES = ResourceBundle.getBundle("waya.gui.resources.messages");
 	private static final String ADD_INFO_BUTTON_LABEL = MESSAGES.getString("button_add_info");
 	private static final int INFO_NAME_COLUMNS = 20;
-	private static final int IMAGE_WIDTH = 150;
-	private static final int IMAGE_HEIGHT = 150;
-	private static final int IMAGE_IMPORT_TO_DISPLAY_RATIO = 4;
-	private static final String IMAGE_END = "_image.png";
+	// image sizes shared with ImageBatch
+	private static final int IMAGE_WIDTH = ImageStore.THUMBNAIL_SIZE;
+	private static final int IMAGE_HEIGHT = ImageStore.THUMBNAIL_SIZE;
+	private static final int IMAGE_IMPORT_TO_DISPLAY_RATIO = ImageStore.IMAGE_TO_THUMBNAIL_RATIO;
+	// image files of a person, also regenerated by ImageBatch
+	private static final String IMAGE_END = ImageBatch.IMAGE_END;
+	private static final String THUMBNAIL_END = ImageBatch.THUMBNAIL_END;
+	// values of an information are created and released by pages of this size
+	private static final int VALUES_PER_PAGE = 50;
+	// number of values created when the panel is opened, before the viewport is known
+	private static final int INITIAL_VALUES = 2*VALUES_PER_PAGE;
 	
 	private PersonManager personManager;
 	private TagManager tagManager;
@@ -47,25 +69,36 @@ public class PersonPanel extends JPanel {
 	private JPanel infoPanel;
 	private JScrollPane infoScrollPane;
 	private JTextField nameArea;
-	private ArrayList<ArrayList<Integer>> infoComponentsIndices;
+	// rows of the information panel, in the order of the person's informations
+	private ArrayList<InformationRow> informationRows;
+	// value rows of released pages, reused by the pages entering the viewport
+	private ArrayDeque<ValueRow> recycledValueRows;
+	// height of a single-line value, used for the pages never displayed
+	private int valueRowHeight;
 	private AddInformationButton addInformationButton;
 	private MainFrame mainFrame;
+	private ImageStore imageStore;
+	// image files of the person when its image is not in the image store
 	private File imageFile;
+	private File thumbnailFile;
 	private String oldName;
 	private File dataDirectory;
 	private JPanel bottomPanel;
 	
 	
 	public PersonPanel(MainFrame frame, Person person, PersonManager pm, TagManager tm, 
-			File dataDir) {
+			ImageStore store, File dataDir) {
 		this.person = person;
 		this.personManager = pm;
 		this.tagManager = tm;
+		this.imageStore = store;
 		this.mainFrame = frame;
 		this.dataDirectory = dataDir;
 		this.imageFile = new File(dataDir, person.getId()+IMAGE_END);
+		this.thumbnailFile = new File(dataDir, person.getId()+THUMBNAIL_END);
 		this.oldName = this.person.getName();
-		infoComponentsIndices = new ArrayList<ArrayList<Integer>>();
+		informationRows = new ArrayList<InformationRow>();
+		recycledValueRows = new ArrayDeque<ValueRow>();
 		
 		// 
 		setLayout(new BorderLayout());
@@ -83,7 +116,15 @@ public class PersonPanel extends JPanel {
 		headerConstraints.fill = GridBagConstraints.VERTICAL;
 		headerConstraints.gridheight = 3;
 		double imageScaleRatio = 1./IMAGE_IMPORT_TO_DISPLAY_RATIO;
-		ImageViewer imageViewer = new ImageViewer(imageFile, IMAGE_WIDTH, IMAGE_HEIGHT, imageScaleRatio);
+		ImageViewer imageViewer;
+		if (ImageStore.isStored(person.getImagePath())) {
+			imageViewer = new ImageViewer(imageStore.getImageFile(person.getImagePath()), 
+					imageStore.getThumbnailFile(person.getImagePath()), IMAGE_WIDTH, IMAGE_HEIGHT, 
+					imageScaleRatio);
+		} else {
+			imageViewer = new ImageViewer(imageFile, thumbnailFile, IMAGE_WIDTH, IMAGE_HEIGHT, 
+					imageScaleRatio);
+		}
 		headerPanel.add(imageViewer, headerConstraints);
 		headerConstraints.gridheight = 1;
 		
@@ -151,7 +192,7 @@ public class PersonPanel extends JPanel {
 		headerConstraints.weightx = 0;
 		headerConstraints.fill = GridBagConstraints.HORIZONTAL;
 		headerPanel.add(
-				new ImageSelectorButton(mainFrame, imageViewer, imageFile), headerConstraints);
+				new ImageSelectorButton(mainFrame, imageViewer), headerConstraints);
 		
 		
 		add(headerPanel, BorderLayout.PAGE_START);
@@ -176,7 +217,14 @@ public class PersonPanel extends JPanel {
 		
 		add(infoScrollPane, BorderLayout.CENTER);
 		
-		updateInformationPanel();
+		buildInformationPanel();
+		// create the values near the viewport when it is scrolled or resized
+		infoScrollPane.getViewport().addChangeListener(new ChangeListener() {
+			@Override
+			public void stateChanged(ChangeEvent e) {
+				updateVisiblePages();
+			}
+		});
 		
 		// --------------------------------------------------------------------
 		// bottom panel
@@ -202,6 +250,15 @@ public class PersonPanel extends JPanel {
 	}
 	
 	
+	/**
+	 * Return the Id of the person displayed
+	 * @return Id of the person
+	 */
+	public String getPersonId() {
+		return person.getId();
+	}
+	
+	
 	public boolean nameHasChanged() {
 		return (!oldName.equals(nameArea.getText()));
 	}
@@ -209,15 +266,13 @@ public class PersonPanel extends JPanel {
 	
 	public void save() {
 		LOGGER.finest("save");
-		// TODO: save only if things changed
-		//
 		// update object
 		updatePersonObjectFromGui();
 		// save updated person in the person manager
 		personManager.setPerson(person.getId(), person);
-		// save to file
+		// save to file, only if things changed
 		try {
-			personManager.saveSinglePerson(person.getId());
+			personManager.save();
 		} catch (IOException e) {
 			LOGGER.severe("Cannot save to file");
 			e.printStackTrace();
@@ -231,6 +286,7 @@ public class PersonPanel extends JPanel {
 		
 		// update objects
 		personManager.removePerson(person.getId());
+		imageStore.removeReference(person.getImagePath());
 		tagManager.removeFromAllTags(person.getId());
 		try {
 			tagManager.save();
@@ -239,13 +295,12 @@ public class PersonPanel extends JPanel {
 			e.printStackTrace();
 		}
 		
-		// refresh UI
-		mainFrame.refreshPersonList();
+		// refresh UI: the row of the person is removed when the panel is closed
 		mainFrame.closePersonPanel(true);
 		
 		// update files
 		try {
-			personManager.removePersonFile(dataDirectory, person.getId());
+			personManager.save();
 		} catch (IOException e) {
 			LOGGER.severe("Cannot delete person's file");
 			e.printStackTrace();
@@ -254,6 +309,57 @@ public class PersonPanel extends JPanel {
 	}
 	
 	
+	/**
+	 * Give an image of the image store to the person. The image path is saved and written
+	 * at once (waiting for the persistence service, if any), and the previous image is
+	 * released only once the write succeeded, since it may be deleted from the store.
+	 * If the image path cannot be written, the person keeps its previous image and the
+	 * reference to the new image is released.
+	 * @param imagePath image path, with a reference held for the person
+	 * @param imageViewer viewer displaying the image
+	 */
+	private void changeImage(String imagePath, ImageViewer imageViewer) {
+		String previousPath = person.getImagePath();
+		Person savedPerson = personManager.getPerson(person.getId());
+		savedPerson.setImagePath(imagePath);
+		personManager.setPerson(person.getId(), savedPerson);
+		try {
+			personManager.save();
+			personManager.flush();
+		} catch (IOException e) {
+			LOGGER.severe("Cannot save the image of the person");
+			e.printStackTrace();
+			Person restoredPerson = personManager.getPerson(person.getId());
+			restoredPerson.setImagePath(previousPath);
+			personManager.setPerson(person.getId(), restoredPerson);
+			try {
+				// replace the failed write, retried in the background, by the previous image
+				personManager.save();
+			} catch (IOException saveException) {
+				LOGGER.warning("Cannot save the previous image of the person");
+			}
+			imageStore.removeReference(imagePath);
+			JOptionPane.showMessageDialog(mainFrame, MESSAGES.getString("error_image_cannot_save"), 
+					"", JOptionPane.ERROR_MESSAGE);
+			// display the previous image
+			imageViewer.imageChanged();
+			return;
+		}
+		person.setImagePath(imagePath);
+		imageStore.removeReference(previousPath);
+		
+		// the image files of the person are replaced by the image of the store
+		try {
+			Files.deleteIfExists(imageFile.toPath());
+			Files.deleteIfExists(thumbnailFile.toPath());
+		} catch (IOException e) {
+			LOGGER.warning("Cannot delete the previous image of the person");
+		}
+		imageViewer.setImageFiles(imageStore.getImageFile(imagePath), 
+				imageStore.getThumbnailFile(imagePath));
+	}
+	
+	
 	/**
 	 * Open the dialog to request confirmation before deleting the person
 	 */
@@ -275,171 +381,488 @@ public class PersonPanel extends JPanel {
 		
 		person.setName(nameArea.getText());
 		
-		for (int infoIndex=0; infoIndex<person.getNumberOfInformations(); infoIndex++) {
-			
-			// get the indices of info components from infoComponentsIndices array
-			// -> name, value0, value1, ...
-			LOGGER.finest("savePersonInformation");
-			LOGGER.finest("index: "+infoIndex);
-			int numberOfValues = infoComponentsIndices.get(infoIndex).size() - 1;
-			
-			// get name and create information
-			int nameIndex = infoComponentsIndices.get(infoIndex).get(0);
-			JTextArea nameComponent = (JTextArea) infoPanel.getComponent(nameIndex);
-			Information information = new Information(nameComponent.getText());
-			
-			// get values
-			for (int valueIndex=0; valueIndex<numberOfValues; valueIndex++) {
-				int componentIndex = infoComponentsIndices.get(infoIndex).get(valueIndex+1);
-				JTextArea valueComponent = (JTextArea) infoPanel.getComponent(componentIndex);
-				information.addValue(valueComponent.getText());
-			}
-			
+		for (int infoIndex=0; infoIndex<informationRows.size(); infoIndex++) {
 			// store information in the person object, replacing existing one at given index
-			person.changeInformation(infoIndex, information);			
+			person.changeInformation(infoIndex, informationRows.get(infoIndex).toInformation());
 		}
 	}
 	
 	
 	private void addInformation() {
-		// save the panel's content
-		updatePersonObjectFromGui();
-		
 		// create new information
 		Information info = new Information("");
 		person.addInformation(info);
 		
-		// update panel
-		updateInformationPanel();
+		// add its row to the panel
+		addInformationRow(info);
+		refreshInformationPanel();
 	}
 	
 	
-	private void removeInformation(int infoIndex) {
-		// save the panel's content
-		updatePersonObjectFromGui();
-		
+	private void removeInformation(InformationRow row) {
 		// remove information from person object
+		int infoIndex = informationRows.indexOf(row);
 		person.removeInformation(infoIndex);
 		
-		// update information panel
-		updateInformationPanel();
+		// remove its row from the panel
+		informationRows.remove(infoIndex);
+		infoPanel.remove(row);
+		row.release();
+		refreshInformationPanel();
 	}
 	
 	
-	private void addInformationValue(int infoIndex, String value) {
-		// save the panel's content
-		updatePersonObjectFromGui();
-		
+	private void addInformationValue(InformationRow row, String value) {
 		// get Information object and add value
-		Information info = person.getInformation(infoIndex);
+		Information info = person.getInformation(informationRows.indexOf(row));
 		info.addValue(value);
 		
-		// update panel
-		updateInformationPanel();
+		// add the value to the row
+		row.addValue(value);
+		refreshInformationPanel();
 	}
 	
 	
-	private void removeInformationValue(int infoIndex, int infoValueIndex) {
-		// save the panel's content
-		updatePersonObjectFromGui();
-		
+	private void removeInformationValue(ValueRow valueRow) {
 		// get Information object and remove value
-		Information info = person.getInformation(infoIndex);
-		info.removeValue(infoValueIndex);
+		InformationRow row = valueRow.getInformationRow();
+		Information info = person.getInformation(informationRows.indexOf(row));
+		int valueIndex = valueRow.getIndex();
+		info.removeValue(valueIndex);
 		
-		// update panel
-		updateInformationPanel();
+		// remove the value from the row
+		row.removeValue(valueIndex);
+		if (info.getNumberOfValues() == 0) {
+			// an information always displays a value
+			info.addValue("");
+			row.addValue("");
+		}
+		refreshInformationPanel();
 	}
 	
 	
-	private void updateInformationPanel() {
-		// remove existing elements from the panel
+	/**
+	 * Create the rows of all the informations of the person
+	 */
+	private void buildInformationPanel() {
 		infoPanel.removeAll();
+		informationRows.clear();
+		for (int infoIndex=0; infoIndex<person.getNumberOfInformations(); infoIndex++) {
+			addInformationRow(person.getInformation(infoIndex));
+		}
 		
-		// reset the list of components' index
-		infoComponentsIndices.clear();
-		
-		// create grid constraints 
+		// create the first values, so that the top of the panel is displayed at once
+		int createdValues = 0;
+		for (InformationRow row : informationRows) {
+			for (ValuePage page : row.pages) {
+				if (createdValues >= INITIAL_VALUES) {
+					break;
+				}
+				page.materialize();
+				createdValues += page.getNumberOfValues();
+			}
+		}
+		refreshInformationPanel();
+	}
+	
+	
+	/**
+	 * Append the row of an information to the panel
+	 * @param info information displayed in the row
+	 */
+	private void addInformationRow(Information info) {
+		if (info.getNumberOfValues() == 0) {
+			// create an empty value
+			info.addValue("");
+		}
+		InformationRow row = new InformationRow(info);
+		informationRows.add(row);
+		infoPanel.add(row, createRowConstraints());
+	}
+	
+	
+	/**
+	 * Layout the panel after rows were added or removed, then update the values displayed
+	 */
+	private void refreshInformationPanel() {
+		infoPanel.revalidate();
+		infoPanel.repaint();
+		SwingUtilities.invokeLater(this::updateVisiblePages);
+	}
+	
+	
+	/**
+	 * Create the pages of values in or near the viewport, and release the pages far from it.
+	 * A page is created within one viewport height of the visible area, and released
+	 * beyond two, so that a page is not created and released in turn.
+	 * The page containing the focused value is kept.
+	 */
+	private void updateVisiblePages() {
+		Component view = infoScrollPane.getViewport().getView();
+		Rectangle visible = infoScrollPane.getViewport().getViewRect();
+		Component focusOwner = KeyboardFocusManager.getCurrentKeyboardFocusManager().getFocusOwner();
+		boolean changed = false;
+		for (InformationRow row : informationRows) {
+			for (ValuePage page : row.pages) {
+				Rectangle bounds = SwingUtilities.convertRectangle(page.getParent(), page.getBounds(), view);
+				int distance = Math.max(visible.y - (bounds.y + bounds.height), bounds.y - (visible.y + visible.height));
+				if (!page.isMaterialized() && distance < visible.height) {
+					page.materialize();
+					changed = true;
+				} else if (page.isMaterialized() && distance > 2*visible.height
+						&& (focusOwner == null || !SwingUtilities.isDescendingFrom(focusOwner, page))) {
+					page.release();
+					changed = true;
+				}
+			}
+		}
+		if (changed) {
+			infoPanel.revalidate();
+			infoPanel.repaint();
+		}
+	}
+	
+	
+	/**
+	 * Return a value row, reusing a released one if possible
+	 * @return value row
+	 */
+	private ValueRow obtainValueRow() {
+		ValueRow valueRow = recycledValueRows.poll();
+		return (valueRow != null) ? valueRow : new ValueRow();
+	}
+	
+	
+	/**
+	 * Return the height of a single-line value
+	 * @return height
+	 */
+	private int getValueRowHeight() {
+		if (valueRowHeight == 0) {
+			ValueRow valueRow = obtainValueRow();
+			valueRowHeight = valueRow.getPreferredSize().height;
+			recycledValueRows.push(valueRow);
+		}
+		return valueRowHeight;
+	}
+	
+	
+	/**
+	 * Constraints of a row stacked below the previous rows of a GridBag panel: removing a
+	 * row moves the next ones up, without changing their constraints
+	 * @return constraints
+	 */
+	private static GridBagConstraints createRowConstraints() {
 		GridBagConstraints constraints = new GridBagConstraints();
 		constraints.gridx = 0;
-		constraints.gridy = 0;
-		constraints.anchor = GridBagConstraints.BASELINE;
-		constraints.insets = new java.awt.Insets(2, 2, 2, 2);
+		constraints.gridy = GridBagConstraints.RELATIVE;
+		constraints.weightx = 1;
+		constraints.fill = GridBagConstraints.HORIZONTAL;
+		constraints.anchor = GridBagConstraints.FIRST_LINE_START;
+		return constraints;
+	}
+	
+	
+	/**
+	 * Row of the information panel: remove button, name, values and button to add values.
+	 * The buttons are bound to the row, so that rows can be added or removed without 
+	 * rebuilding the other rows.
+	 * The values are displayed by pages, whose components are only created near the 
+	 * viewport: the texts of the other values are kept in the row.
+	 */
+	private class InformationRow extends JPanel {
 		
-		// build elements for each information
-		for (int infoIndex=0; infoIndex<person.getNumberOfInformations(); infoIndex++) {
-			
-			// add entry for the components of this info
-			ArrayList<Integer> componentsIndices = new ArrayList<Integer>();
+		private static final long serialVersionUID = 1L;
+		private JTextArea nameArea;
+		private JPanel valuesPanel;
+		// texts of the values: up to date for the pages released, read from the components
+		// for the pages created
+		private ArrayList<String> values;
+		private ArrayList<ValuePage> pages;
+		
+		public InformationRow(Information info) {
+			super(new GridBagLayout());
+			values = new ArrayList<String>();
+			pages = new ArrayList<ValuePage>();
 			
-			// get information
-			Information info = person.getInformation(infoIndex);
-			String name = info.getName();
+			GridBagConstraints constraints = new GridBagConstraints();
+			constraints.gridy = 0;
+			constraints.anchor = GridBagConstraints.FIRST_LINE_START;
+			constraints.insets = new Insets(2, 2, 2, 2);
 			
 			// button to remove information
 			constraints.gridx = 0;
 			constraints.weightx = 0;
 			constraints.fill = GridBagConstraints.NONE;
-			infoPanel.add(new RemoveInformationButton(infoIndex), constraints);
+			add(new RemoveInformationButton(this), constraints);
 			
 			// info name
 			constraints.gridx = 1;
-			constraints.weightx = 0;
-			constraints.fill = GridBagConstraints.NONE;
-			LOGGER.finest("Name: "+name);
-			JTextArea nameArea = new JTextArea(name);
+			LOGGER.finest("Name: "+info.getName());
+			nameArea = new JTextArea(info.getName());
 			nameArea.setColumns(INFO_NAME_COLUMNS);
 			nameArea.setLineWrap(true);
-			infoPanel.add(nameArea, constraints);
-			componentsIndices.add(infoPanel.getComponentCount()-1);
+			add(nameArea, constraints);
 			
 			// info values & related buttons
-			List<String> values = info.getValues();
-			if (values.isEmpty()) {
-				// create an empty value
-				info.addValue("");
-				values = info.getValues();
-			}
-
-			// NB: decrement lineNumber to simplify addition of new lines
-			constraints.gridy--;
-			for(int valueIndex=0; valueIndex<values.size(); valueIndex++) {
-				constraints.gridy++;
-				
-				// text area containing the value
-				constraints.gridx = 2;
-				constraints.weightx = 1;
-				constraints.fill = GridBagConstraints.HORIZONTAL;
-				JTextArea textArea = new JTextArea(values.get(valueIndex));
-				textArea.setLineWrap(true);
-				textArea.setWrapStyleWord(true);
-				infoPanel.add(textArea, constraints);
-				componentsIndices.add(infoPanel.getComponentCount()-1);
-				constraints.weighty = 0;
-				
-				// button to remove the value
-				constraints.gridx = 3;
-				constraints.weightx = 0;
-				constraints.fill = GridBagConstraints.NONE;
-				infoPanel.add(new RemoveInfoValueButton(infoIndex, valueIndex), constraints);
+			constraints.gridx = 2;
+			constraints.weightx = 1;
+			constraints.fill = GridBagConstraints.HORIZONTAL;
+			valuesPanel = new JPanel(new GridBagLayout());
+			for (String value : info.getValues()) {
+				addValue(value);
 			}
+			add(valuesPanel, constraints);
 			
-			// button to add values
-			constraints.gridx = 4;
+			// button to add values, next to the last value
+			constraints.gridx = 3;
 			constraints.weightx = 0;
 			constraints.fill = GridBagConstraints.NONE;
-			infoPanel.add(new AddInfoValueButton(infoIndex), constraints);
+			constraints.anchor = GridBagConstraints.LAST_LINE_START;
+			add(new AddInfoValueButton(this), constraints);
+		}
+		
+		public int getNumberOfValues() {
+			return values.size();
+		}
+		
+		public void addValue(String value) {
+			values.add(value);
+			int valueIndex = values.size()-1;
+			if (valueIndex % VALUES_PER_PAGE == 0) {
+				// new page, created when it enters the viewport
+				ValuePage page = new ValuePage(this, valueIndex);
+				pages.add(page);
+				valuesPanel.add(page, createRowConstraints());
+			} else {
+				pages.get(pages.size()-1).valueAdded();
+			}
+		}
+		
+		public void removeValue(int valueIndex) {
+			storeValues();
+			values.remove(valueIndex);
+			
+			// the next values move to the previous row: update the pages created
+			ValuePage lastPage = pages.get(pages.size()-1);
+			if (lastPage.getNumberOfValues() == 0) {
+				lastPage.recycle();
+				pages.remove(pages.size()-1);
+				valuesPanel.remove(lastPage);
+			}
+			for (int pageIndex=valueIndex/VALUES_PER_PAGE; pageIndex<pages.size(); pageIndex++) {
+				pages.get(pageIndex).bind();
+			}
+		}
+		
+		/**
+		 * Copy the texts of the values displayed into the row
+		 */
+		private void storeValues() {
+			for (ValuePage page : pages) {
+				page.store();
+			}
+		}
+		
+		/**
+		 * Release the pages of the row
+		 */
+		public void release() {
+			for (ValuePage page : pages) {
+				page.release();
+			}
+		}
+		
+		/**
+		 * Build the information from the content of the row
+		 * @return information
+		 */
+		public Information toInformation() {
+			storeValues();
+			Information information = new Information(nameArea.getText());
+			for (String value : values) {
+				information.addValue(value);
+			}
+			return information;
+		}
+	}
+	
+	
+	/**
+	 * Page of consecutive values of an information.
+	 * When the page is released, its value rows are recycled and it is replaced by an empty 
+	 * area of the same height.
+	 */
+	private class ValuePage extends JPanel {
+		
+		private static final long serialVersionUID = 1L;
+		private InformationRow informationRow;
+		private int firstIndex;
+		private ArrayList<ValueRow> valueRows;
+		private boolean materialized;
+		private int placeholderHeight;
+		
+		public ValuePage(InformationRow row, int index) {
+			super(new GridBagLayout());
+			informationRow = row;
+			firstIndex = index;
+			valueRows = new ArrayList<ValueRow>();
+			materialized = false;
+			placeholderHeight = getValueRowHeight();
+		}
+		
+		public int getNumberOfValues() {
+			return Math.max(0, Math.min(VALUES_PER_PAGE, informationRow.getNumberOfValues()-firstIndex));
+		}
+		
+		public boolean isMaterialized() {
+			return materialized;
+		}
+		
+		/**
+		 * Create the value rows of the page
+		 */
+		public void materialize() {
+			if (!materialized) {
+				materialized = true;
+				bind();
+			}
+		}
+		
+		/**
+		 * Save the texts of the values and recycle the value rows of the page
+		 */
+		public void release() {
+			if (materialized) {
+				if (getHeight() > 0) {
+					// keep the height of the page, so that the next pages do not move
+					placeholderHeight = getHeight();
+				}
+				store();
+				recycle();
+			}
+		}
+		
+		/**
+		 * Recycle the value rows of the page, without saving their texts
+		 */
+		public void recycle() {
+			for (ValueRow valueRow : valueRows) {
+				recycledValueRows.push(valueRow);
+			}
+			valueRows.clear();
+			removeAll();
+			materialized = false;
+		}
+		
+		/**
+		 * Update the value rows of the page from the values of the information
+		 */
+		public void bind() {
+			if (!materialized) {
+				return;
+			}
+			int numberOfValues = getNumberOfValues();
+			while (valueRows.size() > numberOfValues) {
+				ValueRow valueRow = valueRows.remove(valueRows.size()-1);
+				remove(valueRow);
+				recycledValueRows.push(valueRow);
+			}
+			while (valueRows.size() < numberOfValues) {
+				ValueRow valueRow = obtainValueRow();
+				valueRows.add(valueRow);
+				add(valueRow, createRowConstraints());
+			}
+			for (int i=0; i<numberOfValues; i++) {
+				int valueIndex = firstIndex+i;
+				valueRows.get(i).bind(informationRow, valueIndex, informationRow.values.get(valueIndex));
+			}
+		}
+		
+		/**
+		 * Called when a value is added at the end of the page
+		 */
+		public void valueAdded() {
+			if (materialized) {
+				bind();
+			} else {
+				placeholderHeight += getValueRowHeight();
+			}
+		}
+		
+		/**
+		 * Copy the texts of the value rows into the information row
+		 */
+		public void store() {
+			for (ValueRow valueRow : valueRows) {
+				informationRow.values.set(valueRow.getIndex(), valueRow.getText());
+			}
+		}
+		
+		@Override
+		public Dimension getPreferredSize() {
+			return materialized ? super.getPreferredSize() : new Dimension(0, placeholderHeight);
+		}
+		
+		@Override
+		public Dimension getMinimumSize() {
+			return materialized ? super.getMinimumSize() : new Dimension(0, placeholderHeight);
+		}
+	}
+	
+	
+	/**
+	 * Value of an information, with its remove button.
+	 * Value rows are recycled: a row is bound to a value when its page is created.
+	 */
+	private class ValueRow extends JPanel {
+		
+		private static final long serialVersionUID = 1L;
+		private JTextArea textArea;
+		private InformationRow informationRow;
+		private int index;
+		
+		public ValueRow() {
+			super(new BorderLayout(4, 0));
+			setBorder(BorderFactory.createEmptyBorder(2, 2, 2, 2));
 			
-			// store the components indices for the info
-			infoComponentsIndices.add(componentsIndices);
+			// text area containing the value
+			textArea = new JTextArea();
+			textArea.setLineWrap(true);
+			textArea.setWrapStyleWord(true);
+			add(textArea, BorderLayout.CENTER);
 			
-			// prepare next line
-			constraints.gridy++;
+			// button to remove the value
+			JPanel buttonPanel = new JPanel(new BorderLayout());
+			buttonPanel.add(new RemoveInfoValueButton(this), BorderLayout.PAGE_START);
+			add(buttonPanel, BorderLayout.LINE_END);
 		}
 		
-		// refresh panel object
-		infoPanel.revalidate();
-		infoPanel.repaint();
+		/**
+		 * Display a value
+		 * @param row information row of the value
+		 * @param valueIndex index of the value in the information
+		 * @param value text of the value
+		 */
+		public void bind(InformationRow row, int valueIndex, String value) {
+			informationRow = row;
+			index = valueIndex;
+			if (!textArea.getText().equals(value)) {
+				textArea.setText(value);
+			}
+		}
+		
+		public InformationRow getInformationRow() {
+			return informationRow;
+		}
+		
+		public int getIndex() {
+			return index;
+		}
+		
+		public String getText() {
+			return textArea.getText();
+		}
 	}
 	
 	
@@ -462,25 +885,25 @@ public class PersonPanel extends JPanel {
 	private class RemoveInformationButton extends JButton {
 		
 		private static final long serialVersionUID = 1L;
-		private int infoIndex;
+		private InformationRow row;
 		
-		public RemoveInformationButton(int inputInfoIndex) {
+		public RemoveInformationButton(InformationRow inputRow) {
 			super(MESSAGES.getString("button_remove_info"));
-			infoIndex = inputInfoIndex;
+			row = inputRow;
 			this.addActionListener(new ActionListener() {
 				@Override
 				public void actionPerformed(ActionEvent e) {
 					// remove information
-					LOGGER.finest("Button pressed: remove info #"+infoIndex);
+					LOGGER.finest("Button pressed: remove info #"+informationRows.indexOf(row));
 					int input = JOptionPane.showConfirmDialog(getRootPane(), 
 							MESSAGES.getString("dialog_remove_info"),
 							MESSAGES.getString("dialog_confirm_title"), 
 							JOptionPane.OK_CANCEL_OPTION);
 					if (input == JOptionPane.OK_OPTION) {
-						removeInformation(infoIndex);
+						removeInformation(row);
 					}
 					
-					LOGGER.finest("Button pressed: remove info #"+infoIndex+" -> over");
+					LOGGER.finest("Button pressed: remove info -> over");
 				}
 			});
 		}
@@ -490,15 +913,15 @@ public class PersonPanel extends JPanel {
 	private class AddInfoValueButton extends JButton {
 		
 		private static final long serialVersionUID = 1L;
-		private int infoIndex;
+		private InformationRow row;
 		
-		public AddInfoValueButton(int inputInfoIndex) {
+		public AddInfoValueButton(InformationRow inputRow) {
 			super(MESSAGES.getString("button_add_value"));
-			infoIndex = inputInfoIndex;
+			row = inputRow;
 			this.addActionListener(new ActionListener() {		
 				@Override
 				public void actionPerformed(ActionEvent e) {
-					addInformationValue(infoIndex, "");
+					addInformationValue(row, "");
 				}
 			});
 		}
@@ -508,13 +931,11 @@ public class PersonPanel extends JPanel {
 	private class RemoveInfoValueButton extends JButton {
 		
 		private static final long serialVersionUID = 1L;
-		private int infoIndex;
-		private int infoValueIndex;
+		private ValueRow valueRow;
 		
-		public RemoveInfoValueButton(int inputInfoIndex, int inputInfoValueIndex) {
+		public RemoveInfoValueButton(ValueRow inputValueRow) {
 			super(MESSAGES.getString("button_remove_value"));
-			infoIndex = inputInfoIndex;
-			infoValueIndex = inputInfoValueIndex;
+			valueRow = inputValueRow;
 			addActionListener(new ActionListener() {
 				@Override
 				public void actionPerformed(ActionEvent e) {
@@ -523,7 +944,7 @@ public class PersonPanel extends JPanel {
 							MESSAGES.getString("dialog_confirm_title"),
 							JOptionPane.OK_CANCEL_OPTION);
 					if (input == JOptionPane.OK_OPTION) {
-						removeInformationValue(infoIndex, infoValueIndex);
+						removeInformationValue(valueRow);
 					}
 				}
 			});
@@ -535,13 +956,11 @@ public class PersonPanel extends JPanel {
 		private static final long serialVersionUID = 1L;
 		private ImageViewer imageViewer;
 		private JFrame parentFrame; 
-		private File imageFile;
 		
-		public ImageSelectorButton(JFrame parent, ImageViewer iImageViewer, File importFile) {
+		public ImageSelectorButton(JFrame parent, ImageViewer iImageViewer) {
 			super(MESSAGES.getString("button_select_text"));
 			imageViewer = iImageViewer;
 			parentFrame = parent;
-			imageFile = importFile;
 			addActionListener(new ActionListener() {
 				@Override
 				public void actionPerformed(ActionEvent e) {
@@ -554,15 +973,72 @@ public class PersonPanel extends JPanel {
 					if (dialog.getFile() != null && dialog.getDirectory() != null) {
 						File source = new File(dialog.getDirectory(), dialog.getFile());
 						LOGGER.finest("ImageSelectorButton - source = "+source.toString());
-						int width = IMAGE_IMPORT_TO_DISPLAY_RATIO*imageViewer.getWidth();
-						int height = IMAGE_IMPORT_TO_DISPLAY_RATIO*imageViewer.getHeight();
-						LOGGER.finest("ImageSelectorButton - import file = "+imageFile.toString());
-						FileTools.importAndResizeImage(source, width, height, imageFile);
-						imageViewer.updateImage();
+						// import in the background, the button is enabled again when done
+						setEnabled(false);
+						imageViewer.showProgress(0);
+						new ImageImportWorker(ImageSelectorButton.this, parentFrame, imageViewer, source)
+								.execute();
+					}
+				}
+			});
+		}
+		
+	}
+	
+	
+	/**
+	 * Import an image in the image store outside of the event thread, while the progress is 
+	 * displayed by the viewer. Errors are displayed in a dialog.
+	 */
+	private class ImageImportWorker extends SwingWorker<String, Void> {
+		private JButton selectorButton;
+		private JFrame parentFrame;
+		private ImageViewer imageViewer;
+		private File source;
+		
+		public ImageImportWorker(JButton button, JFrame parent, ImageViewer viewer, File sourceFile) {
+			selectorButton = button;
+			parentFrame = parent;
+			imageViewer = viewer;
+			source = sourceFile;
+			addPropertyChangeListener(new PropertyChangeListener() {
+				@Override
+				public void propertyChange(PropertyChangeEvent evt) {
+					if ("progress".equals(evt.getPropertyName())) {
+						imageViewer.showProgress((Integer) evt.getNewValue());
 					}
 				}
 			});
 		}
 		
+		@Override
+		protected String doInBackground() throws IOException {
+			int width = IMAGE_IMPORT_TO_DISPLAY_RATIO*imageViewer.getWidth();
+			int height = IMAGE_IMPORT_TO_DISPLAY_RATIO*imageViewer.getHeight();
+			return imageStore.importImage(source, width, height, 
+					imageViewer.getWidth(), imageViewer.getHeight(), this::setProgress);
+		}
+		
+		@Override
+		protected void done() {
+			selectorButton.setEnabled(true);
+			try {
+				String imagePath = get();
+				if (!personManager.containsPersonId(person.getId())) {
+					// person deleted during the import: the image is not used
+					imageStore.removeReference(imagePath);
+					return;
+				}
+				changeImage(imagePath, imageViewer);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				LOGGER.warning("Cannot import image "+source+": "+e.getCause().getMessage());
+				JOptionPane.showMessageDialog(parentFrame, e.getCause().getMessage(), "", 
+						JOptionPane.ERROR_MESSAGE);
+				// display the previous image
+				imageViewer.imageChanged();
+			}
+		}
 	}
 }
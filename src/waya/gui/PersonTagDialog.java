@@ -13,6 +13,7 @@ import java.io.IOException;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 import java.util.logging.Logger;
 
 import javax.swing.BorderFactory;
@@ -163,6 +164,7 @@ public class PersonTagDialog extends JDialog {
 		tagListPanel.removeAll();
 		
 		List<String> tags = new LinkedList<>(tagManager.getTags());
+		Set<String> personTags = tagManager.getTagsOf(personId);
 		
 		Collections.sort(tags);
 		for (String tag : tags) {
@@ -170,7 +172,7 @@ public class PersonTagDialog extends JDialog {
 			// create check box
 			JCheckBox checkBox = new JCheckBox();
 			// check box if the person has this tag
-			if (tagManager.getContent(tag).contains(personId)) {
+			if (personTags.contains(tag)) {
 				checkBox.setSelected(true);
 			}
 			checkBox.addItemListener(new ItemListener() {
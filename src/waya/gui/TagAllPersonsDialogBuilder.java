@@ -8,8 +8,7 @@ import java.awt.GridBagLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.IOException;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ResourceBundle;
@@ -40,8 +39,8 @@ public class TagAllPersonsDialogBuilder {
 	private Frame owner;
 	private TagManager tagManager;
 	private PersonManager personManager;
-	private LinkedList<String> personIdList;
-	private LinkedList<String> personNameList;
+	private List<String> personIdList;
+	private List<String> personNameList;
 	
 	
 	/**
@@ -58,23 +57,12 @@ public class TagAllPersonsDialogBuilder {
 		personManager = pm;
 		
 		// list of person Ids, sorted by person name
-		personIdList = new LinkedList<String>(personManager.getPersonIds());		
-		Collections.sort(personIdList, new Comparator<String>() {
-			public int compare(String id1, String id2) {
-				try {
-					String name1 = personManager.getPerson(id1).getName();
-					String name2 = personManager.getPerson(id2).getName();
-					return compare(name1, name2);
-				} catch (IllegalArgumentException e) {
-					return 0;
-				}
-			}
-		});
+		personIdList = personManager.getPersonIdsByName();
 		
 		// list of person names, sorted by construction
-		personNameList = new LinkedList<String>();
+		personNameList = new ArrayList<String>(personIdList.size());
 		for (String personId : personIdList) {
-			personNameList.add(personManager.getPerson(personId).getName());
+			personNameList.add(personManager.getPersonName(personId));
 		}
 	
 	}
@@ -123,7 +111,7 @@ public class TagAllPersonsDialogBuilder {
 				String name = personNameList.get(index);
 				// checkbox
 				JCheckBox checkBox = new JCheckBox();
-				if (tagManager.getContent(tag).contains(personId)) {
+				if (tagManager.isInTag(tag, personId)) {
 					checkBox.setSelected(true);
 				}
 				checkBoxList.add(checkBox);
@@ -13,7 +13,9 @@ import java.util.logging.Logger;
 import javax.swing.JButton;
 import javax.swing.JComboBox;
 import javax.swing.JLabel;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JTextField;
 
 import waya.engine.TagManager;
 
@@ -22,6 +24,7 @@ public class TagsFilterPanel extends JPanel {
 	private static final Logger LOGGER = Logger.getLogger(TagsFilterPanel.class.getPackage().getName());
 	private static final long serialVersionUID = 1L;
 	private JComboBox<String> tagSelector;
+	private JTextField queryField;
 	private TagManager tagManager;
 	private MainFrame mainFrame;
 	private String tagSelected;
@@ -76,6 +79,54 @@ public class TagsFilterPanel extends JPanel {
 		filterConstraints.gridy = 1;
 		add(applyFilterButton, filterConstraints);
 		LOGGER.finest("TagsFilterPanel constructor: applyFilterButton -> done");
+		
+		// tag expression, e.g. "family AND NOT archived"
+		LOGGER.finest("TagsFilterPanel constructor: query");
+		JLabel queryLabel = new JLabel(MESSAGES.getString("label_filter_query_title")+" :   ");
+		filterConstraints.gridx = 0;
+		filterConstraints.gridy = 2;
+		add(queryLabel, filterConstraints);
+		queryField = new JTextField();
+		queryField.setToolTipText(MESSAGES.getString("tooltip_filter_query"));
+		ActionListener queryListener = new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				applyQuery();
+			}
+		};
+		queryField.addActionListener(queryListener);
+		filterConstraints.fill = GridBagConstraints.HORIZONTAL;
+		filterConstraints.weightx = 1;
+		filterConstraints.gridx = 0;
+		filterConstraints.gridy = 3;
+		add(queryField, filterConstraints);
+		JButton applyQueryButton = new JButton(MESSAGES.getString("button_apply_filter"));
+		applyQueryButton.addActionListener(queryListener);
+		filterConstraints.fill = GridBagConstraints.NONE;
+		filterConstraints.weightx = 0;
+		filterConstraints.gridx = 2;
+		filterConstraints.gridy = 3;
+		add(applyQueryButton, filterConstraints);
+		LOGGER.finest("TagsFilterPanel constructor: query -> done");
+	}
+	
+	
+	private void applyQuery() {
+		String query = queryField.getText().trim();
+		if (query.isEmpty()) {
+			// empty expression: back to the tag selector
+			processSelection();
+			mainFrame.setPersonFilterTag(false, tagSelected);
+			return;
+		}
+		try {
+			LOGGER.finest("Tags filter: query '"+query+"'");
+			mainFrame.setPersonFilterQuery(query);
+		} catch (IllegalArgumentException e) {
+			JOptionPane.showMessageDialog(mainFrame, 
+					MESSAGES.getString("dialog_query_error")+"\n"+e.getMessage(), 
+					"", JOptionPane.WARNING_MESSAGE);
+		}
 	}
 	
 	
@@ -0,0 +1,147 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import waya.engine.BinaryCodec;
+import waya.engine.DataFormat;
+import waya.engine.FileDataStore;
+import waya.engine.Information;
+import waya.engine.Person;
+import waya.engine.PersonManager;
+import waya.engine.StoreMigration;
+import waya.engine.TagManager;
+
+class BinaryCodecTest {
+
+	private static File setupDirectory(String name) {
+		String rootDir = System.getProperty("user.dir");
+		File exportDir = FileSystems.getDefault().getPath(rootDir, "data", name).toFile();
+		try {
+			Files.createDirectories(exportDir.toPath());
+			// clean path from files created previously
+			for (File tmpFile : exportDir.listFiles()) {
+				Files.delete(tmpFile.toPath());
+			}
+		} catch (IOException e) {
+			fail("cannot setup directory: "+exportDir);
+		}
+		return exportDir;
+	}
+
+
+	private static Person createPerson(String id) {
+		Person person = new Person(id, "Zoé \"Z\" Ölçer");
+		person.setImagePath("images/zoe.png");
+		Information email = new Information("Email");
+		email.addValue("zoe@example.com");
+		email.addValue("");
+		person.addInformation(email);
+		Information otherEmail = new Information("Email");
+		otherEmail.addValue("zoe@work.example.com");
+		person.addInformation(otherEmail);
+		person.addInformation(new Information("Birthday"));
+		return person;
+	}
+
+
+	@Test
+	void testPerson() {
+		Person person = createPerson("AB12");
+		byte[] binary = BinaryCodec.encodePerson(person);
+		assertTrue(BinaryCodec.isBinary(binary));
+		assertFalse(BinaryCodec.isBinary(person.toJson().getBytes(StandardCharsets.UTF_8)));
+		assertTrue(binary.length < person.toJson().getBytes(StandardCharsets.UTF_8).length);
+
+		// lossless in both directions
+		Person decoded = BinaryCodec.decodePerson(binary);
+		assertEquals(person, decoded);
+		assertEquals(person, Person.fromJson(decoded.toJson()));
+		assertArrayEquals(binary, BinaryCodec.encodePerson(Person.fromJson(person.toJson())));
+		assertEquals(person, DataFormat.decodePerson(DataFormat.JSON.encode(person)));
+		assertEquals(person, DataFormat.decodePerson(DataFormat.BINARY.encode(person)));
+
+		// malformed content
+		assertThrows(IllegalArgumentException.class,
+				() -> BinaryCodec.decodePerson(Arrays.copyOf(binary, binary.length-1)));
+		byte[] longer = Arrays.copyOf(binary, binary.length+1);
+		assertThrows(IllegalArgumentException.class, () -> BinaryCodec.decodePerson(longer));
+		assertThrows(IllegalArgumentException.class,
+				() -> BinaryCodec.decodeTags(binary));
+	}
+
+
+	@Test
+	void testTags() {
+		Map<String, List<String>> tags = new LinkedHashMap<>();
+		tags.put("family", Arrays.asList("AAAA", "BBBB"));
+		tags.put("friends", Arrays.asList("BBBB", "CCCC", "AAAA"));
+		tags.put("empty", Arrays.asList());
+		assertEquals(tags, BinaryCodec.decodeTags(BinaryCodec.encodeTags(tags)));
+
+		// number of items larger than the content: rejected before any allocation
+		byte[] binary = BinaryCodec.encodeTags(Collections.singletonMap("tag", Arrays.asList()));
+		byte[] corrupt = Arrays.copyOf(binary, binary.length+4);
+		byte[] hugeCount = {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07};
+		System.arraycopy(hugeCount, 0, corrupt, binary.length-1, hugeCount.length);
+		assertThrows(IllegalArgumentException.class, () -> BinaryCodec.decodeTags(corrupt));
+
+		// missing tag name
+		byte[] noName = BinaryCodec.encodeTags(Collections.singletonMap(null, Arrays.asList()));
+		assertThrows(IllegalArgumentException.class, () -> BinaryCodec.decodeTags(noName));
+	}
+
+
+	@Test
+	void testManagers() throws IOException {
+		File directory = setupDirectory("test_binary");
+		FileDataStore store = new FileDataStore(directory);
+
+		// write in binary
+		PersonManager pm = new PersonManager(4, store);
+		pm.setDataFormat(DataFormat.BINARY);
+		pm.addPerson(createPerson("AAAA"));
+		pm.addPerson(createPerson("BBBB"));
+		pm.save();
+		TagManager tm = new TagManager(store);
+		tm.setDataFormat(DataFormat.BINARY);
+		tm.addTag("work");
+		tm.addToTag("work", "BBBB");
+		tm.addToTag("work", "AAAA");
+		tm.save();
+		assertTrue(BinaryCodec.isBinary(store.read("AAAA_data")));
+		assertTrue(BinaryCodec.isBinary(store.read("tags")));
+
+		// read whatever the format selected
+		PersonManager pmLoaded = PersonManager.load(store, 4, 2);
+		assertEquals(2, pmLoaded.getPersonIds().size());
+		assertEquals(createPerson("AAAA"), pmLoaded.getPerson("AAAA"));
+		TagManager tmLoaded = TagManager.load(store);
+		assertArrayEquals(new String[] {"BBBB", "AAAA"},
+				tmLoaded.getContent("work").toArray(new String[0]));
+
+		// convert back to JSON
+		assertEquals(3, StoreMigration.convert(store, DataFormat.JSON));
+		assertFalse(BinaryCodec.isBinary(store.read("AAAA_data")));
+		assertFalse(BinaryCodec.isBinary(store.read("tags")));
+		assertEquals(createPerson("BBBB"), PersonManager.load(directory, 4).getPerson("BBBB"));
+		assertEquals(2, TagManager.load(store).getContent("work").size());
+	}
+}
@@ -2,16 +2,28 @@ package test;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import javax.imageio.ImageIO;
 
@@ -64,7 +76,52 @@ class FileToolsTest {
 	}
 	
 	@Test
-	void testImportAndResizeImage() {
+	void testOverwriteFiles() throws IOException {
+		Map<String, byte[]> contents = new LinkedHashMap<>();
+		for (int i=0; i<10; i++) {
+			String fileName = EXPORT_DIR + FS_SEP + "testOverwriteFiles" + i + ".txt";
+			FileTools.overwriteFile(fileName, "old".getBytes(StandardCharsets.UTF_8), true);
+			contents.put(fileName, ("new content "+i).getBytes(StandardCharsets.UTF_8));
+		}
+		FileTools.overwriteFiles(contents, true);
+		
+		for (String fileName : contents.keySet()) {
+			assertArrayEquals(contents.get(fileName), Files.readAllBytes(FS.getPath(fileName)));
+			Files.delete(FS.getPath(fileName));
+		}
+		// no temporary file left
+		for (File file : EXPORT_DIR.listFiles()) {
+			assertFalse(file.getName().startsWith("testOverwriteFiles") 
+					&& file.getName().endsWith(FileTools.TEMP_EXTENSION), file.getName());
+		}
+	}
+	
+	
+	@Test
+	void testReadFile() throws IOException {
+		// empty, tiny, buffered and memory-mapped files
+		int[] sizes = {0, 10, 50000, 1000000};
+		for (int size : sizes) {
+			StringBuilder builder = new StringBuilder();
+			while (builder.length() < size) {
+				builder.append("Zoé Ölçer ").append(builder.length()).append('\n');
+			}
+			String content = builder.toString();
+			Path filePath = FS.getPath(EXPORT_DIR.toString(), "testReadFile.txt");
+			FileTools.overwriteTextFile(filePath.toString(), content);
+			
+			assertArrayEquals(Files.readAllBytes(filePath), FileTools.readFile(filePath));
+			assertEquals(content, FileTools.readTextFile(filePath));
+			// the buffer reused by the thread does not keep previous content
+			assertEquals(content, FileTools.readTextFile(filePath));
+			
+			Files.delete(filePath);
+		}
+	}
+	
+	
+	@Test
+	void testImportAndResizeImage() throws IOException {
 		int width = 200;
 		int height = 150;
 		
@@ -102,6 +159,70 @@ class FileToolsTest {
 	}
 	
 	
+	@Test
+	void testImportWithThumbnail() throws IOException {
+		File source = new File(DATA_DIR + FS_SEP + "blue.jpg");
+		File destination = new File(EXPORT_DIR + FS_SEP + "blue_import.jpg");
+		File thumbnail = new File(EXPORT_DIR + FS_SEP + "blue_thumbnail.png");
+		List<Integer> progress = new ArrayList<>();
+		FileTools.importAndResizeImage(source, 200, 150, destination, 50, 50, thumbnail, progress::add);
+		
+		// both sizes written, in the format of their extension
+		BufferedImage image = ImageIO.read(destination);
+		assertTrue(image.getWidth() == 200 || image.getHeight() == 150);
+		BufferedImage thumbnailImage = ImageIO.read(thumbnail);
+		assertTrue(thumbnailImage.getWidth() == 50 || thumbnailImage.getHeight() == 50);
+		assertTrue(thumbnailImage.getWidth() <= 50 && thumbnailImage.getHeight() <= 50);
+		assertEquals(0, (int) progress.get(0));
+		assertEquals(100, (int) progress.get(progress.size()-1));
+		
+		// errors are reported to the caller
+		assertThrows(IOException.class, () -> FileTools.importAndResizeImage(
+				new File(DATA_DIR + FS_SEP + "missing.png"), 200, 150, destination));
+		assertThrows(IOException.class, () -> FileTools.importAndResizeImage(
+				source, 200, 150, new File(EXPORT_DIR + FS_SEP + "blue.gif")));
+		
+		Files.delete(destination.toPath());
+		Files.delete(thumbnail.toPath());
+	}
+	
+	
+	@Test
+	void testReadImage() throws IOException {
+		assertEquals(1, FileTools.getSubsampling(300, 200, 200, 150));
+		assertEquals(4, FileTools.getSubsampling(2400, 1800, 300, 300));
+		
+		// large image decoded at twice the resized size at least
+		File source = new File(EXPORT_DIR + FS_SEP + "large.png");
+		ImageIO.write(new BufferedImage(2400, 1800, BufferedImage.TYPE_INT_RGB), "png", source);
+		BufferedImage image = FileTools.readImage(source, 200, 150);
+		assertEquals(400, image.getWidth());
+		assertEquals(300, image.getHeight());
+		// small image fully decoded
+		image = FileTools.readImage(source, 2000, 2000);
+		assertEquals(2400, image.getWidth());
+		
+		Files.delete(source.toPath());
+		assertThrows(IOException.class, () -> FileTools.readImage(source, 200, 150));
+	}
+	
+	
+	@Test
+	void testResizeCustomImage() {
+		// RGB bytes in this order: not one of the predefined types
+		ColorModel colorModel = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB),
+				false, false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+		WritableRaster raster = Raster.createInterleavedRaster(DataBuffer.TYPE_BYTE, 1200, 900, 
+				1200*3, 3, new int[] {0, 1, 2}, null);
+		BufferedImage image = new BufferedImage(colorModel, raster, false, null);
+		assertEquals(BufferedImage.TYPE_CUSTOM, image.getType());
+		
+		BufferedImage resizedImage = FileTools.resizeImage(image, 200, 150);
+		assertEquals(200, resizedImage.getWidth());
+		assertEquals(150, resizedImage.getHeight());
+	}
+	
+	
 	@Test
 	void testResizeImage() {
 		int width = 200;
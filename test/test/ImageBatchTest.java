@@ -0,0 +1,72 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+
+import waya.engine.ImageBatch;
+
+class ImageBatchTest {
+
+	private static File setupDirectory(String name) {
+		String rootDir = System.getProperty("user.dir");
+		File exportDir = FileSystems.getDefault().getPath(rootDir, "data", name).toFile();
+		try {
+			Files.createDirectories(exportDir.toPath());
+			// clean path from files created previously
+			for (File tmpFile : exportDir.listFiles()) {
+				Files.delete(tmpFile.toPath());
+			}
+		} catch (IOException e) {
+			fail("cannot setup directory: "+exportDir);
+		}
+		return exportDir;
+	}
+
+
+	@Test
+	void testRun() throws IOException {
+		File directory = setupDirectory("test_image_batch");
+		File large = new File(directory, "AAAA"+ImageBatch.IMAGE_END);
+		File small = new File(directory, "BBBB"+ImageBatch.IMAGE_END);
+		File broken = new File(directory, "CCCC"+ImageBatch.IMAGE_END);
+		ImageIO.write(new BufferedImage(1200, 900, BufferedImage.TYPE_INT_RGB), "png", large);
+		ImageIO.write(new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB), "png", small);
+		Files.write(broken.toPath(), "not an image".getBytes(StandardCharsets.UTF_8));
+
+		ImageBatch.Result result = ImageBatch.run(directory, 600, 150, 2);
+		assertEquals(2, result.getProcessed());
+		assertEquals(0, result.getUpToDate());
+		assertEquals(1, result.getFailed());
+		assertEquals(1, result.getErrors().size());
+		assertTrue(result.getErrors().get(0).startsWith(broken.toString()));
+		assertTrue(result.getBytes() > 0);
+
+		// large image resized, small image kept, thumbnails written
+		assertEquals(600, ImageIO.read(large).getWidth());
+		assertEquals(400, ImageIO.read(small).getWidth());
+		BufferedImage thumbnail = ImageIO.read(new File(directory, "AAAA"+ImageBatch.THUMBNAIL_END));
+		assertEquals(150, thumbnail.getWidth());
+		assertEquals(112, thumbnail.getHeight());
+		assertEquals(150, ImageIO.read(new File(directory, "BBBB"+ImageBatch.THUMBNAIL_END)).getWidth());
+
+		// up to date
+		result = ImageBatch.run(directory, 600, 150, 2);
+		assertEquals(0, result.getProcessed());
+		assertEquals(2, result.getUpToDate());
+
+		// new thumbnail size
+		result = ImageBatch.run(directory, 600, 100, 2);
+		assertEquals(2, result.getProcessed());
+		assertEquals(100, ImageIO.read(new File(directory, "AAAA"+ImageBatch.THUMBNAIL_END)).getWidth());
+	}
+}
@@ -0,0 +1,94 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+import javax.swing.SwingUtilities;
+
+import org.junit.jupiter.api.Test;
+
+import waya.gui.ImageCache;
+
+class ImageCacheTest {
+
+	private static File setupDirectory(String name) {
+		String rootDir = System.getProperty("user.dir");
+		File exportDir = FileSystems.getDefault().getPath(rootDir, "data", name).toFile();
+		try {
+			Files.createDirectories(exportDir.toPath());
+			// clean path from files created previously
+			for (File tmpFile : exportDir.listFiles()) {
+				Files.delete(tmpFile.toPath());
+			}
+		} catch (IOException e) {
+			fail("cannot setup directory: "+exportDir);
+		}
+		return exportDir;
+	}
+
+
+	private static File createImage(File directory, String name, int width, int height) throws IOException {
+		File file = new File(directory, name);
+		ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", file);
+		return file;
+	}
+
+
+	/**
+	 * Load an image and wait for the callback
+	 */
+	private static BufferedImage load(ImageCache cache, File file, double scale) throws InterruptedException {
+		final BufferedImage[] result = new BufferedImage[1];
+		final boolean[] onEventThread = {false};
+		CountDownLatch latch = new CountDownLatch(1);
+		cache.load(file, scale, image -> {
+			result[0] = image;
+			onEventThread[0] = SwingUtilities.isEventDispatchThread();
+			latch.countDown();
+		});
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		assertTrue(onEventThread[0]);
+		return result[0];
+	}
+
+
+	@Test
+	void testLoad() throws IOException, InterruptedException {
+		File directory = setupDirectory("test_image_cache");
+		File first = createImage(directory, "first.png", 400, 200);
+		File second = createImage(directory, "second.png", 400, 200);
+		// room for a single scaled image (100x50)
+		ImageCache cache = new ImageCache(100*50*4);
+
+		// decoded and scaled, then kept
+		assertNull(cache.getIfPresent(first, 0.25));
+		BufferedImage image = load(cache, first, 0.25);
+		assertEquals(100, image.getWidth());
+		assertEquals(50, image.getHeight());
+		assertSame(image, cache.getIfPresent(first, 0.25));
+		assertNull(cache.getIfPresent(first, 0.5));
+
+		// least recently used image removed
+		load(cache, second, 0.25);
+		assertNull(cache.getIfPresent(first, 0.25));
+		assertNotNull(cache.getIfPresent(second, 0.25));
+		assertEquals(100*50*4, cache.getSizeInBytes());
+
+		// replaced image
+		createImage(directory, "second.png", 40, 20);
+		cache.invalidate(second);
+		assertNull(cache.getIfPresent(second, 0.25));
+		assertEquals(10, load(cache, second, 0.25).getWidth());
+
+		// missing image
+		assertNull(load(cache, new File(directory, "missing.png"), 0.25));
+	}
+}
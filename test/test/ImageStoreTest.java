@@ -0,0 +1,145 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+
+import waya.engine.FileDataStore;
+import waya.engine.ImageStore;
+import waya.engine.Person;
+import waya.engine.PersonManager;
+
+class ImageStoreTest {
+
+	private static File setupDirectory(String name) {
+		String rootDir = System.getProperty("user.dir");
+		File exportDir = FileSystems.getDefault().getPath(rootDir, "data", name).toFile();
+		try {
+			Files.createDirectories(exportDir.toPath());
+			// clean path from files created previously
+			for (File tmpFile : exportDir.listFiles()) {
+				if (tmpFile.isDirectory()) {
+					for (File image : tmpFile.listFiles()) {
+						Files.delete(image.toPath());
+					}
+				}
+				Files.delete(tmpFile.toPath());
+			}
+		} catch (IOException e) {
+			fail("cannot setup directory: "+exportDir);
+		}
+		return exportDir;
+	}
+
+
+	private static File createImage(File directory, String name, Color color) throws IOException {
+		BufferedImage image = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g2d = image.createGraphics();
+		g2d.setColor(color);
+		g2d.fillRect(100, 100, 400, 300);
+		g2d.dispose();
+		File file = new File(directory, name);
+		ImageIO.write(image, name.endsWith(".png") ? "png" : "bmp", file);
+		return file;
+	}
+
+
+	@Test
+	void testImportImage() throws IOException {
+		File directory = setupDirectory("test_image_store");
+		File logo = createImage(directory, "logo.png", Color.RED);
+		File logoCopy = createImage(directory, "logo_copy.bmp", Color.RED);
+		File other = createImage(directory, "other.png", Color.BLUE);
+		ImageStore store = new ImageStore(directory);
+
+		// identical images stored once
+		List<Integer> progress = new ArrayList<>();
+		String path = store.importImage(logo, 400, 400, 100, 100, progress::add);
+		assertEquals(100, (int) progress.get(progress.size()-1));
+		assertTrue(ImageStore.isStored(path));
+		assertEquals(path, store.importImage(logoCopy, 400, 400, 100, 100, null));
+		assertEquals(2, store.getReferenceCount(path));
+		assertEquals(400, ImageIO.read(store.getImageFile(path)).getWidth());
+		assertEquals(100, ImageIO.read(store.getThumbnailFile(path)).getWidth());
+		String otherPath = store.importImage(other, 400, 400, 100, 100, null);
+		assertNotEquals(path, otherPath);
+		assertEquals(4, new File(directory, ImageStore.IMAGES_DIR).list().length);
+
+		// deleted with its last reference
+		store.removeReference(path);
+		assertTrue(store.getImageFile(path).isFile());
+		store.removeReference(path);
+		assertFalse(store.getImageFile(path).exists());
+		assertFalse(store.getThumbnailFile(path).exists());
+		assertTrue(store.getImageFile(otherPath).isFile());
+
+		// import failure
+		assertThrows(IOException.class, 
+				() -> store.importImage(new File(directory, "missing.png"), 400, 400, 100, 100, null));
+	}
+
+
+	@Test
+	void testConcurrentImports() throws IOException, InterruptedException, ExecutionException {
+		File directory = setupDirectory("test_image_store_concurrent");
+		File logo = createImage(directory, "logo.png", Color.RED);
+		ImageStore store = new ImageStore(directory);
+
+		// the image is written once, and referenced by each import
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		List<Future<String>> imports = new ArrayList<>();
+		for (int i=0; i<4; i++) {
+			imports.add(executor.submit(() -> store.importImage(logo, 400, 400, 100, 100, null)));
+		}
+		String path = imports.get(0).get();
+		for (Future<String> result : imports) {
+			assertEquals(path, result.get());
+		}
+		executor.shutdown();
+		assertEquals(4, store.getReferenceCount(path));
+		assertEquals(400, ImageIO.read(store.getImageFile(path)).getWidth());
+		// image and thumbnail only, no temporary file left
+		assertEquals(2, new File(directory, ImageStore.IMAGES_DIR).list().length);
+	}
+
+
+	@Test
+	void testLoad() throws IOException {
+		File directory = setupDirectory("test_image_store_load");
+		File logo = createImage(directory, "logo.png", Color.RED);
+		ImageStore store = new ImageStore(directory);
+		String path = store.importImage(logo, 400, 400, 100, 100, null);
+
+		// references counted from the persons
+		PersonManager pm = new PersonManager(4, new FileDataStore(directory));
+		for (String id : new String[] {"AAAA", "BBBB"}) {
+			Person person = new Person(id, id);
+			person.setImagePath(path);
+			pm.addPerson(person);
+		}
+		pm.addPerson(new Person("CCCC", "no image"));
+		ImageStore loadedStore = ImageStore.load(directory, pm);
+		assertEquals(2, loadedStore.getReferenceCount(path));
+		assertEquals(0, loadedStore.getReferenceCount(""));
+
+		loadedStore.removeReference(path);
+		loadedStore.removeReference(path);
+		assertFalse(store.getImageFile(path).exists());
+	}
+}
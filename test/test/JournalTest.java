@@ -0,0 +1,190 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import waya.engine.FileDataStore;
+import waya.engine.Journal;
+import waya.engine.PersistenceService;
+import waya.engine.Person;
+import waya.engine.PersonManager;
+import waya.engine.TagManager;
+
+class JournalTest {
+	
+	private static File setupDirectory(String name) {
+		String rootDir = System.getProperty("user.dir");
+		File exportDir = FileSystems.getDefault().getPath(rootDir, "data", name).toFile();
+		if (!exportDir.isDirectory()) {
+			try {
+				Files.createDirectories(exportDir.toPath());
+			} catch (IOException e) {
+				fail("cannot create directory: "+exportDir);
+			}
+		} else {
+			// clean path from files created previously
+			for (File tmpFile : exportDir.listFiles()) {
+				try {
+					Files.deleteIfExists(tmpFile.toPath());
+				} catch (IOException e) {
+					fail("cannot delete file: "+tmpFile.toString());
+				}
+			}
+		}
+		return exportDir;
+	}
+	
+	
+	@Test
+	void testAppendAndCompact() throws IOException {
+		File directory = setupDirectory("test_journal");
+		File file = new File(directory, "test.journal");
+		
+		Journal journal = new Journal(file, 100);
+		journal.append("addTag", "work");
+		journal.append("addToTag", "work", "line\nbreak \"quoted\"");
+		assertFalse(journal.needsCompaction());
+		List<String[]> entries = journal.readEntries();
+		assertEquals(2, entries.size());
+		assertEquals("addToTag", entries.get(1)[0]);
+		assertEquals("line\nbreak \"quoted\"", entries.get(1)[2]);
+		
+		// compaction: the journal restarts empty and the snapshot is written
+		final boolean[] snapshotWritten = {false};
+		journal.compact(() -> { snapshotWritten[0] = true; });
+		journal.append("removeTag", "work");
+		journal.awaitCompaction();
+		assertTrue(snapshotWritten[0]);
+		entries = journal.readEntries();
+		assertEquals(1, entries.size());
+		assertEquals("removeTag", entries.get(0)[0]);
+		
+		// failed snapshot: the operations of the old journal are kept
+		journal.compact(() -> { throw new IOException("disk full"); });
+		journal.append("addTag", "pub");
+		try {
+			journal.awaitCompaction();
+			fail("snapshot failure not reported");
+		} catch (IOException e) {
+			// expected
+		}
+		assertEquals(2, journal.readEntries().size());
+		journal.close();
+	}
+	
+	
+	@Test
+	void testReplay() throws IOException {
+		File directory = setupDirectory("test_journal_replay");
+		int idLength = 6;
+		File tagsJournal = new File(directory, "tags.journal");
+		File personsJournal = new File(directory, "persons.journal");
+		
+		// snapshot
+		TagManager tm = new TagManager(directory);
+		tm.addTag("work");
+		tm.save();
+		PersonManager pm = new PersonManager(idLength, directory);
+		Person bill = new Person(pm.createPersonId(), "Bill");
+		pm.addPerson(bill);
+		pm.save();
+		
+		// operations logged in the journals only
+		tm.openJournal(tagsJournal);
+		pm.openJournal(personsJournal);
+		tm.addTag("friends");
+		tm.addToTag("work", bill.getId());
+		tm.renameTag("friends", "pub");
+		// no operation logged for an item in no tag
+		long tagsJournalLength = tagsJournal.length();
+		tm.removeFromAllTags("nobody");
+		assertEquals(tagsJournalLength, tagsJournal.length());
+		Person bob = new Person(pm.createPersonId(), "Bob");
+		pm.addPerson(bob);
+		Person billUpdate = pm.getPerson(bill.getId());
+		billUpdate.setName("William");
+		pm.setPerson(bill.getId(), billUpdate);
+		tm.save();
+		pm.save();
+		// simulate a crash: the journals are not compacted
+		tm.closeJournal();
+		pm.closeJournal();
+		assertFalse(TagManager.load(directory).hasTag("pub"));
+		assertFalse(PersonManager.load(new FileDataStore(directory), idLength, 1)
+				.containsPersonId(bob.getId()));
+		
+		// load the snapshot and replay the journals
+		TagManager loadedTm = TagManager.load(directory);
+		loadedTm.openJournal(tagsJournal);
+		assertTrue(loadedTm.hasTag("pub"));
+		assertFalse(loadedTm.hasTag("friends"));
+		assertTrue(loadedTm.getContent("work").contains(bill.getId()));
+		
+		PersonManager loadedPm = PersonManager.load(new FileDataStore(directory), idLength, 1);
+		loadedPm.openJournal(personsJournal);
+		assertTrue(loadedPm.containsPersonId(bob.getId()));
+		assertEquals("William", loadedPm.getPerson(bill.getId()).getName());
+		
+		// the replayed operations are compacted in new snapshots
+		loadedTm.closeJournal();
+		loadedPm.closeJournal();
+		assertEquals(0, tagsJournal.length());
+		assertEquals(0, personsJournal.length());
+		assertTrue(TagManager.load(directory).hasTag("pub"));
+		assertEquals("William", PersonManager.load(new FileDataStore(directory), idLength, 1)
+				.getPerson(bill.getId()).getName());
+	}
+	
+	
+	@Test
+	void testFailedSnapshot() throws IOException {
+		File directory = setupDirectory("test_journal_failed_snapshot");
+		int idLength = 6;
+		File personsJournal = new File(directory, "persons.journal");
+		final boolean[] failing = {true};
+		FileDataStore store = new FileDataStore(directory) {
+			@Override
+			public void writeAll(Map<String, byte[]> contents) throws IOException {
+				if (failing[0]) {
+					throw new IOException("device unavailable");
+				}
+				super.writeAll(contents);
+			}
+		};
+		PersistenceService service = new PersistenceService(store, 0);
+		PersonManager pm = new PersonManager(idLength, store);
+		pm.setPersistenceService(service);
+		pm.openJournal(personsJournal);
+		
+		// the snapshot fails: the old journal is kept
+		Person alice = new Person(pm.createPersonId(), "Alice");
+		pm.addPerson(alice);
+		pm.saveAll();
+		assertThrows(IOException.class, service::flush);
+		assertTrue(new File(directory, "persons.journal.old").isFile());
+		
+		// the next snapshot writes Alice again before deleting the old journal
+		failing[0] = false;
+		Person bob = new Person(pm.createPersonId(), "Bob");
+		pm.addPerson(bob);
+		pm.save();
+		pm.closeJournal();
+		service.close();
+		assertFalse(new File(directory, "persons.journal.old").exists());
+		PersonManager loadedPm = PersonManager.load(new FileDataStore(directory), idLength, 1);
+		assertTrue(loadedPm.containsPersonId(alice.getId()));
+		assertTrue(loadedPm.containsPersonId(bob.getId()));
+	}
+}
@@ -0,0 +1,195 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import waya.engine.FileDataStore;
+import waya.engine.Information;
+import waya.engine.PackedDataStore;
+import waya.engine.Person;
+import waya.engine.PersonManager;
+import waya.engine.StoreMigration;
+import waya.engine.TagManager;
+
+class PackedDataStoreTest {
+	
+	private static File setupDirectory(String name) {
+		String rootDir = System.getProperty("user.dir");
+		File exportDir = FileSystems.getDefault().getPath(rootDir, "data", name).toFile();
+		if (!exportDir.isDirectory()) {
+			try {
+				Files.createDirectories(exportDir.toPath());
+			} catch (IOException e) {
+				fail("cannot create directory: "+exportDir);
+			}
+		} else {
+			// clean path from files created previously
+			for (File tmpFile : exportDir.listFiles()) {
+				try {
+					Files.deleteIfExists(tmpFile.toPath());
+				} catch (IOException e) {
+					fail("cannot delete file: "+tmpFile.toString());
+				}
+			}
+		}
+		return exportDir;
+	}
+	
+	
+	private static byte[] bytes(String content) {
+		return content.getBytes(StandardCharsets.UTF_8);
+	}
+	
+
+	@Test
+	void testReadWrite() throws IOException {
+		File file = new File(setupDirectory("test_pack"), "test.pack");
+		
+		PackedDataStore store = new PackedDataStore(file);
+		store.write("a", bytes("first"));
+		store.write("b", bytes("second"));
+		store.write("a", bytes("first, updated"));
+		store.write("c", bytes("third"));
+		store.delete("c");
+		store.delete("unknown");
+		assertArrayEquals(bytes("first, updated"), store.read("a"));
+		assertArrayEquals(bytes("second"), store.read("b"));
+		assertTrue(store.contains("a"));
+		assertFalse(store.contains("c"));
+		assertEquals(2, store.keys().size());
+		assertThrows(IOException.class, () -> store.read("c"));
+		assertTrue(store.getGarbageSize() > 0);
+		
+		// several entries written together
+		Map<String, byte[]> contents = new LinkedHashMap<>();
+		contents.put("e", bytes("fifth"));
+		contents.put("f", bytes("sixth"));
+		store.writeAll(contents);
+		assertArrayEquals(bytes("sixth"), store.read("f"));
+		assertTrue(store.version("f") > store.version("e"));
+		store.delete("e");
+		store.delete("f");
+		assertTrue(store.isSync());
+		store.close();
+		
+		// reopen: the index is rebuilt from the file
+		PackedDataStore reopened = new PackedDataStore(file);
+		assertArrayEquals(bytes("first, updated"), reopened.read("a"));
+		assertArrayEquals(bytes("second"), reopened.read("b"));
+		assertFalse(reopened.contains("c"));
+		
+		// compact: same content and stamps, no garbage
+		long sizeBefore = file.length();
+		long versionA = reopened.version("a");
+		long versionB = reopened.version("b");
+		assertTrue(versionA > versionB);
+		reopened.compact();
+		assertEquals(0, reopened.getGarbageSize());
+		assertTrue(file.length() < sizeBefore);
+		assertArrayEquals(bytes("first, updated"), reopened.read("a"));
+		assertArrayEquals(bytes("second"), reopened.read("b"));
+		assertEquals(versionA, reopened.version("a"));
+		assertEquals(versionB, reopened.version("b"));
+		// stamps are not given again, including the stamp of the deleted entry
+		reopened.write("d", bytes("fourth"));
+		assertTrue(reopened.version("d") > versionA+1);
+		reopened.close();
+		
+		// a record truncated by a crash is dropped
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(raf.length()-2);
+		}
+		PackedDataStore recovered = new PackedDataStore(file);
+		assertFalse(recovered.contains("d"));
+		assertArrayEquals(bytes("second"), recovered.read("b"));
+		recovered.write("d", bytes("fourth"));
+		assertArrayEquals(bytes("fourth"), recovered.read("d"));
+		recovered.close();
+	}
+	
+	
+	@Test
+	void testFormatVersion1() throws IOException {
+		File file = new File(setupDirectory("test_pack_v1"), "test.pack");
+		// header and put records without sequence numbers
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.write(bytes("WAYAPACK"));
+			raf.writeInt(1);
+			for (String[] entry : new String[][] {{"a", "first"}, {"b", "second"}, {"a", "third"}}) {
+				raf.writeByte(1);
+				raf.writeInt(entry[0].length());
+				raf.write(bytes(entry[0]));
+				raf.writeInt(entry[1].length());
+				raf.write(bytes(entry[1]));
+			}
+		}
+		
+		// converted when opened
+		PackedDataStore store = new PackedDataStore(file);
+		assertArrayEquals(bytes("third"), store.read("a"));
+		assertArrayEquals(bytes("second"), store.read("b"));
+		assertEquals(0, store.getGarbageSize());
+		long versionA = store.version("a");
+		assertTrue(versionA > store.version("b"));
+		store.write("c", bytes("fourth"));
+		store.close();
+		
+		PackedDataStore reopened = new PackedDataStore(file);
+		assertArrayEquals(bytes("third"), reopened.read("a"));
+		assertArrayEquals(bytes("fourth"), reopened.read("c"));
+		assertEquals(versionA, reopened.version("a"));
+		assertTrue(reopened.version("c") > versionA);
+		reopened.close();
+	}
+	
+	
+	@Test
+	void testMigration() throws IOException {
+		File directory = setupDirectory("test_migration");
+		int idLength = 6;
+		
+		// per-file layout
+		PersonManager pm = new PersonManager(idLength, directory);
+		TagManager tm = new TagManager(directory);
+		tm.addTag("work");
+		for (int i=0; i<20; i++) {
+			Person person = new Person(pm.createPersonId(), "Person "+i);
+			Information info = new Information("index");
+			info.addValue(Integer.toString(i));
+			person.addInformation(info);
+			pm.addPerson(person);
+			tm.addToTag("work", person.getId());
+		}
+		pm.save();
+		tm.save();
+		
+		// migrate to a packed store and load from it
+		PackedDataStore packed = new PackedDataStore(new File(directory, "waya.pack"));
+		int count = StoreMigration.migrate(new FileDataStore(directory), packed);
+		assertEquals(21, count);
+		
+		PersonManager loadedPm = PersonManager.load(packed, idLength, 2);
+		TagManager loadedTm = TagManager.load(packed);
+		assertEquals(pm.getPersonIds(), loadedPm.getPersonIds());
+		for (String personId : pm.getPersonIds()) {
+			assertEquals(pm.getPerson(personId).getName(), loadedPm.getPerson(personId).getName());
+		}
+		assertEquals(tm.getContent("work"), loadedTm.getContent("work"));
+		packed.close();
+	}
+}
@@ -0,0 +1,222 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import waya.engine.FileDataStore;
+import waya.engine.PersistenceService;
+import waya.engine.Person;
+import waya.engine.PersonManager;
+import waya.engine.TagManager;
+
+class PersistenceServiceTest {
+
+	private static File setupDirectory(String name) {
+		String rootDir = System.getProperty("user.dir");
+		File exportDir = FileSystems.getDefault().getPath(rootDir, "data", name).toFile();
+		try {
+			Files.createDirectories(exportDir.toPath());
+			// clean path from files created previously
+			for (File tmpFile : exportDir.listFiles()) {
+				Files.delete(tmpFile.toPath());
+			}
+		} catch (IOException e) {
+			fail("cannot setup directory: "+exportDir);
+		}
+		return exportDir;
+	}
+
+
+	@Test
+	void testCoalescedWrites() throws IOException {
+		File directory = setupDirectory("test_persistence");
+
+		// store counting the batches and the entries written
+		final int[] batches = {0};
+		final int[] writes = {0};
+		FileDataStore store = new FileDataStore(directory) {
+			@Override
+			public void writeAll(Map<String, byte[]> contents) throws IOException {
+				batches[0]++;
+				writes[0] += contents.size();
+				super.writeAll(contents);
+			}
+		};
+		store.setSync(false);
+		// long delay: the requests are written by flush()
+		PersistenceService service = new PersistenceService(store, 60000);
+
+		PersonManager pm = new PersonManager(4, store);
+		pm.setPersistenceService(service);
+		TagManager tm = new TagManager(store);
+		tm.setPersistenceService(service);
+
+		// the same person and the tags saved several times
+		Person person = new Person("AAAA", "Alice");
+		pm.addPerson(person);
+		pm.save();
+		for (int i=0; i<5; i++) {
+			person.setImagePath("image"+i+".png");
+			pm.setPerson(person.getId(), person);
+			pm.save();
+			tm.addTag("tag"+i);
+			tm.save();
+		}
+		pm.addPerson(new Person("BBBB", "Bob"));
+		pm.save();
+		assertTrue(service.hasPendingWrites());
+		assertFalse(store.contains("AAAA_data"));
+
+		// a single batch, with the last version of each entry
+		service.flush();
+		assertFalse(service.hasPendingWrites());
+		assertEquals(1, batches[0]);
+		assertEquals(3, writes[0]);
+		assertEquals("image4.png", PersonManager.load(store, 4, 1).getPerson("AAAA").getImagePath());
+		assertEquals(5, TagManager.load(store).getTags().size());
+
+		// a removal replaces the pending write
+		person.setName("Alice B.");
+		pm.setPerson(person.getId(), person);
+		pm.save();
+		pm.removePerson("AAAA");
+		pm.save();
+		service.close();
+		assertEquals(3, writes[0]);
+		assertFalse(store.contains("AAAA_data"));
+		assertTrue(store.contains("BBBB_data"));
+	}
+
+
+	@Test
+	void testFailedWrite() throws IOException {
+		File directory = setupDirectory("test_persistence_error");
+		final boolean[] failing = {true};
+		FileDataStore store = new FileDataStore(directory) {
+			@Override
+			public void writeAll(Map<String, byte[]> contents) throws IOException {
+				if (failing[0]) {
+					throw new IOException("device unavailable");
+				}
+				super.writeAll(contents);
+			}
+		};
+		PersistenceService service = new PersistenceService(store, 60000);
+		service.write("entry", "content".getBytes(StandardCharsets.UTF_8));
+
+		// the error is reported and the request is kept
+		assertThrows(IOException.class, () -> service.flush());
+		assertTrue(service.hasPendingWrites());
+
+		failing[0] = false;
+		service.close();
+		assertEquals("content", new String(store.read("entry"), StandardCharsets.UTF_8));
+	}
+
+
+	@Test
+	void testRetriedWrite() throws IOException, InterruptedException {
+		File directory = setupDirectory("test_persistence_retry");
+		final int[] failuresLeft = {2};
+		FileDataStore store = new FileDataStore(directory) {
+			@Override
+			public void writeAll(Map<String, byte[]> contents) throws IOException {
+				synchronized (failuresLeft) {
+					if (failuresLeft[0] > 0) {
+						failuresLeft[0]--;
+						throw new IOException("device unavailable");
+					}
+				}
+				super.writeAll(contents);
+			}
+		};
+		store.setSync(false);
+		PersistenceService service = new PersistenceService(store, 0);
+		service.write("entry", "content".getBytes(StandardCharsets.UTF_8));
+
+		// written again after the failures, without other request nor flush()
+		long deadline = System.currentTimeMillis()+10000;
+		while (!store.contains("entry") && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+		assertTrue(store.contains("entry"));
+		assertFalse(service.hasPendingWrites());
+		// the failures are still reported
+		assertThrows(IOException.class, () -> service.close());
+	}
+
+
+	@Test
+	void testJournalInBackground() throws IOException {
+		File directory = setupDirectory("test_persistence_journal");
+		File personsJournal = new File(directory, "persons.journal");
+		File tagsJournal = new File(directory, "tags.journal");
+
+		// store recording the threads writing it
+		final Thread testThread = Thread.currentThread();
+		final boolean[] writtenByCaller = {false};
+		FileDataStore store = new FileDataStore(directory) {
+			@Override
+			public void write(String key, byte[] content) throws IOException {
+				writtenByCaller[0] |= Thread.currentThread() == testThread;
+				super.write(key, content);
+			}
+			@Override
+			public void writeAll(Map<String, byte[]> contents) throws IOException {
+				writtenByCaller[0] |= Thread.currentThread() == testThread;
+				super.writeAll(contents);
+			}
+		};
+		store.setSync(false);
+		// long delay: the requests are written by flush()
+		PersistenceService service = new PersistenceService(store, 60000);
+		PersonManager pm = new PersonManager(4, store);
+		pm.setPersistenceService(service);
+		TagManager tm = new TagManager(store);
+		tm.setPersistenceService(service);
+		tm.save();
+		service.flush();
+		pm.openJournal(personsJournal);
+		tm.openJournal(tagsJournal);
+
+		// operations and saves: nothing is appended, forced or compacted by the caller
+		pm.addPerson(new Person("AAAA", "Alice"));
+		pm.save();
+		tm.addTag("work");
+		tm.addToTag("work", "AAAA");
+		tm.save();
+		pm.saveAll();
+		assertEquals(0, personsJournal.length());
+		assertEquals(0, tagsJournal.length());
+		assertFalse(new File(directory, "persons.journal.old").exists());
+		assertFalse(store.contains("AAAA_data"));
+		assertTrue(service.hasPendingWrites());
+
+		// run by the worker thread, in order: the person is in the snapshot, the tags in
+		// the journal
+		service.flush();
+		assertFalse(service.hasPendingWrites());
+		assertFalse(writtenByCaller[0]);
+		assertTrue(store.contains("AAAA_data"));
+		assertFalse(new File(directory, "persons.journal.old").exists());
+		assertEquals(0, personsJournal.length());
+		assertTrue(tagsJournal.length() > 0);
+
+		// the operations of the journal are replayed
+		pm.closeJournal();
+		tm.closeJournal();
+		service.close();
+		TagManager loadedTm = TagManager.load(store);
+		loadedTm.openJournal(tagsJournal);
+		assertTrue(loadedTm.isInTag("work", "AAAA"));
+		loadedTm.closeJournal();
+	}
+}
@@ -0,0 +1,160 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+import org.junit.jupiter.api.Test;
+
+import waya.engine.FileDataStore;
+import waya.engine.Person;
+import waya.engine.PersonManager;
+import waya.gui.PersonListModel;
+
+class PersonListModelTest {
+
+	/**
+	 * Record the events of a model as strings: "added 0-2", "removed 1-1", "changed 0-0"
+	 */
+	private static List<String> listen(PersonListModel model) {
+		List<String> events = new ArrayList<>();
+		model.addListDataListener(new ListDataListener() {
+			@Override
+			public void intervalAdded(ListDataEvent e) {
+				events.add("added "+e.getIndex0()+"-"+e.getIndex1());
+			}
+			@Override
+			public void intervalRemoved(ListDataEvent e) {
+				events.add("removed "+e.getIndex0()+"-"+e.getIndex1());
+			}
+			@Override
+			public void contentsChanged(ListDataEvent e) {
+				events.add("changed "+e.getIndex0()+"-"+e.getIndex1());
+			}
+		});
+		return events;
+	}
+
+
+	private static List<String> content(PersonListModel model) {
+		List<String> ids = new ArrayList<>();
+		for (int i=0; i<model.getSize(); i++) {
+			ids.add(model.getPersonId(i));
+		}
+		return ids;
+	}
+
+
+	@Test
+	void testSortedContent() throws IOException {
+		String rootDir = System.getProperty("user.dir");
+		File exportDir = FileSystems.getDefault().getPath(rootDir, "data", "test_list").toFile();
+		PersonManager pm = new PersonManager(4, new FileDataStore(exportDir));
+		pm.addPerson(new Person("AAAA", "Alice"));
+		pm.addPerson(new Person("CCCC", "Carol"));
+		pm.addPerson(new Person("EEEE", "Eve"));
+
+		PersonListModel model = new PersonListModel(pm);
+		List<String> events = listen(model);
+		model.setSortedContent(null);
+		assertEquals(Arrays.asList("added 0-2"), events);
+		assertEquals(Arrays.asList("AAAA", "CCCC", "EEEE"), content(model));
+		assertEquals("Carol ", model.getElementAt(1));
+
+		// insertion at the position of the name
+		events.clear();
+		pm.addPerson(new Person("BBBB", "Bob"));
+		model.personAdded("BBBB");
+		assertEquals(Arrays.asList("added 1-1"), events);
+		assertEquals(1, model.indexOf("BBBB"));
+
+		// rename: the row moves
+		events.clear();
+		Person person = pm.getPerson("BBBB");
+		person.setName("Zed");
+		pm.setPerson("BBBB", person);
+		model.personChanged("BBBB");
+		assertEquals(Arrays.asList("removed 1-1", "added 3-3"), events);
+		assertEquals(Arrays.asList("AAAA", "CCCC", "EEEE", "BBBB"), content(model));
+
+		// rename in place
+		events.clear();
+		person = pm.getPerson("CCCC");
+		person.setName("Dave");
+		pm.setPerson("CCCC", person);
+		model.personChanged("CCCC");
+		assertEquals(Arrays.asList("changed 1-1"), events);
+
+		// removal
+		events.clear();
+		pm.removePerson("AAAA");
+		model.personRemoved("AAAA");
+		assertEquals(Arrays.asList("removed 0-0"), events);
+		assertEquals(Arrays.asList("CCCC", "EEEE", "BBBB"), content(model));
+
+		// filtered content: a person outside the filter is not inserted
+		model.setSortedContent(new HashSet<>(Arrays.asList("EEEE", "BBBB")));
+		pm.addPerson(new Person("FFFF", "Frank"));
+		model.personAdded("FFFF");
+		assertEquals(Arrays.asList("EEEE", "BBBB"), content(model));
+
+		// ranked content
+		model.setRankedContent(Arrays.asList("BBBB", "CCCC"));
+		assertFalse(model.isSorted());
+		assertEquals(Arrays.asList("BBBB", "CCCC"), content(model));
+		model.personRemoved("BBBB");
+		assertEquals(Arrays.asList("CCCC"), content(model));
+	}
+
+
+	@Test
+	void testRandomChanges() throws IOException {
+		String rootDir = System.getProperty("user.dir");
+		File exportDir = FileSystems.getDefault().getPath(rootDir, "data", "test_list").toFile();
+		PersonManager pm = new PersonManager(4, new FileDataStore(exportDir));
+		Random random = new Random(42);
+		for (int i=0; i<200; i++) {
+			pm.addPerson(new Person(String.format("%04d", i), "name"+random.nextInt(100)));
+		}
+		PersonListModel model = new PersonListModel(pm);
+		model.setSortedContent(null);
+
+		// the rows follow the name index through additions, renames and removals
+		int nextId = 200;
+		for (int i=0; i<1000; i++) {
+			List<String> ids = pm.getPersonIdsByName();
+			String personId = ids.get(random.nextInt(ids.size()));
+			switch (random.nextInt(3)) {
+			case 0:
+				String newId = String.format("%04d", nextId++);
+				pm.addPerson(new Person(newId, "name"+random.nextInt(100)));
+				model.personAdded(newId);
+				break;
+			case 1:
+				Person person = pm.getPerson(personId);
+				person.setName("name"+random.nextInt(100));
+				pm.setPerson(personId, person);
+				model.personChanged(personId);
+				break;
+			default:
+				pm.removePerson(personId);
+				model.personRemoved(personId);
+			}
+		}
+		List<String> expected = pm.getPersonIdsByName();
+		assertEquals(expected, content(model));
+		for (int i=0; i<expected.size(); i++) {
+			assertEquals(i, model.indexOf(expected.get(i)));
+		}
+	}
+}
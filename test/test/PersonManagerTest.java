@@ -3,16 +3,23 @@ package test;
 import static org.junit.jupiter.api.Assertions.*;
 
 import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 
 import org.junit.jupiter.api.Test;
 
+import waya.engine.FileDataStore;
 import waya.engine.Information;
 import waya.engine.Person;
 import waya.engine.PersonManager;
+import waya.engine.PersonView;
 
 class PersonManagerTest {
 
@@ -193,4 +200,232 @@ class PersonManagerTest {
 						 loadedPm.getPerson(refId).getNumberOfInformations());
 		}
 	}
+	
+	
+	@Test
+	void testParallelLoad() {
+		int idLength = 6;
+		
+		// setup test directory
+		String rootDir = System.getProperty("user.dir");
+		File exportDir = FileSystems.getDefault().getPath(rootDir, "data", "test_load").toFile();
+		if (!exportDir.isDirectory()) {
+			try {
+				Files.createDirectories(exportDir.toPath());
+			} catch (IOException e) {
+				fail("cannot create directory: "+exportDir);
+			}
+		} else {
+			// clean path from files created previously
+			for (File tmpFile : exportDir.listFiles()) {
+				try {
+					Files.deleteIfExists(tmpFile.toPath());
+				} catch (IOException e) {
+					fail("cannot delete file: "+tmpFile.toString());
+				}
+			}
+		}
+		
+		// save persons
+		PersonManager pm = null;
+		try {
+			pm = new PersonManager(idLength, exportDir);
+			for (int i=0; i<50; i++) {
+				Person person = new Person(pm.createPersonId(), "Person "+i);
+				Information info = new Information("index");
+				info.addValue(Integer.toString(i));
+				person.addInformation(info);
+				pm.addPerson(person);
+			}
+			pm.save();
+		} catch (IOException e) {
+			fail("cannot save persons: "+e.getMessage());
+		}
+		
+		// add a corrupted person file
+		File badFile = new File(exportDir, "BADBAD_data.json");
+		try (FileWriter writer = new FileWriter(badFile); ) {
+			writer.write("{\"id\":");
+		} catch (IOException e) {
+			fail("cannot write corrupted file");
+		}
+		
+		// load: the corrupted file is reported, the other files are loaded
+		PersonManager loadedPm = null;
+		try {
+			loadedPm = PersonManager.load(exportDir, idLength, 4);
+		} catch (IOException e) {
+			fail("load from directory: "+e.getMessage());
+		}
+		assertEquals(pm.getPersonIds(), loadedPm.getPersonIds());
+		for (String refId : pm.getPersonIds()) {
+			assertEquals(pm.getPerson(refId).getName(), loadedPm.getPerson(refId).getName());
+			assertEquals(pm.getPerson(refId).getInformation(0).getValue(0),
+						 loadedPm.getPerson(refId).getInformation(0).getValue(0));
+		}
+		assertEquals(1, loadedPm.getLoadErrors().size());
+		assertTrue(loadedPm.getLoadErrors().containsKey("BADBAD_data"));
+		
+		final File finalExportDir = exportDir;
+		assertThrows(IllegalArgumentException.class, 
+				() -> PersonManager.load(finalExportDir, idLength, 0));
+	}
+	
+	
+	@Test
+	void testSaveOnlyModifiedPersons() throws IOException {
+		int idLength = 6;
+		String rootDir = System.getProperty("user.dir");
+		File exportDir = FileSystems.getDefault().getPath(rootDir, "data", "test_dirty").toFile();
+		
+		// store counting the writes and deletes
+		final int[] writes = {0};
+		final int[] deletes = {0};
+		FileDataStore store = new FileDataStore(exportDir) {
+			@Override
+			public void write(String key, byte[] content) throws IOException {
+				writes[0]++;
+				super.write(key, content);
+			}
+			@Override
+			public void writeAll(Map<String, byte[]> contents) throws IOException {
+				writes[0] += contents.size();
+				super.writeAll(contents);
+			}
+			@Override
+			public void delete(String key) throws IOException {
+				deletes[0]++;
+				super.delete(key);
+			}
+		};
+		
+		PersonManager pm = new PersonManager(idLength, store);
+		for (int i=0; i<10; i++) {
+			pm.addPerson(new Person(pm.createPersonId(), "Person "+i));
+		}
+		assertTrue(pm.hasUnsavedChanges());
+		pm.save();
+		assertEquals(10, writes[0]);
+		assertFalse(pm.hasUnsavedChanges());
+		
+		// nothing changed: nothing written
+		pm.save();
+		assertEquals(10, writes[0]);
+		
+		// set a person without change: nothing written
+		String personId = pm.getPersonIds().iterator().next();
+		pm.setPerson(personId, pm.getPerson(personId));
+		assertFalse(pm.isModified(personId));
+		pm.save();
+		assertEquals(10, writes[0]);
+		
+		// modify a person and remove another one
+		Person person = pm.getPerson(personId);
+		Information info = new Information("cat");
+		info.addValue("Greebo");
+		person.addInformation(info);
+		pm.setPerson(personId, person);
+		assertTrue(pm.isModified(personId));
+		String removedId = null;
+		for (String id : pm.getPersonIds()) {
+			if (!id.equals(personId)) {
+				removedId = id;
+				break;
+			}
+		}
+		pm.removePerson(removedId);
+		pm.save();
+		assertEquals(11, writes[0]);
+		assertEquals(1, deletes[0]);
+		assertFalse(store.contains(removedId+"_data"));
+		
+		// loaded persons are not modified
+		PersonManager loadedPm = PersonManager.load(store, idLength, 2);
+		assertFalse(loadedPm.hasUnsavedChanges());
+		assertEquals(9, loadedPm.getPersonIds().size());
+		assertEquals("Greebo", loadedPm.getPerson(personId).getInformation(0).getValue(0));
+		
+		// save all
+		loadedPm.saveAll();
+		assertEquals(20, writes[0]);
+		
+		// clean
+		for (File tmpFile : exportDir.listFiles()) {
+			Files.deleteIfExists(tmpFile.toPath());
+		}
+	}
+	
+	
+	@Test
+	void testPersonView() throws IOException {
+		String rootDir = System.getProperty("user.dir");
+		File exportDir = FileSystems.getDefault().getPath(rootDir, "data", "test_view").toFile();
+		PersonManager pm = new PersonManager(4, new FileDataStore(exportDir));
+		Person person = new Person("AAAA", "Alice");
+		Information info = new Information("cat");
+		info.addValue("Greebo");
+		person.addInformation(info);
+		pm.addPerson(person);
+		
+		// views read the person of the manager, without copy
+		PersonView view = pm.getPersonView("AAAA");
+		assertSame(view, pm.getPersonView("AAAA"));
+		assertEquals("Alice", pm.getPersonName("AAAA"));
+		assertEquals("cat", view.getInformation(0).getName());
+		assertEquals("Greebo", view.getInformation(0).getValue(0));
+		assertThrows(UnsupportedOperationException.class, 
+				() -> view.getInformation(0).getValues().add("Nanny Ogg"));
+		assertThrows(IllegalArgumentException.class, () -> pm.getPersonName("BBBB"));
+		
+		// a copy can be modified without changing the manager
+		Person copy = pm.getPerson("AAAA");
+		copy.setName("Alice B.");
+		copy.getInformation(0).addValue("You");
+		assertEquals("Alice", pm.getPersonName("AAAA"));
+		assertEquals(1, pm.getPersonView("AAAA").getInformation(0).getNumberOfValues());
+		pm.setPerson("AAAA", copy);
+		assertEquals("Alice B.", pm.getPersonName("AAAA"));
+		assertEquals(2, pm.getPersonView("AAAA").getInformation(0).getNumberOfValues());
+	}
+	
+	
+	@Test
+	void testPersonIdsByName() throws IOException {
+		String rootDir = System.getProperty("user.dir");
+		File exportDir = FileSystems.getDefault().getPath(rootDir, "data", "test_names").toFile();
+		Locale defaultLocale = Locale.getDefault();
+		Locale.setDefault(Locale.FRANCE);
+		PersonManager pm;
+		try {
+			pm = new PersonManager(4, new FileDataStore(exportDir));
+		} finally {
+			Locale.setDefault(defaultLocale);
+		}
+		pm.addPerson(new Person("AAAA", "zoé"));
+		pm.addPerson(new Person("BBBB", "Émile"));
+		pm.addPerson(new Person("CCCC", "eric"));
+		pm.addPerson(new Person("DDDD", "Bob"));
+		pm.addPerson(new Person("EEEE", "Bob"));
+		
+		// locale-aware order, Id for equal names
+		assertEquals(Arrays.asList("DDDD", "EEEE", "BBBB", "CCCC", "AAAA"), pm.getPersonIdsByName());
+		assertEquals(Arrays.asList("BBBB", "AAAA"), 
+				pm.sortByName(Arrays.asList("AAAA", "BBBB", "XXXX")));
+		assertEquals(Arrays.asList("EEEE", "CCCC", "AAAA"), 
+				pm.sortByName(new HashSet<>(Arrays.asList("AAAA", "CCCC", "EEEE"))));
+		
+		// the order follows the changes
+		Person person = pm.getPerson("AAAA");
+		person.setName("Alice");
+		pm.setPerson("AAAA", person);
+		pm.removePerson("DDDD");
+		assertEquals(Arrays.asList("AAAA", "EEEE", "BBBB", "CCCC"), pm.getPersonIdsByName());
+		
+		// few Ids among many persons: same order
+		for (int i=0; i<100; i++) {
+			pm.addPerson(new Person(String.format("F%03d", i), "Person "+i));
+		}
+		assertEquals(Arrays.asList("AAAA", "EEEE", "CCCC", "F001"), 
+				pm.sortByName(Arrays.asList("CCCC", "F001", "AAAA", "EEEE")));
+	}
 }
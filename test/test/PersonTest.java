@@ -187,4 +187,34 @@ class PersonTest {
 			fail("Cannot read file");
 		}
 	}
+	
+	
+	@Test
+	void testFromJson() {
+		// round trip, with characters to escape
+		Person person = new Person("ID_ME", "Zoé \"the\" \\ best\n");
+		person.setImagePath("C:\\images\\zoe.png");
+		Information info = new Information("tab\there");
+		info.addValue("é€\u0001");
+		info.addValue("");
+		person.addInformation(info);
+		person.addInformation(new Information("empty"));
+		assertEquals(person, Person.fromJson(person.toJson()));
+		
+		// unknown fields, field order, white spaces, unicode escapes
+		Person parsed = Person.fromJson(" { \"extra\" : [1, {\"a\": null}, true], "
+				+ "\"informations\" : [ {\"values\":[\"v1\", \"\\u00e9\"], \"name\":\"n\", \"VERSION\":1} ],"
+				+ "\"name\": null, \"id\":\"AB\", \"imagePath\":\"\" } ");
+		assertEquals("AB", parsed.getId());
+		assertEquals("", parsed.getName());
+		assertEquals(1, parsed.getNumberOfInformations());
+		assertEquals("n", parsed.getInformation(0).getName());
+		assertEquals("é", parsed.getInformation(0).getValue(1));
+		
+		// malformed content
+		assertThrows(IllegalArgumentException.class, () -> Person.fromJson("{\"name\":\"no id\"}"));
+		assertThrows(IllegalArgumentException.class, () -> Person.fromJson("{\"id\":\"AB\""));
+		assertThrows(IllegalArgumentException.class, () -> Person.fromJson("{\"id\":\"AB} "));
+		assertThrows(IllegalArgumentException.class, () -> Person.fromJson("{\"id\":\"AB\"} x"));
+	}
 }
@@ -0,0 +1,170 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import waya.engine.Information;
+import waya.engine.Person;
+import waya.engine.PersonManager;
+import waya.engine.SearchIndex;
+import waya.engine.SearchIndexStore;
+
+class SearchIndexTest {
+	
+	private static File setupDirectory(String name) {
+		String rootDir = System.getProperty("user.dir");
+		File exportDir = FileSystems.getDefault().getPath(rootDir, "data", name).toFile();
+		try {
+			Files.createDirectories(exportDir.toPath());
+			// clean path from files created previously
+			for (File tmpFile : exportDir.listFiles()) {
+				if (tmpFile.isDirectory()) {
+					for (File subFile : tmpFile.listFiles()) {
+						Files.delete(subFile.toPath());
+					}
+				}
+				Files.delete(tmpFile.toPath());
+			}
+		} catch (IOException e) {
+			fail("cannot setup directory: "+exportDir);
+		}
+		return exportDir;
+	}
+	
+
+	@Test
+	void testTokenize() {
+		assertEquals(Arrays.asList("eric", "dupont", "42", "rue", "des", "ecoles"),
+				SearchIndex.tokenize("Éric DUPONT, 42 rue des Écoles"));
+		assertTrue(SearchIndex.tokenize("  -- ").isEmpty());
+	}
+
+
+	@Test
+	void testSearch() {
+		String rootDir = System.getProperty("user.dir");
+		File exportDir = FileSystems.getDefault().getPath(rootDir, "data", "test_search").toFile();
+		PersonManager pm = null;
+		try {
+			pm = new PersonManager(4, exportDir);
+		} catch (IOException e) {
+			fail("Cannot create person manager");
+		}
+
+		Person alice = new Person("AAAA", "Alice Martin");
+		Information job = new Information("job");
+		job.addValue("Engineer at Acme");
+		alice.addInformation(job);
+		pm.addPerson(alice);
+
+		Person bob = new Person("BBBB", "Bob Acme");
+		pm.addPerson(bob);
+
+		Person chloe = new Person("CCCC", "Chloé");
+		Information city = new Information("city");
+		city.addValue("Paris");
+		chloe.addInformation(city);
+		pm.addPerson(chloe);
+
+		// exact, prefix and accent-insensitive terms
+		assertEquals(Arrays.asList("AAAA"), pm.search("engineer"));
+		assertEquals(Arrays.asList("AAAA"), pm.search("ENG"));
+		assertEquals(Arrays.asList("CCCC"), pm.search("chloe"));
+		assertEquals(Arrays.asList("CCCC"), pm.search("city"));
+		// every term must match
+		assertEquals(Arrays.asList("AAAA"), pm.search("acme job"));
+		assertTrue(pm.search("acme paris").isEmpty());
+		assertTrue(pm.search("").isEmpty());
+		// ranking: a term in the name counts more than in an information
+		List<String> result = pm.search("acme");
+		assertEquals(Arrays.asList("BBBB", "AAAA"), result);
+
+		// updates
+		Person newBob = new Person("BBBB", "Bob");
+		pm.setPerson(newBob.getId(), newBob);
+		assertEquals(Arrays.asList("AAAA"), pm.search("acme"));
+		pm.removePerson("AAAA");
+		assertTrue(pm.search("acme").isEmpty());
+		assertEquals(Arrays.asList("BBBB"), pm.search("bo"));
+	}
+
+
+	@Test
+	void testSegments() throws IOException {
+		File directory = setupDirectory("test_search_segments");
+		SearchIndexStore indexStore = new SearchIndexStore(directory);
+		Map<String, Integer> terms = new HashMap<>();
+		terms.put("alice", 3);
+		terms.put("éclair", 1);
+		for (int i=0; i<6; i++) {
+			indexStore.writeSegment(Arrays.asList(
+					new SearchIndexStore.Record("AAAA", i, terms),
+					new SearchIndexStore.Record("P00"+i, i, Collections.singletonMap("x", i))));
+		}
+		indexStore.writeSegment(Arrays.asList(new SearchIndexStore.Record("P005", 7, null)));
+		assertEquals(7, indexStore.getNumberOfSegments());
+		
+		// most recent record of each person, without removed persons
+		Map<String, SearchIndexStore.Record> records = indexStore.read();
+		assertEquals(6, records.size());
+		assertEquals(5, records.get("AAAA").getStamp());
+		assertEquals(terms, records.get("AAAA").getTerms());
+		assertEquals(Collections.singletonMap("x", 2), records.get("P002").getTerms());
+		
+		// background merge
+		indexStore.mergeIfNeeded();
+		indexStore.close();
+		assertEquals(1, indexStore.getNumberOfSegments());
+		Map<String, SearchIndexStore.Record> mergedRecords = new SearchIndexStore(directory).read();
+		assertEquals(records.keySet(), mergedRecords.keySet());
+		assertEquals(terms, mergedRecords.get("AAAA").getTerms());
+	}
+
+
+	@Test
+	void testPersistedIndex() throws IOException {
+		File directory = setupDirectory("test_search_persisted");
+		File indexDirectory = new File(directory, "search");
+		PersonManager pm = new PersonManager(4, directory);
+		pm.addPerson(new Person("AAAA", "Alice"));
+		pm.addPerson(new Person("BBBB", "Bob"));
+		pm.addPerson(new Person("CCCC", "Chloe"));
+		pm.save();
+		pm.openSearchIndex(indexDirectory);
+		pm.closeSearchIndex();
+		
+		// change a person file behind the manager, remove another
+		File bobFile = new File(directory, "BBBB_data.json");
+		Person newBob = new Person("BBBB", "Robert");
+		Files.write(bobFile.toPath(), newBob.toJson().getBytes("UTF-8"));
+		bobFile.setLastModified(bobFile.lastModified() + 10000);
+		Files.delete(new File(directory, "CCCC_data.json").toPath());
+		
+		// the stale person is re-indexed, the others come from the saved index
+		PersonManager pm2 = PersonManager.load(directory, 4, 2);
+		pm2.openSearchIndex(indexDirectory);
+		assertEquals(Arrays.asList("AAAA"), pm2.search("alice"));
+		assertEquals(Arrays.asList("BBBB"), pm2.search("robert"));
+		assertTrue(pm2.search("bob").isEmpty());
+		assertTrue(pm2.search("chloe").isEmpty());
+		pm2.closeSearchIndex();
+		
+		// the saved index is up to date
+		Map<String, SearchIndexStore.Record> records = new SearchIndexStore(indexDirectory).read();
+		assertEquals(2, records.size());
+		assertTrue(records.get("BBBB").getTerms().containsKey("robert"));
+	}
+}
@@ -1,5 +1,6 @@
 package test;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -74,7 +75,8 @@ class TagManagerTest {
 		manager.addToTag("work", "bill");
 		manager.addToTag("work", "joe");
 		manager.addToTag("work", "joe");
-		assertEquals(manager.getContent("work").size(), 6);
+		// duplicates are ignored
+		assertEquals(manager.getContent("work").size(), 4);
 		assertTrue(manager.getContent("work").contains("bart"));
 		assertTrue(manager.getContent("work").contains("bob"));
 		assertTrue(manager.getContent("work").contains("bill"));
@@ -85,7 +87,7 @@ class TagManagerTest {
 		
 		// remove from tag
 		manager.removeFromTag("work", "joe");
-		assertEquals(manager.getContent("work").size(), 4);
+		assertEquals(manager.getContent("work").size(), 3);
 		assertTrue(manager.getContent("work").contains("bart"));
 		assertTrue(manager.getContent("work").contains("bob"));
 		assertTrue(manager.getContent("work").contains("bill"));
@@ -124,16 +126,30 @@ class TagManagerTest {
 				() -> { tmpFinalManager5.renameTag("friends", "colleagues"); });
 		assertThrows(IllegalArgumentException.class, 
 				() -> { tmpFinalManager5.renameTag("pub", "family"); });
-		assertEquals(manager.getContent("pub").size(), 4);
+		assertEquals(manager.getContent("pub").size(), 3);
 		assertTrue(manager.getContent("pub").contains("bart"));
 		assertTrue(manager.getContent("pub").contains("bob"));
 		assertTrue(manager.getContent("pub").contains("bill"));
 		
+		// tags of an item
+		manager.addToTag("family", "bob");
+		assertEquals(manager.getTagsOf("bob").size(), 2);
+		assertTrue(manager.getTagsOf("bob").contains("pub"));
+		assertTrue(manager.getTagsOf("bob").contains("family"));
+		assertTrue(manager.isInTag("family", "bob"));
+		assertFalse(manager.isInTag("family", "bart"));
+		assertTrue(manager.getTagsOf("nobody").isEmpty());
+		manager.removeFromTag("family", "bob");
+		assertEquals(manager.getTagsOf("bob").size(), 1);
+		assertFalse(manager.isInTag("family", "bob"));
+		
 		// remove from all tags
 		manager.addToTag("family", "jeff");
+		manager.addToTag("pub", "jeff");
 		manager.removeFromAllTags("jeff");
 		assertFalse(manager.getContent("pub").contains("jeff"));
 		assertFalse(manager.getContent("family").contains("jeff"));
+		assertTrue(manager.getTagsOf("jeff").isEmpty());
 		
 		//
 		// save tag
@@ -166,5 +182,15 @@ class TagManagerTest {
 		for (String tagName : loadedManager.getTags()) {
 			assertEquals(manager.getContent(tagName), loadedManager.getContent(tagName));
 		}
+		assertEquals(manager.getTagsOf("bill"), loadedManager.getTagsOf("bill"));
+		
+		// insertion order is kept
+		manager.addTag("order");
+		manager.addToTag("order", "c");
+		manager.addToTag("order", "a");
+		manager.addToTag("order", "b");
+		manager.addToTag("order", "a");
+		assertArrayEquals(new String[] {"c", "a", "b"}, 
+				manager.getContent("order").toArray(new String[0]));
 	}
 }
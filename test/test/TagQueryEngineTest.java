@@ -0,0 +1,93 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import waya.engine.Person;
+import waya.engine.PersonManager;
+import waya.engine.TagManager;
+import waya.engine.TagQueryEngine;
+
+class TagQueryEngineTest {
+
+	private static Set<String> setOf(String... ids) {
+		return new HashSet<>(Arrays.asList(ids));
+	}
+
+
+	@Test
+	void testSelect() {
+		// setup test directory
+		String rootDir = System.getProperty("user.dir");
+		File exportDir = FileSystems.getDefault().getPath(rootDir, "data", "test_query").toFile();
+		if (!exportDir.isDirectory()) {
+			try {
+				Files.createDirectories(exportDir.toPath());
+			} catch (IOException e) {
+				fail("cannot create directory: "+exportDir);
+			}
+		}
+
+		PersonManager pm = null;
+		TagManager tm = null;
+		try {
+			pm = new PersonManager(4, exportDir);
+			tm = new TagManager(exportDir);
+		} catch (IOException e) {
+			fail("Cannot create managers");
+		}
+		for (String id : new String[] {"AAAA", "BBBB", "CCCC", "DDDD"}) {
+			pm.addPerson(new Person(id, id));
+		}
+		tm.addTag("family");
+		tm.addTag("paris");
+		tm.addTag("ex work");
+		tm.addToTag("family", "AAAA");
+		tm.addToTag("family", "BBBB");
+		tm.addToTag("paris", "BBBB");
+		tm.addToTag("paris", "CCCC");
+		tm.addToTag("ex work", "CCCC");
+
+		TagQueryEngine engine = new TagQueryEngine(tm, pm);
+
+		// single tag, tag made of several words
+		assertEquals(setOf("AAAA", "BBBB"), engine.select("family"));
+		assertEquals(setOf("CCCC"), engine.select("ex work"));
+		assertEquals(setOf("CCCC"), engine.select("\"ex work\""));
+
+		// operators and precedence
+		assertEquals(setOf("BBBB"), engine.select("family AND paris"));
+		assertEquals(setOf("AAAA", "BBBB", "CCCC"), engine.select("family or paris"));
+		assertEquals(setOf("AAAA"), engine.select("family AND NOT paris"));
+		assertEquals(setOf("DDDD"), engine.select("NOT family AND NOT paris"));
+		assertEquals(setOf("AAAA", "CCCC"), engine.select("family & !paris | ex work"));
+		assertEquals(setOf("AAAA"), engine.select("family & !(paris | ex work)"));
+		assertEquals(setOf("AAAA", "BBBB", "DDDD"), engine.select("NOT ex work"));
+
+		// bitmaps follow the modifications of the tags
+		tm.addToTag("paris", "AAAA");
+		assertEquals(setOf(), engine.select("family AND NOT paris"));
+		tm.removeFromAllTags("BBBB");
+		assertEquals(setOf("AAAA"), engine.select("family AND paris"));
+
+		// errors
+		final TagQueryEngine finalEngine = engine;
+		assertThrows(IllegalArgumentException.class, () -> finalEngine.check("   "));
+		assertThrows(IllegalArgumentException.class, () -> finalEngine.select("family AND"));
+		assertThrows(IllegalArgumentException.class, () -> finalEngine.select("(family OR paris"));
+		assertThrows(IllegalArgumentException.class, () -> finalEngine.select("family paris)"));
+		assertThrows(IllegalArgumentException.class, () -> finalEngine.select("\"family"));
+		assertThrows(IllegalArgumentException.class, () -> finalEngine.check("family AND friends"));
+	}
+}
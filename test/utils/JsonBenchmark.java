@@ -0,0 +1,97 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.owlike.genson.GenericType;
+import com.owlike.genson.Genson;
+import com.owlike.genson.GensonBuilder;
+
+import waya.engine.Information;
+import waya.engine.Person;
+
+/**
+ * Compare the serialization throughput of persons with a Genson object built for each
+ * call (previous implementation) and with the shared converters.
+ * Usage: JsonBenchmark [number of persons]
+ */
+public class JsonBenchmark {
+
+	private static final int REPETITIONS = 5;
+
+	public static void main(String[] argv) {
+		int numberOfPersons = (argv.length > 0) ? Integer.parseInt(argv[0]) : 10000;
+		List<Person> persons = new ArrayList<>();
+		for (int i=0; i<numberOfPersons; i++) {
+			Person person = new Person(String.format("%06X", i),
+					DatasetBuilder.createManFirstName()+" "+DatasetBuilder.createFamilyName());
+			Information pet = new Information("pet");
+			pet.addValue(DatasetBuilder.createPetName());
+			pet.addValue(DatasetBuilder.createPetName());
+			person.addInformation(pet);
+			Information age = new Information("age");
+			age.addValue(Integer.toString(DatasetBuilder.createAge(DatasetBuilder.AGE_CATEGORY.ADULT)));
+			person.addInformation(age);
+			persons.add(person);
+		}
+		List<String> jsons = new ArrayList<>();
+		for (Person person : persons) {
+			jsons.add(person.toJson());
+		}
+
+		for (int run=0; run<REPETITIONS; run++) {
+			// save: serialization
+			long start = System.nanoTime();
+			for (Person person : persons) {
+				buildPersonConverter().serialize(person);
+			}
+			long perCallSave = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (Person person : persons) {
+				person.toJson();
+			}
+			long sharedSave = System.nanoTime() - start;
+
+			// load: parsing
+			start = System.nanoTime();
+			for (String json : jsons) {
+				new Genson().deserialize(json, new GenericType<Map<String, Object>>(){});
+			}
+			long perCallLoad = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (String json : jsons) {
+				Person.fromJson(json);
+			}
+			long sharedLoad = System.nanoTime() - start;
+
+			System.out.println(String.format("Run %d, %d persons:", run, numberOfPersons));
+			System.out.println(String.format("  save: per call %s, shared %s",
+					throughput(numberOfPersons, perCallSave), throughput(numberOfPersons, sharedSave)));
+			System.out.println(String.format("  load: per call %s, shared %s",
+					throughput(numberOfPersons, perCallLoad), throughput(numberOfPersons, sharedLoad)));
+		}
+	}
+
+
+	/**
+	 * Converter built as Person.toJson() did before the shared converters
+	 */
+	private static Genson buildPersonConverter() {
+		GensonBuilder builder = new GensonBuilder();
+		builder.include("id");
+		builder.include("name");
+		builder.include("imagePath");
+		builder.include("informations");
+		builder.include("VERSION");
+		builder.exclude("numberOfInformations");
+		builder.exclude("numberOfValues");
+		builder.acceptSingleValueAsList(true);
+		return builder.create();
+	}
+
+
+	private static String throughput(int count, long nanos) {
+		return String.format("%.0f persons/s", count / (nanos / 1e9));
+	}
+}
@@ -0,0 +1,94 @@
+package utils;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import waya.engine.Information;
+import waya.engine.JsonConverters;
+import waya.engine.Person;
+
+/**
+ * Compare the memory allocated to read persons from JSON with the generic map parsing
+ * (previous implementation) and with the streaming reader of Person.
+ * The allocation is measured on the current thread with the ThreadMXBean of HotSpot JVMs.
+ * Usage: PersonReadBenchmark [number of persons]
+ */
+public class PersonReadBenchmark {
+
+	private static final int REPETITIONS = 5;
+
+	public static void main(String[] argv) {
+		int numberOfPersons = (argv.length > 0) ? Integer.parseInt(argv[0]) : 10000;
+		com.sun.management.ThreadMXBean threadBean =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+
+		List<byte[]> jsons = new ArrayList<>();
+		for (int i=0; i<numberOfPersons; i++) {
+			Person person = new Person(String.format("%06X", i),
+					DatasetBuilder.createWomanFirstName()+" "+DatasetBuilder.createFamilyName());
+			Information pets = new Information("pets");
+			pets.addValue(DatasetBuilder.createPetName());
+			pets.addValue(DatasetBuilder.createPetName());
+			person.addInformation(pets);
+			Information age = new Information("age");
+			age.addValue(Integer.toString(DatasetBuilder.createAge(DatasetBuilder.AGE_CATEGORY.ADULT)));
+			person.addInformation(age);
+			jsons.add(person.toJson().getBytes(StandardCharsets.UTF_8));
+		}
+
+		for (int run=0; run<REPETITIONS; run++) {
+			long before = threadBean.getThreadAllocatedBytes(threadId);
+			long start = System.nanoTime();
+			for (byte[] json : jsons) {
+				readWithMap(json);
+			}
+			long mapTime = System.nanoTime() - start;
+			long mapBytes = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+			before = threadBean.getThreadAllocatedBytes(threadId);
+			start = System.nanoTime();
+			for (byte[] json : jsons) {
+				Person.fromJson(json);
+			}
+			long streamTime = System.nanoTime() - start;
+			long streamBytes = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+			System.out.println(String.format("Run %d, %d persons:", run, numberOfPersons));
+			System.out.println(String.format("  map:       %6d bytes/person, %4d ms",
+					mapBytes / numberOfPersons, mapTime / 1000000));
+			System.out.println(String.format("  streaming: %6d bytes/person, %4d ms (%.1fx less allocation)",
+					streamBytes / numberOfPersons, streamTime / 1000000, (double) mapBytes / streamBytes));
+		}
+	}
+
+
+	/**
+	 * Read a person as Person.fromJson() did before the streaming reader
+	 */
+	@SuppressWarnings("unchecked")
+	private static Person readWithMap(byte[] json) {
+		Map<String, Object> contentMap = JsonConverters.DEFAULT.deserialize(
+				new String(json, StandardCharsets.UTF_8), JsonConverters.MAP_TYPE);
+		List<Map<String, Object>> listRawInfo =
+				(List<Map<String, Object>>) contentMap.get("informations");
+		LinkedList<Information> listInformations = new LinkedList<Information>();
+		for (Map<String, Object> rawInfo : listRawInfo) {
+			Information info = new Information(rawInfo.get("name").toString());
+			for (String value : (List<String>) rawInfo.get("values")) {
+				info.addValue(value);
+			}
+			listInformations.add(info);
+		}
+		Person result = new Person(contentMap.get("id").toString(), contentMap.get("name").toString());
+		for (Information information : listInformations) {
+			result.addInformation(information);
+		}
+		result.setImagePath(contentMap.get("imagePath").toString());
+		return result;
+	}
+}
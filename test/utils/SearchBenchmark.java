@@ -0,0 +1,64 @@
+package utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import waya.engine.Information;
+import waya.engine.Person;
+import waya.engine.PersonManager;
+
+/**
+ * Measure the time to index persons and to run searches.
+ * Usage: SearchBenchmark [number of persons]
+ */
+public class SearchBenchmark {
+
+	private static final String[] QUERIES = {"martin", "mar", "engineer acme", "paris", "z"};
+	private static final String[] CITIES = {"Paris", "Lyon", "Marseille", "Nantes", "Lille"};
+	private static final String[] JOBS = {"Engineer", "Teacher", "Doctor", "Baker", "Artist"};
+	private static final String[] COMPANIES = {"Acme", "Globex", "Initech", "Umbrella"};
+
+	public static void main(String[] argv) throws IOException {
+		int numberOfPersons = (argv.length > 0) ? Integer.parseInt(argv[0]) : 100000;
+		File directory = new File(System.getProperty("java.io.tmpdir"), "waya_search_benchmark");
+		PersonManager pm = new PersonManager(8, directory);
+
+		// index
+		long start = System.nanoTime();
+		for (int i=0; i<numberOfPersons; i++) {
+			String firstName = (i % 2 == 0) ? DatasetBuilder.createManFirstName()
+					: DatasetBuilder.createWomanFirstName();
+			Person person = new Person(String.format("%08X", i),
+					firstName+" "+DatasetBuilder.createFamilyName());
+			Information city = new Information("city");
+			city.addValue(CITIES[i % CITIES.length]);
+			person.addInformation(city);
+			Information job = new Information("job");
+			job.addValue(JOBS[i % JOBS.length]+" at "+COMPANIES[i % COMPANIES.length]);
+			person.addInformation(job);
+			pm.addPerson(person);
+		}
+		long indexTime = System.nanoTime() - start;
+		System.out.println(String.format("Added and indexed %d persons in %d ms",
+				numberOfPersons, indexTime / 1000000));
+
+		// search: warm up, then measure
+		for (int i=0; i<20; i++) {
+			for (String query : QUERIES) {
+				pm.search(query);
+			}
+		}
+		int repetitions = 50;
+		for (String query : QUERIES) {
+			List<String> result = null;
+			start = System.nanoTime();
+			for (int i=0; i<repetitions; i++) {
+				result = pm.search(query);
+			}
+			double searchTime = (System.nanoTime() - start) / 1e6 / repetitions;
+			System.out.println(String.format("'%s': %d results in %.2f ms",
+					query, result.size(), searchTime));
+		}
+	}
+}